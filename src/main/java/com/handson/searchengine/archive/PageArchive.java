@@ -0,0 +1,439 @@
+package com.handson.searchengine.archive;
+
+import com.handson.searchengine.model.ArchivedPage;
+import com.handson.searchengine.util.Fingerprints;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Append-only local archive of every fetched page.
+ * Each crawl gets a directory of numbered segments: {n}.seg holds deflated page records,
+ * {n}.idx holds fixed size (urlHash, offset) entries. Reads go through memory-mapped segments.
+ *
+ * <pre>
+ * record: [magic:int][bodyLen:int][urlHash:long][fetchTime:long][urlLen:short][url][typeLen:short][type]
+ *         ([baseUrlLen:short][baseUrl][level:int] since v2)[rawLen:int][deflated bytes]
+ * index:  [urlHash:long][offset:long]
+ * </pre>
+ */
+@Component
+public class PageArchive {
+
+    static final int RECORD_MAGIC_V1 = 0x50414745; // "PAGE"
+    static final int RECORD_MAGIC = 0x50414732; // "PAG2"
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_ENTRY_BYTES = 16;
+    // url, type and baseUrl lengths are stored as unsigned shorts
+    static final int MAX_FIELD_BYTES = 0xFFFF;
+
+    @Value("${archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${archive.dir:data/archive}")
+    private String dir;
+
+    @Value("${archive.segment.max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    @Value("${archive.max-open-writers:32}")
+    private int maxOpenWriters;
+
+    @Value("${archive.max-mapped-segments:64}")
+    private int maxMappedSegments;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    // access ordered, so the eldest entry is the least recently written crawl
+    private final LinkedHashMap<String, SegmentWriter> writers = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, ArchiveIndex> indexes = new ConcurrentHashMap<>();
+    // segments mapped for read(), least recently read dropped first; a dropped mapping is unmapped by the GC
+    private final Map<Path, MappedByteBuffer> mapped = Collections.synchronizedMap(new LinkedHashMap<Path, MappedByteBuffer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, MappedByteBuffer> eldest) {
+            return size() > maxMappedSegments;
+        }
+    });
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void append(String crawlId, String url, String baseUrl, int level, String contentType, String content) throws IOException {
+        if (!enabled) return;
+        long urlHash = Fingerprints.url64(url);
+        ByteBuffer record = encode(urlHash, System.currentTimeMillis(), url, baseUrl, level, contentType, content);
+        while (true) {
+            SegmentWriter w = writer(crawlId);
+            if (w.append(record, urlHash)) break;
+            record.rewind();
+        }
+        ArchiveIndex idx = indexes.get(crawlId);
+        if (idx != null) idx.stale = true;
+    }
+
+    /**
+     * Latest archived copy of the url in the given crawl, or null.
+     */
+    public ArchivedPage read(String crawlId, String url) throws IOException {
+        long urlHash = Fingerprints.url64(url);
+        ArchiveIndex idx = index(crawlId, false);
+        long[] loc = idx.find(urlHash);
+        if (loc == null && idx.stale) {
+            idx = index(crawlId, true);
+            loc = idx.find(urlHash);
+        }
+        if (loc == null) return null;
+        Path segment = crawlDir(crawlId).resolve(segmentName((int) loc[0]) + SEGMENT_SUFFIX);
+        ArchivedPage page = decode(crawlId, map(segment, loc[1]), (int) loc[1]);
+        return page != null && url.equals(page.getUrl()) ? page : null;
+    }
+
+    /**
+     * Streams every archived page of a crawl in write order.
+     */
+    public void forEach(String crawlId, Consumer<ArchivedPage> consumer) throws IOException {
+        for (int segmentNo : segments(crawlDir(crawlId))) {
+            Path segment = crawlDir(crawlId).resolve(segmentName(segmentNo) + SEGMENT_SUFFIX);
+            MappedByteBuffer buf;
+            try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            int pos = 0;
+            while (pos + 8 <= buf.limit() && isRecord(buf.getInt(pos))) {
+                int bodyLen = buf.getInt(pos + 4);
+                if (pos + 8 + bodyLen > buf.limit()) break; // torn write at the tail
+                ArchivedPage page = decode(crawlId, buf, pos);
+                if (page != null) consumer.accept(page);
+                pos += 8 + bodyLen;
+            }
+        }
+    }
+
+    public List<String> crawlIds() throws IOException {
+        Path root = Paths.get(dir);
+        if (!Files.isDirectory(root)) return Collections.emptyList();
+        try (Stream<Path> s = Files.list(root)) {
+            return s.filter(Files::isDirectory).map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Removes the crawl's archive: its open writer, cached index and mappings, and its directory.
+     */
+    public void delete(String crawlId) throws IOException {
+        synchronized (writers) {
+            SegmentWriter w = writers.remove(crawlId);
+            if (w != null) w.close();
+        }
+        indexes.remove(crawlId);
+        Path crawlDir = crawlDir(crawlId);
+        synchronized (mapped) {
+            mapped.keySet().removeIf(p -> p.startsWith(crawlDir));
+        }
+        if (!Files.isDirectory(crawlDir)) return;
+        try (Stream<Path> s = Files.list(crawlDir)) {
+            for (Path p : s.collect(Collectors.toList())) {
+                Files.deleteIfExists(p);
+            }
+        }
+        Files.deleteIfExists(crawlDir);
+    }
+
+    private SegmentWriter writer(String crawlId) throws IOException {
+        synchronized (writers) {
+            SegmentWriter w = writers.get(crawlId);
+            if (w != null) return w;
+            w = new SegmentWriter(crawlDir(crawlId));
+            writers.put(crawlId, w);
+            if (writers.size() > maxOpenWriters) {
+                Iterator<SegmentWriter> it = writers.values().iterator();
+                SegmentWriter eldest = it.next();
+                it.remove();
+                eldest.close();
+            }
+            return w;
+        }
+    }
+
+    private ArchiveIndex index(String crawlId, boolean reload) throws IOException {
+        ArchiveIndex idx = indexes.get(crawlId);
+        if (idx != null && !reload) return idx;
+        idx = ArchiveIndex.load(crawlDir(crawlId));
+        indexes.put(crawlId, idx);
+        return idx;
+    }
+
+    private MappedByteBuffer map(Path segment, long requiredOffset) throws IOException {
+        MappedByteBuffer buf = mapped.get(segment);
+        if (buf != null && requiredOffset + 8 <= buf.capacity()) {
+            int bodyLen = buf.getInt((int) requiredOffset + 4);
+            if (requiredOffset + 8 + bodyLen <= buf.capacity()) return buf;
+        }
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        mapped.put(segment, buf);
+        return buf;
+    }
+
+    private Path crawlDir(String crawlId) {
+        return Paths.get(dir, crawlId.replaceAll("[^A-Za-z0-9_-]", "_"));
+    }
+
+    private static String segmentName(int segmentNo) {
+        return String.format("%06d", segmentNo);
+    }
+
+    private static List<Integer> segments(Path crawlDir) throws IOException {
+        if (!Files.isDirectory(crawlDir)) return Collections.emptyList();
+        try (Stream<Path> s = Files.list(crawlDir)) {
+            return s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SEGMENT_SUFFIX))
+                    .map(n -> Integer.parseInt(n.substring(0, n.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isRecord(int magic) {
+        return magic == RECORD_MAGIC || magic == RECORD_MAGIC_V1;
+    }
+
+    static ByteBuffer encode(long urlHash, long fetchTime, String url, String baseUrl, int level, String contentType, String content) {
+        byte[] u = field("url", url);
+        byte[] t = field("content type", contentType);
+        byte[] b = field("base url", baseUrl);
+        byte[] raw = (content == null ? "" : content).getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = deflate(raw);
+        int bodyLen = 8 + 8 + 2 + u.length + 2 + t.length + 2 + b.length + 4 + 4 + compressed.length;
+        ByteBuffer buf = ByteBuffer.allocate(8 + bodyLen);
+        buf.putInt(RECORD_MAGIC).putInt(bodyLen)
+                .putLong(urlHash).putLong(fetchTime)
+                .putShort((short) u.length).put(u)
+                .putShort((short) t.length).put(t)
+                .putShort((short) b.length).put(b).putInt(level)
+                .putInt(raw.length).put(compressed);
+        buf.flip();
+        return buf;
+    }
+
+    // a longer value would overflow its short length prefix and misalign every record after it
+    private static byte[] field(String name, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Not archiving a " + name + " of " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private ArchivedPage decode(String crawlId, ByteBuffer segment, int pos) {
+        ByteBuffer buf = segment.duplicate();
+        buf.position(pos);
+        int magic = buf.getInt();
+        if (!isRecord(magic)) return null;
+        int bodyLen = buf.getInt();
+        int end = buf.position() + bodyLen;
+        long urlHash = buf.getLong();
+        long fetchTime = buf.getLong();
+        byte[] u = new byte[buf.getShort() & 0xFFFF];
+        buf.get(u);
+        byte[] t = new byte[buf.getShort() & 0xFFFF];
+        buf.get(t);
+        byte[] b = new byte[0];
+        int level = 0;
+        if (magic == RECORD_MAGIC) {
+            b = new byte[buf.getShort() & 0xFFFF];
+            buf.get(b);
+            level = buf.getInt();
+        }
+        int rawLen = buf.getInt();
+        byte[] compressed = new byte[end - buf.position()];
+        buf.get(compressed);
+        try {
+            String content = new String(inflate(compressed, rawLen), StandardCharsets.UTF_8);
+            String baseUrl = b.length > 0 ? new String(b, StandardCharsets.UTF_8) : null;
+            return ArchivedPage.of(crawlId, new String(u, StandardCharsets.UTF_8), baseUrl, level, urlHash, fetchTime,
+                    new String(t, StandardCharsets.UTF_8), content);
+        } catch (DataFormatException e) {
+            logger.warn("Corrupt archive record at " + pos + " for crawl " + crawlId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLen) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLen];
+            int n = 0;
+            while (n < rawLen && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLen - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != rawLen) throw new DataFormatException("Expected " + rawLen + " bytes, got " + n);
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writers) {
+            for (SegmentWriter w : writers.values()) {
+                w.close();
+            }
+            writers.clear();
+        }
+    }
+
+    private final class SegmentWriter {
+        private final Path crawlDir;
+        private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        private int segmentNo;
+        private FileChannel data;
+        private FileChannel index;
+        private long size;
+        private boolean closed;
+
+        SegmentWriter(Path crawlDir) throws IOException {
+            this.crawlDir = crawlDir;
+            Files.createDirectories(crawlDir);
+            List<Integer> existing = segments(crawlDir);
+            open(existing.isEmpty() ? 0 : existing.get(existing.size() - 1));
+        }
+
+        private void open(int segmentNo) throws IOException {
+            this.segmentNo = segmentNo;
+            data = FileChannel.open(crawlDir.resolve(segmentName(segmentNo) + SEGMENT_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            index = FileChannel.open(crawlDir.resolve(segmentName(segmentNo) + INDEX_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            size = data.size();
+        }
+
+        synchronized boolean append(ByteBuffer record, long urlHash) throws IOException {
+            if (closed) return false;
+            if (size > 0 && size + record.remaining() > segmentMaxBytes) {
+                closeChannels();
+                open(segmentNo + 1);
+            }
+            long offset = size;
+            while (record.hasRemaining()) {
+                size += data.write(record);
+            }
+            // the index entry goes last, so an entry never points at a partially written record
+            indexEntry.clear();
+            indexEntry.putLong(urlHash).putLong(offset).flip();
+            while (indexEntry.hasRemaining()) {
+                index.write(indexEntry);
+            }
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            closeChannels();
+        }
+
+        private void closeChannels() {
+            try {
+                data.force(false);
+                data.close();
+                index.close();
+            } catch (IOException e) {
+                logger.warn("Failed closing archive segment " + segmentNo + " in " + crawlDir + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sorted (urlHash, segment, offset) triples of one crawl, loaded from its .idx files.
+     * Later entries for the same hash win, so a re-fetched page resolves to its newest copy.
+     */
+    private static final class ArchiveIndex {
+        private final long[] hashes;
+        private final int[] segmentNos;
+        private final long[] offsets;
+        private volatile boolean stale;
+
+        private ArchiveIndex(long[] hashes, int[] segmentNos, long[] offsets) {
+            this.hashes = hashes;
+            this.segmentNos = segmentNos;
+            this.offsets = offsets;
+        }
+
+        static ArchiveIndex load(Path crawlDir) throws IOException {
+            List<long[]> entries = new ArrayList<>();
+            for (int segmentNo : segments(crawlDir)) {
+                Path idx = crawlDir.resolve(segmentName(segmentNo) + INDEX_SUFFIX);
+                if (!Files.exists(idx)) continue;
+                try (FileChannel ch = FileChannel.open(idx, StandardOpenOption.READ)) {
+                    long usable = ch.size() - ch.size() % INDEX_ENTRY_BYTES;
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, usable);
+                    while (buf.remaining() >= INDEX_ENTRY_BYTES) {
+                        entries.add(new long[]{buf.getLong(), segmentNo, buf.getLong()});
+                    }
+                }
+            }
+            // stable sort keeps write order within equal hashes
+            entries.sort(Comparator.comparingLong(e -> e[0]));
+            int n = entries.size();
+            long[] hashes = new long[n];
+            int[] segmentNos = new int[n];
+            long[] offsets = new long[n];
+            for (int i = 0; i < n; i++) {
+                long[] e = entries.get(i);
+                hashes[i] = e[0];
+                segmentNos[i] = (int) e[1];
+                offsets[i] = e[2];
+            }
+            return new ArchiveIndex(hashes, segmentNos, offsets);
+        }
+
+        long[] find(long urlHash) {
+            int i = Arrays.binarySearch(hashes, urlHash);
+            if (i < 0) return null;
+            while (i + 1 < hashes.length && hashes[i + 1] == urlHash) i++;
+            return new long[]{segmentNos[i], offsets[i]};
+        }
+    }
+}
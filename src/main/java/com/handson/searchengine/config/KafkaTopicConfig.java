@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static com.handson.searchengine.kafka.Producer.APP_TOPIC;
+import static com.handson.searchengine.kafka.Producer.DEAD_LETTER_TOPIC;
 
 @Configuration
 public class KafkaTopicConfig {
@@ -18,15 +19,25 @@ public class KafkaTopicConfig {
     @Value( "${spring.kafka.bootstrap-servers}")
     private String bootstrapAddress;
 
+    @Value("${crawler.kafka.auto-create-topics:true}")
+    private boolean autoCreateTopics;
+
     @Bean
     public KafkaAdmin kafkaAdmin() {
         Map<String, Object> configs = new HashMap<>();
         configs.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapAddress);
-        return new KafkaAdmin(configs);
+        KafkaAdmin admin = new KafkaAdmin(configs);
+        admin.setAutoCreate(autoCreateTopics);
+        return admin;
     }
 
     @Bean
     public NewTopic topic1() {
         return new NewTopic(APP_TOPIC, 1, (short) 1);
     }
+
+    @Bean
+    public NewTopic deadLetterTopic() {
+        return new NewTopic(DEAD_LETTER_TOPIC, 1, (short) 1);
+    }
 }
@@ -1,5 +1,7 @@
 package com.handson.searchengine.config;
 
+import com.handson.searchengine.controller.AppController;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -8,12 +10,14 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  * Configuration to enable CORS for the frontend to communicate with the backend.
  */
 @Configuration
+@ConditionalOnWebApplication
 public class WebConfig implements WebMvcConfigurer {
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
                 .allowedOrigins("http://localhost:3000","https://search.runmydocker-app.com")
                 .allowedMethods("GET", "POST", "PUT", "DELETE")
-                .allowedHeaders("*");
+                .allowedHeaders("*")
+                .exposedHeaders(AppController.NEXT_CURSOR_HEADER);
     }
 }
\ No newline at end of file
@@ -1,14 +1,36 @@
 package com.handson.searchengine.controller;
 
 import com.handson.searchengine.model.CrawlStatusOut;
+import com.handson.searchengine.model.CrawlSubmission;
 import com.handson.searchengine.model.CrawlerRequest;
+import com.handson.searchengine.model.HostLimit;
+import com.handson.searchengine.model.ReindexRequest;
+import com.handson.searchengine.model.ReindexStatus;
+import com.handson.searchengine.model.ResumeResult;
+import com.handson.searchengine.model.SearchPage;
+import com.handson.searchengine.model.SearchQuery;
 import com.handson.searchengine.model.SearchResultDto;
+import com.handson.searchengine.model.SearchResults;
+import com.handson.searchengine.model.Suggestion;
+import com.handson.searchengine.model.TraceEvent;
+import com.handson.searchengine.reindex.ReindexService;
+import com.handson.searchengine.suggest.SuggestService;
 import com.handson.searchengine.util.ElasticSearch;
+import com.handson.searchengine.crawler.CrawlRecovery;
+import com.handson.searchengine.crawler.CrawlSubmissionService;
+import com.handson.searchengine.crawler.CrawlTrace;
 import com.handson.searchengine.crawler.Crawler;
+import com.handson.searchengine.crawler.HostConcurrencyController;
 import com.handson.searchengine.kafka.Producer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
@@ -19,10 +41,18 @@ import java.util.Random;
  * even if internals (redis / es) fail.
  */
 @RestController
+@ConditionalOnWebApplication
 @RequestMapping("/api")
 public class AppController {
 
     private static final int ID_LENGTH = 6;
+    private static final int MAX_BATCH_QUERIES = 20;
+    private static final int MAX_RESULTS_PER_QUERY = 100;
+    private static final int MAX_SUGGESTIONS = 10;
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_TRACE_EVENTS = 2000;
+    private static final int MAX_SCOPE_RULES = 200;
+    private static final int MAX_SCOPE_RULE_LENGTH = 512;
     private Random random = new Random();
 
     @Autowired
@@ -34,9 +64,29 @@ public class AppController {
     @Autowired
     ElasticSearch elasticSearch;
 
-    // Start a crawl: returns crawlId (string)
+    @Autowired
+    ReindexService reindexService;
+
+    @Autowired
+    HostConcurrencyController hostController;
+
+    @Autowired
+    CrawlRecovery crawlRecovery;
+
+    @Autowired
+    CrawlSubmissionService crawlSubmissionService;
+
+    @Autowired
+    SuggestService suggestService;
+
+    @Autowired
+    CrawlTrace crawlTrace;
+
+    // Start a crawl: returns crawlId (string). 202 if it has to wait for a free slot, 429 with Retry-After when over capacity
     @PostMapping("/crawl")
-    public String crawl(@RequestBody CrawlerRequest request) throws IOException, InterruptedException {
+    public ResponseEntity<String> crawl(@RequestBody CrawlerRequest request,
+                                        @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                        HttpServletRequest httpRequest) throws IOException, InterruptedException {
         String crawlId = generateCrawlId();
 
         // Normalize URL: ensure protocol and WWW (best-effort)
@@ -63,18 +113,33 @@ public class AppController {
             // if parsing fails, keep best-effort url
         }
         request.setUrl(u);
+        checkScopeRules(request.getHosts(), "hosts");
+        checkScopeRules(request.getInclude(), "include");
+        checkScopeRules(request.getExclude(), "exclude");
 
-        // run crawler in background
-        new Thread(() -> {
-            try {
-                crawler.crawl(crawlId, request);
-            } catch (Exception e) {
-                // Log and swallow - controller already returned crawlId to client.
-                e.printStackTrace();
-            }
-        }).start();
+        if (clientId == null || clientId.trim().isEmpty()) clientId = httpRequest.getRemoteAddr();
+        CrawlSubmission submission = crawlSubmissionService.submit(crawlId, clientId.trim(), request);
+        switch (submission.getStatus()) {
+            case started:
+                return ResponseEntity.ok(crawlId);
+            case pending:
+                return ResponseEntity.status(HttpStatus.ACCEPTED).body(crawlId);
+            default:
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(submission.getRetryAfterSeconds()))
+                        .body(submission.getMessage());
+        }
+    }
 
-        return crawlId;
+    private static void checkScopeRules(List<String> rules, String name) {
+        if (rules.size() > MAX_SCOPE_RULES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_SCOPE_RULES + " " + name + " rules");
+        }
+        for (String rule : rules) {
+            if (rule != null && (rule.length() > MAX_SCOPE_RULE_LENGTH || rule.indexOf('\n') >= 0)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, name + " rules must be single lines of at most " + MAX_SCOPE_RULE_LENGTH + " chars");
+            }
+        }
     }
 
     // Get crawl status (returns CrawlStatusOut). Defensive: always returns a valid object.
@@ -89,6 +154,17 @@ public class AppController {
         }
     }
 
+    // Latest steps of a crawl (fetches, failures, links queued, index results) on any node, oldest first.
+    // Pass the last seq seen as after to page through newer events.
+    @GetMapping("/crawl/{crawlId}/trace")
+    public List<TraceEvent> getCrawlTrace(@PathVariable String crawlId, @RequestParam(defaultValue = "-1") long after,
+                                          @RequestParam(defaultValue = "200") int limit) {
+        if (limit < 1 || limit > MAX_TRACE_EVENTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be 1-" + MAX_TRACE_EVENTS);
+        }
+        return crawlTrace.events(crawlId, after, limit);
+    }
+
     // Stop a running crawl
     @PostMapping("/crawl/{crawlId}/stop")
     public void stopCrawl(@PathVariable String crawlId) {
@@ -102,10 +178,95 @@ public class AppController {
         }
     }
 
-    // Search endpoint: returns list of url + snippet (highlight) DTOs
+    // Delete a crawl: stops it and drops its index and its state
+    @DeleteMapping("/crawl/{crawlId}")
+    public void deleteCrawl(@PathVariable String crawlId) throws IOException {
+        try {
+            crawler.deleteCrawl(crawlId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Resume a crawl interrupted by a restart: requeues unfinished urls and indexes fetched pages from the archive.
+    // 409 if the crawl is still running or was stopped by the user.
+    @PostMapping("/crawl/{crawlId}/resume")
+    public ResumeResult resumeCrawl(@PathVariable String crawlId) throws IOException {
+        try {
+            return crawlRecovery.resume(crawlId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+    }
+
+    // Current adaptive concurrency limit, latency and fetch timeout per host
+    @GetMapping("/hosts")
+    public List<HostLimit> getHostLimits() {
+        return hostController.limits();
+    }
+
+    // Search endpoint: returns a page of url + title + snippet (highlight) DTOs; with crawlId only that crawl's index is
+    // searched. The X-Next-Cursor header, absent on the last page, is passed back as cursor for the page after it.
+    // snapshot=true pins the order of the following pages to a point in time, for clients that page deep.
     @GetMapping("/search")
-    public List<SearchResultDto> search(@RequestParam String query) throws IOException {
-        return elasticSearch.search(query);
+    public ResponseEntity<List<SearchResultDto>> search(@RequestParam String query, @RequestParam(required = false) String crawlId,
+                                                        @RequestParam(defaultValue = "50") int size,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "false") boolean snapshot) throws IOException {
+        if (size < 1 || size > MAX_RESULTS_PER_QUERY) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be 1-" + MAX_RESULTS_PER_QUERY);
+        }
+        try {
+            SearchPage page = elasticSearch.searchPage(query, crawlId, size, cursor, snapshot);
+            ResponseEntity.BodyBuilder res = ResponseEntity.ok();
+            if (page.getNextCursor() != null) res.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            return res.body(page.getResults());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Type-ahead: most frequent titles and title/heading words starting with prefix, served from memory
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam String prefix, @RequestParam(defaultValue = "5") int size) {
+        if (size < 1 || size > MAX_SUGGESTIONS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be 1-" + MAX_SUGGESTIONS);
+        }
+        return suggestService.suggest(prefix, size);
+    }
+
+    // Several searches in one Elasticsearch round trip; results come back in request order
+    @PostMapping("/search/batch")
+    public List<SearchResults> searchBatch(@RequestBody List<SearchQuery> queries) throws IOException {
+        if (queries == null || queries.isEmpty() || queries.size() > MAX_BATCH_QUERIES) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected 1 to " + MAX_BATCH_QUERIES + " queries");
+        }
+        for (SearchQuery q : queries) {
+            if (q.getQuery() == null || q.getQuery().trim().isEmpty()) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Every query needs a query text");
+            }
+            if (q.getSize() < 1 || q.getSize() > MAX_RESULTS_PER_QUERY || q.getOffset() < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size must be 1-" + MAX_RESULTS_PER_QUERY + " and offset >= 0");
+            }
+        }
+        try {
+            return elasticSearch.multiSearch(queries);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    // Rebuild the index from stored pages into a new index and swap the alias to it. Returns immediately with the job status.
+    @PostMapping("/reindex")
+    public ReindexStatus reindex(@RequestBody ReindexRequest request) {
+        return reindexService.start(request);
+    }
+
+    @GetMapping("/reindex/{jobId}")
+    public ReindexStatus getReindex(@PathVariable String jobId) {
+        return reindexService.getStatus(jobId);
     }
 
     // send direct kafka payload (kept for testing) - also normalize URL
@@ -0,0 +1,19 @@
+package com.handson.searchengine.crawler;
+
+/**
+ * Indexing support for a non-HTML content type. HTML is handled by PageExtractor itself since it also yields
+ * the links to follow; any other type the crawler should fetch needs a ContentExtractor bean, and types with
+ * none are rejected from the response headers before the body is downloaded.
+ */
+public interface ContentExtractor {
+
+    /**
+     * mimeType is lowercase without parameters, e.g. "text/plain".
+     */
+    boolean supports(String mimeType);
+
+    // stored as the doc's contentType
+    String type();
+
+    String text(String body);
+}
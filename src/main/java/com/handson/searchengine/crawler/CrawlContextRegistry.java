@@ -0,0 +1,90 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the parameters of every running crawl: once in Redis ({crawlId}.context) for all workers,
+ * and in a local cache so the consumer hot path does not go to Redis per message.
+ */
+@Component
+public class CrawlContextRegistry {
+
+    private static final long CONTEXT_GRACE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_CACHED = 10_000;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final Map<String, CrawlContext> cache = new ConcurrentHashMap<>();
+    // compiled scope rules, built on first use and dropped with the context
+    private final Map<String, ScopeMatcher> scopes = new ConcurrentHashMap<>();
+
+    public void register(CrawlContext ctx) {
+        String key = contextKey(ctx.getCrawlId());
+        redisTemplate.delete(key);
+        redisTemplate.opsForHash().putAll(key, ctx.toMap());
+        long ttl = Math.max(ctx.getMaxTime() - System.currentTimeMillis(), 0) + CONTEXT_GRACE_MILLIS;
+        redisTemplate.expire(key, ttl, TimeUnit.MILLISECONDS);
+        evictExpired();
+        cache.put(ctx.getCrawlId(), ctx);
+        scopes.remove(ctx.getCrawlId());
+    }
+
+    /**
+     * Returns the crawl parameters, or null if the crawl is unknown (or long expired).
+     */
+    public CrawlContext get(String crawlId) {
+        CrawlContext ctx = cache.get(crawlId);
+        if (ctx != null) return ctx;
+        try {
+            ctx = CrawlContext.fromMap(redisTemplate.opsForHash().entries(contextKey(crawlId)));
+        } catch (Exception e) {
+            logger.warn("Failed reading crawl context for " + crawlId + ": " + e.getMessage());
+            return null;
+        }
+        if (ctx != null) {
+            evictExpired();
+            cache.put(crawlId, ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * The crawl's compiled scope rules; for an unknown crawl, the seed prefix of baseUrl.
+     */
+    public ScopeMatcher scopeOf(String crawlId, String baseUrl) {
+        ScopeMatcher scope = scopes.get(crawlId);
+        if (scope != null) return scope;
+        CrawlContext ctx = get(crawlId);
+        if (ctx == null) return ScopeMatcher.of(baseUrl);
+        return scopes.computeIfAbsent(crawlId, id -> ScopeMatcher.of(ctx));
+    }
+
+    public void remove(String crawlId) {
+        cache.remove(crawlId);
+        scopes.remove(crawlId);
+        redisTemplate.delete(contextKey(crawlId));
+    }
+
+    private void evictExpired() {
+        if (cache.size() < MAX_CACHED) return;
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(c -> c.getMaxTime() + CONTEXT_GRACE_MILLIS < now);
+        scopes.keySet().retainAll(cache.keySet());
+    }
+
+    private static String contextKey(String crawlId) {
+        return crawlId + ".context";
+    }
+}
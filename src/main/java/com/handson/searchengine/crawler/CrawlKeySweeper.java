@@ -0,0 +1,148 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.graph.LinkGraphService;
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlStatus;
+import com.handson.searchengine.util.CrawlStatusCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes the Redis keys of a crawl expire once it is over, so Redis does not keep every crawl ever run.
+ * The keys get crawler.keys.ttl-after-stop-millis when the crawl stops or runs out of time; the sweeper
+ * periodically catches the rest: crawls that stopped on another worker, ended without a stop event, or whose
+ * status was rewritten after the TTL was set.
+ */
+@Component
+public class CrawlKeySweeper {
+
+    private static final String LOCK_KEY = "crawls.sweeper.lock";
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private VisitedSet visitedSet;
+
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Autowired
+    private CrawlSlots crawlSlots;
+
+    @Autowired
+    private UrlBudget urlBudget;
+
+    @Value("${crawler.keys.ttl-after-stop-millis:86400000}")
+    private long ttlAfterStop;
+
+    // a crawl whose status has not changed for this long is considered abandoned
+    @Value("${crawler.keys.orphan-after-millis:86400000}")
+    private long orphanAfter;
+
+    @Value("${crawler.keys.sweep-millis:3600000}")
+    private long sweepMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    // crawls whose keys this worker already set to expire, and when; kept until the keys are gone
+    private final Map<String, Long> expired = new ConcurrentHashMap<>();
+
+    /**
+     * Called when a crawl is over; cheap to call repeatedly.
+     */
+    public void onCrawlEnded(String crawlId) {
+        if (expired.putIfAbsent(crawlId, System.currentTimeMillis()) == null) expire(crawlId);
+    }
+
+    private void expire(String crawlId) {
+        crawlSlots.release(crawlId);
+        urlBudget.release(crawlId);
+        CrawlContext ctx = contextRegistry.get(crawlId);
+        List<String> keys = new ArrayList<>(Arrays.asList(
+                crawlId + ".status", crawlId + ".urls.count", crawlId + ".urls.state", CrawlScheduler.overflowKey(crawlId),
+                LinkGraphService.edgesKey(crawlId)));
+        if (ctx != null) {
+            keys.addAll(visitedSet.keys(crawlId, ctx.getMaxUrls()));
+        } else {
+            keys.addAll(scanKeys(crawlId + ".visited*"));
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.pExpire(key.getBytes(StandardCharsets.UTF_8), ttlAfterStop);
+            }
+            return null;
+        });
+        logger.info("Crawl " + crawlId + " is over, its keys expire in " + TimeUnit.MILLISECONDS.toMinutes(ttlAfterStop) + " minutes");
+    }
+
+    /**
+     * Finds crawl statuses without a TTL that are stopped or abandoned. Only one worker sweeps at a time.
+     */
+    @Scheduled(fixedDelayString = "${crawler.keys.sweep-millis:3600000}", initialDelayString = "${crawler.keys.sweep-initial-delay-millis:60000}")
+    public void sweep() {
+        forgetExpired(System.currentTimeMillis());
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "1", sweepMillis / 2, TimeUnit.MILLISECONDS);
+        if (!Boolean.TRUE.equals(locked)) return;
+        long now = System.currentTimeMillis();
+        int swept = 0;
+        for (String key : scanKeys("*.status")) {
+            try {
+                Long ttl = redisTemplate.getExpire(key);
+                if (ttl == null || ttl != -1) continue;
+                Object raw = redisTemplate.opsForValue().get(key);
+                if (raw == null) continue;
+                CrawlStatus status = CrawlStatusCodec.decode(raw.toString());
+                String crawlId = key.substring(0, key.length() - ".status".length());
+                CrawlContext ctx = contextRegistry.get(crawlId);
+                boolean overdue = ctx != null && ctx.getMaxTime() < now;
+                boolean abandoned = status.getLastModifiedMillis() + orphanAfter < now;
+                if (status.getStopReason() != null || overdue || abandoned) {
+                    expire(crawlId);
+                    swept++;
+                }
+            } catch (Exception e) {
+                logger.warn("Failed sweeping " + key + ": " + e.getMessage());
+            }
+        }
+        if (swept > 0) logger.info("Set " + swept + " ended crawls to expire");
+    }
+
+    // past ttlAfterStop the crawl's keys are gone, and a late onCrawlEnded would only expire missing keys
+    void forgetExpired(long now) {
+        expired.values().removeIf(at -> at + ttlAfterStop < now);
+    }
+
+    int expiredCount() {
+        return expired.size();
+    }
+
+    private List<String> scanKeys(String pattern) {
+        List<String> keys = new ArrayList<>();
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            try (Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(pattern).count(1000).build())) {
+                while (cursor.hasNext()) keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                logger.warn("Failed scanning keys " + pattern + ": " + e.getMessage());
+            }
+            return null;
+        });
+        return keys;
+    }
+}
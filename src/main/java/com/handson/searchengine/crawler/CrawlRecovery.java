@@ -0,0 +1,130 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.archive.PageArchive;
+import com.handson.searchengine.kafka.Producer;
+import com.handson.searchengine.model.ArchivedPage;
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlStatus;
+import com.handson.searchengine.model.CrawlerRecord;
+import com.handson.searchengine.model.ResumeResult;
+import com.handson.searchengine.model.StopReason;
+import com.handson.searchengine.model.UrlState;
+import com.handson.searchengine.util.CrawlStatusCodec;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks up a crawl after a worker restart from its url states: urls that were queued or being fetched are
+ * published to the frontier again, and pages that were fetched but never made it to the index are indexed
+ * from the page archive, so nothing is fetched twice.
+ * Only crawls that nothing is working on any more can be resumed: ones no worker has touched for
+ * crawler.resume.stale-millis, which is what a restart leaves behind. Crawls stopped (or deleted) by the user are
+ * refused, and one past its maxTime only gets its fetched pages indexed. Any other stop reason (maxUrls, maxDistance)
+ * only means no new urls are admitted; the ones already admitted still have to be crawled, so they are requeued.
+ */
+@Service
+public class CrawlRecovery {
+
+    @Autowired
+    private UrlStateStore urlStates;
+
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Autowired
+    private Producer producer;
+
+    @Autowired
+    private PageArchive pageArchive;
+
+    @Autowired
+    private PageExtractor pageExtractor;
+
+    @Autowired
+    private Indexer indexer;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${crawler.resume.stale-millis:120000}")
+    private long staleMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    /**
+     * Throws IllegalArgumentException for an unknown crawl and IllegalStateException for one that must not be resumed.
+     */
+    public ResumeResult resume(String crawlId) throws IOException {
+        CrawlContext ctx = contextRegistry.get(crawlId);
+        Object raw = redisTemplate.opsForValue().get(crawlId + ".status");
+        if (ctx == null || raw == null) {
+            throw new IllegalArgumentException("Unknown or expired crawl: " + crawlId);
+        }
+        CrawlStatus status = CrawlStatusCodec.decode(raw.toString());
+        if (status.getStopReason() == StopReason.userInitiated) {
+            // a user stop (or delete) is final
+            throw new IllegalStateException("Crawl " + crawlId + " already ended: " + status.getStopReason()
+                    + (status.getErrorMessage() != null ? " (" + status.getErrorMessage() + ")" : ""));
+        }
+        long now = System.currentTimeMillis();
+        if (status.getLastModifiedMillis() + staleMillis > now) {
+            throw new IllegalStateException("Crawl " + crawlId + " is still running");
+        }
+        // workers would drop requeued urls as timed out anyway; the fetched pages can still be indexed
+        boolean requeue = ctx.getMaxTime() > now;
+        // everything spilled there is also "queued" below and would be crawled twice
+        if (requeue) redisTemplate.delete(CrawlScheduler.overflowKey(crawlId));
+
+        AtomicInteger requeued = new AtomicInteger();
+        AtomicInteger reindexed = new AtomicInteger();
+        AtomicInteger done = new AtomicInteger();
+        urlStates.forEach(crawlId, (url, entry) -> {
+            switch (entry.getState()) {
+                case queued:
+                case fetching:
+                    if (requeue) {
+                        requeue(ctx, url, entry.getDistance());
+                        requeued.incrementAndGet();
+                    }
+                    break;
+                case fetched:
+                    if (reindex(crawlId, url)) {
+                        reindexed.incrementAndGet();
+                    } else if (requeue) {
+                        requeue(ctx, url, entry.getDistance());
+                        requeued.incrementAndGet();
+                    }
+                    break;
+                default:
+                    done.incrementAndGet();
+            }
+        });
+        logger.info("Resumed crawl " + crawlId + (requeue ? "" : " past its maxTime") + ": requeued " + requeued + ", reindexed " + reindexed + ", done " + done);
+        return ResumeResult.of(crawlId, requeued.get(), reindexed.get(), done.get());
+    }
+
+    private void requeue(CrawlContext ctx, String url, int distance) {
+        urlStates.mark(ctx.getCrawlId(), url, UrlState.queued, distance);
+        producer.sendFrontier(CrawlerRecord.of(ctx, url, distance));
+    }
+
+    private boolean reindex(String crawlId, String url) {
+        if (!pageArchive.isEnabled()) return false;
+        try {
+            ArchivedPage page = pageArchive.read(crawlId, url);
+            if (page == null) return false;
+            indexer.index(pageExtractor.extract(page));
+            return true;
+        } catch (Exception e) {
+            logger.warn("Failed reindexing " + url + " from the archive: " + e.getMessage());
+            return false;
+        }
+    }
+}
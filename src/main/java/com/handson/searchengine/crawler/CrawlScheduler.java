@@ -0,0 +1,363 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.kafka.FrontierCodec;
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlerRecord;
+import com.handson.searchengine.util.BlockingIoExecutor;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fair queuing of frontier records across crawls.
+ * The Kafka listeners only hand records over; each crawl gets its own sub-queue, and the workers pick
+ * the next record by deficit round-robin weighted by the crawl's weight, skipping crawls that are at
+ * their concurrency or bandwidth quota. A crawl's sub-queue is bounded locally and spills the overflow to
+ * Redis ({crawlId}.frontier.overflow), so a huge crawl never blocks the listeners for everyone else.
+ * A single dispatcher thread picks the records; each one is crawled as a BlockingIoExecutor task, so with virtual
+ * threads crawler.scheduler.workers can be in the thousands (slow fetches then just wait) instead of a pool size.
+ * Spilled records are moved back on a separate refill thread, a batch per script call, so Redis round trips never
+ * hold up the dispatcher.
+ */
+@Component
+public class CrawlScheduler {
+
+    // pops up to ARGV[1] records off the head of the overflow list in one call
+    private static final DefaultRedisScript<List> POP_BATCH = new DefaultRedisScript<>(
+            "local n = tonumber(ARGV[1]) " +
+            "local items = redis.call('LRANGE', KEYS[1], 0, n - 1) " +
+            "if #items > 0 then redis.call('LTRIM', KEYS[1], #items, -1) end " +
+            "return items", List.class);
+    private static final long REFILL_RETRY_MILLIS = 1000;
+
+    @Autowired
+    private Crawler crawler;
+
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${crawler.scheduler.workers:5}")
+    private int workers;
+
+    @Value("${executor.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${crawler.scheduler.max-queued-per-crawl:200}")
+    private int maxQueuedPerCrawl;
+
+    @Value("${crawler.shutdown.drain-millis:20000}")
+    private long drainMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Map<String, CrawlQueue> queues = new HashMap<>();
+    // crawls that have queued records, in round-robin order
+    private final ArrayDeque<CrawlQueue> active = new ArrayDeque<>();
+    private BlockingIoExecutor crawlExecutor;
+    private ScheduledExecutorService refiller;
+    private Thread dispatcher;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        crawlExecutor = BlockingIoExecutor.create("crawl", workers, 0, virtualThreads);
+        refiller = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "frontier-refill"));
+        dispatcher = new Thread(this::dispatchLoop, "crawl-dispatcher");
+        dispatcher.start();
+    }
+
+    public void submit(CrawlerRecord rec) {
+        CrawlContext ctx = contextRegistry.get(rec.getCrawlId());
+        boolean spill;
+        lock.lock();
+        try {
+            CrawlQueue q = queues.computeIfAbsent(rec.getCrawlId(), id -> new CrawlQueue(id, ctx));
+            spill = q.records.size() >= maxQueuedPerCrawl;
+            if (spill) {
+                q.overflow = true;
+            } else {
+                q.records.addLast(rec);
+                activate(q);
+                workAvailable.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (spill) {
+            redisTemplate.opsForList().rightPush(overflowKey(rec.getCrawlId()),
+                    Base64.getEncoder().encodeToString(FrontierCodec.encode(rec)));
+        }
+    }
+
+    // takes the next record as soon as the executor has a free slot for it
+    private void dispatchLoop() {
+        while (running) {
+            CrawlerRecord rec;
+            try {
+                rec = takeNext();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                crawlExecutor.executeBlocking(() -> crawl(rec));
+            } catch (InterruptedException | RejectedExecutionException e) {
+                // stopping; the record stays "queued" in UrlStateStore and comes back with a resume
+                complete(rec.getCrawlId(), 0);
+                return;
+            }
+        }
+    }
+
+    private void crawl(CrawlerRecord rec) {
+        long bytes = 0;
+        try {
+            bytes = crawler.crawlOneRecord(rec.getCrawlId(), rec);
+        } catch (Exception e) {
+            logger.error("Unexpected failure crawling " + rec.getUrl() + ": " + e.getMessage(), e);
+        } finally {
+            complete(rec.getCrawlId(), bytes);
+        }
+    }
+
+    /**
+     * Deficit round-robin: a crawl coming to the head of the ring gets weight credits and is served while
+     * it has credit, records and quota; then it goes to the back of the ring.
+     */
+    private CrawlerRecord takeNext() throws InterruptedException {
+        CrawlerRecord rec = null;
+        CrawlQueue refill = null;
+        lock.lock();
+        try {
+            while (rec == null) {
+                long now = System.nanoTime();
+                long waitNanos = TimeUnit.SECONDS.toNanos(1);
+                for (int i = 0, n = active.size(); i < n && rec == null; i++) {
+                    CrawlQueue q = active.peekFirst();
+                    long blockedFor = q.blockedForNanos(now);
+                    if (blockedFor > 0) {
+                        waitNanos = Math.min(waitNanos, blockedFor);
+                        endTurn(q);
+                        continue;
+                    }
+                    if (!q.inTurn) {
+                        q.deficit += q.weight;
+                        q.inTurn = true;
+                    }
+                    rec = q.records.pollFirst();
+                    q.deficit--;
+                    q.inFlight++;
+                    if (q.deficit < 1 || q.records.isEmpty()) endTurn(q);
+                    if (q.overflow && q.records.size() < maxQueuedPerCrawl / 2 && !q.refilling) {
+                        q.refilling = true;
+                        refill = q;
+                    }
+                }
+                if (rec == null) workAvailable.awaitNanos(waitNanos);
+                if (!running) throw new InterruptedException("Scheduler stopped");
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (refill != null) scheduleRefill(refill, 0);
+        return rec;
+    }
+
+    private void complete(String crawlId, long bytes) {
+        lock.lock();
+        try {
+            CrawlQueue q = queues.get(crawlId);
+            if (q == null) return;
+            q.inFlight--;
+            q.charge(bytes);
+            if (q.records.isEmpty() && q.inFlight == 0 && !q.overflow && !q.refilling) {
+                queues.remove(crawlId);
+            }
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleRefill(CrawlQueue q, long delayMillis) {
+        try {
+            refiller.schedule(() -> refill(q), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopping; the spilled records stay "queued" in UrlStateStore and come back with a resume
+        }
+    }
+
+    /**
+     * Moves a batch of spilled records of the crawl back from Redis into its local sub-queue. If Redis fails the
+     * refill is retried after a second, the crawl staying marked as refilling meanwhile, so a crawl whose whole
+     * frontier is in the overflow does not stall.
+     */
+    private void refill(CrawlQueue q) {
+        int batch = Math.max(1, maxQueuedPerCrawl / 2);
+        List<?> encoded;
+        try {
+            encoded = redisTemplate.execute(POP_BATCH, Collections.singletonList(overflowKey(q.crawlId)), String.valueOf(batch));
+        } catch (Exception e) {
+            logger.warn("Failed refilling frontier of crawl " + q.crawlId + " from overflow, retrying: " + e.getMessage());
+            if (running) scheduleRefill(q, REFILL_RETRY_MILLIS);
+            return;
+        }
+        if (encoded == null) encoded = Collections.emptyList();
+        boolean drained = encoded.size() < batch;
+        // the context may have been unknown when the first record of the crawl arrived
+        CrawlContext ctx = q.ctx != null ? q.ctx : contextRegistry.get(q.crawlId);
+        List<CrawlerRecord> refilled = new ArrayList<>(encoded.size());
+        if (ctx == null && !encoded.isEmpty()) {
+            logger.warn("Dropping " + encoded.size() + " spilled records of crawl " + q.crawlId + ", its context is gone");
+        } else {
+            for (Object e : encoded) {
+                try {
+                    FrontierCodec.Message msg = FrontierCodec.decode(Base64.getDecoder().decode(e.toString()));
+                    refilled.add(CrawlerRecord.of(ctx, msg.getUrl(), msg.getDistance(), msg.getAttempt()));
+                } catch (Exception ex) {
+                    logger.warn("Dropping unreadable spilled record of crawl " + q.crawlId + ": " + ex.getMessage());
+                }
+            }
+        }
+        lock.lock();
+        try {
+            q.refilling = false;
+            if (drained) q.overflow = false;
+            CrawlQueue target = queues.computeIfAbsent(q.crawlId, id -> q);
+            target.records.addAll(refilled);
+            if (!target.records.isEmpty()) {
+                activate(target);
+                workAvailable.signalAll();
+            } else if (!drained) {
+                // every record of the batch was dropped; nothing local would trigger the next batch
+                q.refilling = true;
+                scheduleRefill(q, 0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void activate(CrawlQueue q) {
+        if (!q.active) {
+            q.active = true;
+            active.addLast(q);
+        }
+    }
+
+    private void endTurn(CrawlQueue q) {
+        active.pollFirst();
+        q.inTurn = false;
+        if (q.records.isEmpty()) {
+            q.active = false;
+            q.deficit = 0;
+        } else {
+            active.addLast(q);
+        }
+    }
+
+    static String overflowKey(String crawlId) {
+        return crawlId + ".frontier.overflow";
+    }
+
+    /**
+     * Stops taking records and gives the ones being crawled up to crawler.shutdown.drain-millis to finish.
+     * Records still queued locally or in the overflow stay "queued" in UrlStateStore and come back with a resume.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        refiller.shutdownNow();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+        int inFlight = 0;
+        lock.lock();
+        try {
+            workAvailable.signalAll();
+            while ((inFlight = inFlight()) > 0) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) break;
+                workAvailable.awaitNanos(left);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        if (inFlight > 0) {
+            logger.warn(inFlight + " records still being crawled after " + drainMillis + "ms, interrupting them");
+        }
+        dispatcher.interrupt();
+        crawlExecutor.shutdownNow();
+    }
+
+    private int inFlight() {
+        int n = 0;
+        for (CrawlQueue q : queues.values()) n += q.inFlight;
+        return n;
+    }
+
+    private static final class CrawlQueue {
+        final String crawlId;
+        final CrawlContext ctx;
+        final ArrayDeque<CrawlerRecord> records = new ArrayDeque<>();
+        final int weight;
+        final int maxConcurrency;
+        final long bytesPerSecond;
+        int deficit;
+        int inFlight;
+        boolean inTurn;
+        boolean active;
+        boolean overflow;
+        boolean refilling;
+        // token bucket for bandwidth; may go negative, the crawl then waits until it is paid back
+        double tokens;
+        long lastRefillNanos = System.nanoTime();
+
+        CrawlQueue(String crawlId, CrawlContext ctx) {
+            this.crawlId = crawlId;
+            this.ctx = ctx;
+            this.weight = ctx != null ? ctx.getWeight() : 1;
+            this.maxConcurrency = ctx != null ? ctx.getMaxConcurrency() : 0;
+            this.bytesPerSecond = ctx != null ? ctx.getMaxBytesPerSecond() : 0;
+            this.tokens = bytesPerSecond;
+        }
+
+        long blockedForNanos(long now) {
+            if (maxConcurrency > 0 && inFlight >= maxConcurrency) return TimeUnit.SECONDS.toNanos(1);
+            if (bytesPerSecond <= 0) return 0;
+            refillTokens(now);
+            if (tokens >= 0) return 0;
+            return (long) (-tokens / bytesPerSecond * TimeUnit.SECONDS.toNanos(1)) + 1;
+        }
+
+        void charge(long bytes) {
+            if (bytesPerSecond <= 0) return;
+            refillTokens(System.nanoTime());
+            tokens -= bytes;
+        }
+
+        private void refillTokens(long now) {
+            tokens = Math.min(bytesPerSecond, tokens + (now - lastRefillNanos) / 1e9 * bytesPerSecond);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.handson.searchengine.crawler;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cluster-wide count of running crawls, in total and per client.
+ * A running crawl holds a slot in crawls.active (and crawls.active.{client}) scored by its end time, so a crawl
+ * frees its slot when it is stopped, spends its url budget or times out, or, at the latest, when its maxSeconds
+ * run out. Taking a slot checks both limits and adds the crawl in one script call, so concurrent submissions on
+ * different nodes can't overshoot.
+ */
+@Component
+public class CrawlSlots {
+
+    public static final int ACQUIRED = 0;
+    public static final int GLOBAL_FULL = 1;
+    public static final int CLIENT_FULL = 2;
+
+    private static final String ACTIVE_KEY = "crawls.active";
+    private static final String CLIENTS_KEY = "crawls.active.clients";
+
+    // returns {result, earliest end time of the crawls in the way}; crawls past their end time are dropped from
+    // every set first, including the client map and the other clients' sets
+    private static final DefaultRedisScript<List> ACQUIRE = new DefaultRedisScript<>(
+            "local now = tonumber(ARGV[1]) " +
+            "local ended = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', now) " +
+            "for _, id in ipairs(ended) do " +
+            "  local client = redis.call('HGET', KEYS[3], id) " +
+            "  if client then redis.call('ZREM', KEYS[1] .. '.' .. client, id) end " +
+            "  redis.call('HDEL', KEYS[3], id) " +
+            "  redis.call('ZREM', KEYS[1], id) " +
+            "end " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', now) " +
+            "local maxGlobal = tonumber(ARGV[5]) " +
+            "local maxClient = tonumber(ARGV[6]) " +
+            "if maxGlobal > 0 and redis.call('ZCARD', KEYS[1]) >= maxGlobal then " +
+            "  local first = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES') " +
+            "  return {1, tonumber(first[2])} " +
+            "end " +
+            "if maxClient > 0 and redis.call('ZCARD', KEYS[2]) >= maxClient then " +
+            "  local first = redis.call('ZRANGE', KEYS[2], 0, 0, 'WITHSCORES') " +
+            "  return {2, tonumber(first[2])} " +
+            "end " +
+            "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[3]) " +
+            "redis.call('ZADD', KEYS[2], ARGV[2], ARGV[3]) " +
+            "redis.call('HSET', KEYS[3], ARGV[3], ARGV[4]) " +
+            "return {0, 0}", List.class);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    public static final class Result {
+        private final int code;
+        private final long retryAtMillis;
+
+        Result(int code, long retryAtMillis) {
+            this.code = code;
+            this.retryAtMillis = retryAtMillis;
+        }
+
+        public boolean isAcquired() {
+            return code == ACQUIRED;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        // when the first slot in the way frees up at the latest
+        public long getRetryAtMillis() {
+            return retryAtMillis;
+        }
+    }
+
+    public Result tryAcquire(String crawlId, String clientId, long endTimeMillis, int maxGlobal, int maxPerClient) {
+        List<?> res = redisTemplate.execute(ACQUIRE, Arrays.asList(ACTIVE_KEY, ACTIVE_KEY + "." + clientId, CLIENTS_KEY),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(endTimeMillis), crawlId, clientId,
+                String.valueOf(maxGlobal), String.valueOf(maxPerClient));
+        if (res == null || res.size() < 2) throw new IllegalStateException("Unexpected reply from crawl slot script");
+        return new Result(((Number) res.get(0)).intValue(), ((Number) res.get(1)).longValue());
+    }
+
+    public void release(String crawlId) {
+        Object clientId = redisTemplate.opsForHash().get(CLIENTS_KEY, crawlId);
+        if (clientId != null) redisTemplate.opsForZSet().remove(ACTIVE_KEY + "." + clientId, crawlId);
+        redisTemplate.opsForZSet().remove(ACTIVE_KEY, crawlId);
+        redisTemplate.opsForHash().delete(CLIENTS_KEY, crawlId);
+    }
+}
@@ -0,0 +1,158 @@
+package com.handson.searchengine.crawler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.model.CrawlSubmission;
+import com.handson.searchengine.model.CrawlerRequest;
+import com.handson.searchengine.model.PendingCrawl;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for new crawls.
+ * A crawl starts only if it gets a slot within crawler.submission.max-active (cluster-wide) and
+ * max-active-per-client; otherwise it waits in the Redis list crawls.pending, which any worker drains as slots
+ * free up, and once that is full too the submission is rejected with a hint of when to retry.
+ * Crawls are started on a small bounded executor instead of a thread per request.
+ */
+@Service
+public class CrawlSubmissionService {
+
+    private static final String PENDING_KEY = "crawls.pending";
+
+    @Autowired
+    private Crawler crawler;
+
+    @Autowired
+    private CrawlSlots slots;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private ObjectMapper om;
+
+    @Value("${crawler.submission.max-active:20}")
+    private int maxActive;
+
+    @Value("${crawler.submission.max-active-per-client:3}")
+    private int maxActivePerClient;
+
+    @Value("${crawler.submission.max-pending:100}")
+    private int maxPending;
+
+    @Value("${crawler.submission.threads:2}")
+    private int threads;
+
+    @Value("${crawler.submission.queue-capacity:50}")
+    private int queueCapacity;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    public CrawlSubmission submit(String crawlId, String clientId, CrawlerRequest request) {
+        CrawlSlots.Result slot = slots.tryAcquire(crawlId, clientId, endTimeOf(request), maxActive, maxActivePerClient);
+        if (slot.isAcquired()) {
+            return start(crawlId, request);
+        }
+        long retryAfter = retryAfterSeconds(slot.getRetryAtMillis());
+        if (slot.getCode() == CrawlSlots.CLIENT_FULL) {
+            // queueing would only let one client fill the pending list
+            return CrawlSubmission.of(crawlId, CrawlSubmission.Status.rejected, retryAfter,
+                    "Client already runs " + maxActivePerClient + " crawls");
+        }
+        Long pending = redisTemplate.opsForList().size(PENDING_KEY);
+        if (pending != null && pending >= maxPending) {
+            return CrawlSubmission.of(crawlId, CrawlSubmission.Status.rejected, retryAfter,
+                    maxActive + " crawls running and " + pending + " waiting");
+        }
+        try {
+            redisTemplate.opsForList().rightPush(PENDING_KEY, om.writeValueAsString(PendingCrawl.of(crawlId, clientId, request)));
+        } catch (Exception e) {
+            logger.error("Failed to queue crawl " + crawlId + ": " + e.getMessage(), e);
+            return CrawlSubmission.of(crawlId, CrawlSubmission.Status.rejected, 1, "Failed to queue the crawl");
+        }
+        return CrawlSubmission.of(crawlId, CrawlSubmission.Status.pending, retryAfter, "Waiting for a free crawl slot");
+    }
+
+    /**
+     * Starts waiting crawls while there are slots. A crawl whose client is still at its limit goes back to the end
+     * of the list; each run looks at every waiting crawl at most once.
+     */
+    @Scheduled(fixedDelayString = "${crawler.submission.drain-millis:2000}")
+    public void drainPending() {
+        Long waiting = redisTemplate.opsForList().size(PENDING_KEY);
+        for (long i = 0, n = waiting == null ? 0 : waiting; i < n && executor.getQueue().remainingCapacity() > 0; i++) {
+            Object raw = redisTemplate.opsForList().leftPop(PENDING_KEY);
+            if (raw == null) return;
+            PendingCrawl p;
+            try {
+                p = om.readValue(raw.toString(), PendingCrawl.class);
+            } catch (Exception e) {
+                logger.warn("Dropping unreadable pending crawl: " + e.getMessage());
+                continue;
+            }
+            CrawlSlots.Result slot = slots.tryAcquire(p.getCrawlId(), p.getClientId(), endTimeOf(p.getRequest()), maxActive, maxActivePerClient);
+            if (slot.isAcquired()) {
+                logger.info("Starting crawl " + p.getCrawlId() + " after " + (System.currentTimeMillis() - p.getSubmittedAt()) + "ms pending");
+                if (start(p.getCrawlId(), p.getRequest()).getStatus() != CrawlSubmission.Status.started) {
+                    redisTemplate.opsForList().leftPush(PENDING_KEY, raw);
+                    return;
+                }
+                continue;
+            }
+            redisTemplate.opsForList().rightPush(PENDING_KEY, raw);
+            // nothing else can start until a slot frees up
+            if (slot.getCode() == CrawlSlots.GLOBAL_FULL) return;
+        }
+    }
+
+    private CrawlSubmission start(String crawlId, CrawlerRequest request) {
+        try {
+            executor.execute(() -> {
+                try {
+                    crawler.crawl(crawlId, request);
+                } catch (Exception e) {
+                    logger.error("Crawl " + crawlId + " failed to start: " + e.getMessage(), e);
+                    slots.release(crawlId);
+                }
+            });
+            return CrawlSubmission.of(crawlId, CrawlSubmission.Status.started, 0, null);
+        } catch (RejectedExecutionException e) {
+            slots.release(crawlId);
+            return CrawlSubmission.of(crawlId, CrawlSubmission.Status.rejected, 1, "Too many crawls starting at once");
+        }
+    }
+
+    // the slot is held until the crawl's time runs out, counted from now
+    private static long endTimeOf(CrawlerRequest request) {
+        return System.currentTimeMillis() + 1000L * Math.max(request.getMaxSeconds(), 1);
+    }
+
+    private static long retryAfterSeconds(long retryAtMillis) {
+        if (retryAtMillis <= 0) return 1;
+        return Math.max(1, (retryAtMillis - System.currentTimeMillis() + 999) / 1000);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
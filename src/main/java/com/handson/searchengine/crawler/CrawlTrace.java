@@ -0,0 +1,237 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.TraceEvent;
+import com.handson.searchengine.model.TraceEventType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-crawl journal of what the crawler did: fetches, failures, links queued, index results, shared by all nodes.
+ * Recording an event only puts it on a bounded local buffer, no I/O and no formatting, so it stays on the crawl
+ * path where per-page INFO logging used to be; every crawler.trace.flush-millis the buffer goes to the crawl's
+ * capped Redis stream ({crawlId}.trace, the latest crawler.trace.events-per-crawl events) in one script call per
+ * crawl, so any instance serves the events of pages crawled on every worker.
+ * Page events are sampled per url (crawler.trace.sample-rate), so a sampled url keeps all its events and an
+ * unsampled one costs one hash; callers that build a detail string check traces() first, so unsampled urls
+ * allocate nothing. Crawl events (started, stopped) are always kept. When the buffer is full (Redis down or slow)
+ * new events are dropped rather than held.
+ */
+@Component
+public class CrawlTrace {
+
+    private static final int FLUSH_BATCH = 200;
+    private static final int FIELDS = 7;
+
+    // ARGV: max length, ttl, then FIELDS values per event. Each event gets the crawl's next seq, which is also its
+    // stream id (seq-0), so readers page by seq with XRANGE
+    private static final DefaultRedisScript<Long> APPEND = new DefaultRedisScript<>(
+            "local n = (#ARGV - 2) / " + FIELDS + " " +
+            "for i = 0, n - 1 do " +
+            "  local b = 3 + i * " + FIELDS + " " +
+            "  local seq = redis.call('INCR', KEYS[2]) " +
+            "  redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[1], seq .. '-0', 't', ARGV[b], 'type', ARGV[b + 1], " +
+            "    'url', ARGV[b + 2], 'bytes', ARGV[b + 3], 'links', ARGV[b + 4], 'millis', ARGV[b + 5], 'detail', ARGV[b + 6]) " +
+            "end " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "redis.call('PEXPIRE', KEYS[2], ARGV[2]) " +
+            "return n", Long.class);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${crawler.trace.enabled:true}")
+    private boolean enabled;
+
+    @Value("${crawler.trace.sample-rate:0.1}")
+    private double sampleRate;
+
+    @Value("${crawler.trace.events-per-crawl:2048}")
+    private int eventsPerCrawl;
+
+    @Value("${crawler.trace.buffer-size:10000}")
+    private int bufferSize;
+
+    @Value("${crawler.trace.ttl-millis:86400000}")
+    private long ttlMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private BlockingQueue<Pending> pending;
+    private final AtomicLong dropped = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        pending = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+    }
+
+    /**
+     * A step of one page; dropped unless the url is sampled.
+     */
+    public void page(String crawlId, String url, TraceEventType type, long bytes, int links, long millis, String detail) {
+        if (!enabled || !sampled(crawlId, url)) return;
+        record(crawlId, TraceEvent.of(0, System.currentTimeMillis(), type, url, bytes, links, millis, detail));
+    }
+
+    public void page(String crawlId, String url, TraceEventType type) {
+        page(crawlId, url, type, 0, 0, 0, null);
+    }
+
+    /**
+     * Whether page events of the url are recorded; check it before building a detail string.
+     */
+    public boolean traces(String crawlId, String url) {
+        return enabled && sampled(crawlId, url);
+    }
+
+    /**
+     * A step of the crawl as a whole, always kept.
+     */
+    public void crawl(String crawlId, TraceEventType type, String detail) {
+        if (!enabled) return;
+        record(crawlId, TraceEvent.of(0, System.currentTimeMillis(), type, null, 0, 0, 0, detail));
+    }
+
+    boolean sampled(String crawlId, String url) {
+        if (sampleRate >= 1) return true;
+        if (sampleRate <= 0 || url == null) return false;
+        // murmur3 finalizer over both hashes, so the decision is stable per url and spread evenly
+        int h = url.hashCode() * 31 + crawlId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) < sampleRate * Integer.MAX_VALUE;
+    }
+
+    private void record(String crawlId, TraceEvent event) {
+        if (!pending.offer(new Pending(crawlId, event))) dropped.incrementAndGet();
+    }
+
+    /**
+     * Sends the buffered events to their crawls' streams, oldest first.
+     */
+    @Scheduled(fixedDelayString = "${crawler.trace.flush-millis:1000}")
+    @PreDestroy
+    public void flush() {
+        if (pending == null || pending.isEmpty()) return;
+        List<Pending> batch = new ArrayList<>(pending.size());
+        pending.drainTo(batch);
+        Map<String, List<String>> args = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            List<String> a = args.computeIfAbsent(p.crawlId, id -> new ArrayList<>());
+            TraceEvent e = p.event;
+            a.add(String.valueOf(e.getTimeMillis()));
+            a.add(e.getType().name());
+            a.add(e.getUrl() != null ? e.getUrl() : "");
+            a.add(String.valueOf(e.getBytes()));
+            a.add(String.valueOf(e.getLinks()));
+            a.add(String.valueOf(e.getMillis()));
+            a.add(e.getDetail() != null ? e.getDetail() : "");
+        }
+        for (Map.Entry<String, List<String>> e : args.entrySet()) {
+            List<String> values = e.getValue();
+            for (int from = 0; from < values.size(); from += FLUSH_BATCH * FIELDS) {
+                List<String> chunk = values.subList(from, Math.min(values.size(), from + FLUSH_BATCH * FIELDS));
+                Object[] argv = new Object[chunk.size() + 2];
+                argv[0] = String.valueOf(eventsPerCrawl);
+                argv[1] = String.valueOf(ttlMillis);
+                for (int i = 0; i < chunk.size(); i++) argv[i + 2] = chunk.get(i);
+                try {
+                    redisTemplate.execute(APPEND, Arrays.asList(streamKey(e.getKey()), seqKey(e.getKey())), argv);
+                } catch (Exception ex) {
+                    dropped.addAndGet(chunk.size() / FIELDS);
+                    logger.warn("Failed writing trace events of crawl " + e.getKey() + ": " + ex.getMessage());
+                }
+            }
+        }
+        long lost = dropped.getAndSet(0);
+        if (lost > 0) logger.warn("Dropped " + lost + " trace events");
+    }
+
+    /**
+     * Up to limit of the crawl's events, oldest first. With afterSeq the events right after it (or the oldest still
+     * kept, if it was trimmed), so passing the last seq seen pages through new events without skipping any; with a
+     * negative afterSeq the latest limit events. Events reach the journal within crawler.trace.flush-millis.
+     */
+    public List<TraceEvent> events(String crawlId, long afterSeq, int limit) {
+        Limit count = Limit.limit().count(Math.max(0, limit));
+        List<MapRecord<String, Object, Object>> records;
+        if (afterSeq < 0) {
+            records = redisTemplate.opsForStream().reverseRange(streamKey(crawlId), Range.unbounded(), count);
+            if (records != null) {
+                records = new ArrayList<>(records);
+                Collections.reverse(records);
+            }
+        } else {
+            records = redisTemplate.opsForStream().range(streamKey(crawlId),
+                    Range.rightUnbounded(Range.Bound.inclusive((afterSeq + 1) + "-0")), count);
+        }
+        List<TraceEvent> res = new ArrayList<>();
+        if (records == null) return res;
+        for (MapRecord<String, Object, Object> r : records) {
+            TraceEvent e = toEvent(r.getId().getValue(), r.getValue());
+            if (e != null) res.add(e);
+        }
+        return res;
+    }
+
+    public void delete(String crawlId) {
+        redisTemplate.delete(Arrays.asList(streamKey(crawlId), seqKey(crawlId)));
+    }
+
+    // null for an entry this version cannot read
+    static TraceEvent toEvent(String id, Map<Object, Object> fields) {
+        try {
+            long seq = Long.parseLong(id.substring(0, id.indexOf('-')));
+            return TraceEvent.of(seq, Long.parseLong(str(fields, "t")), TraceEventType.valueOf(str(fields, "type")),
+                    emptyToNull(str(fields, "url")), Long.parseLong(str(fields, "bytes")), Integer.parseInt(str(fields, "links")),
+                    Long.parseLong(str(fields, "millis")), emptyToNull(str(fields, "detail")));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static String str(Map<Object, Object> fields, String name) {
+        Object v = fields.get(name);
+        return v == null ? "" : v.toString();
+    }
+
+    private static String emptyToNull(String s) {
+        return s.isEmpty() ? null : s;
+    }
+
+    static String streamKey(String crawlId) {
+        return crawlId + ".trace";
+    }
+
+    private static String seqKey(String crawlId) {
+        return crawlId + ".trace.seq";
+    }
+
+    private static final class Pending {
+        final String crawlId;
+        final TraceEvent event;
+
+        Pending(String crawlId, TraceEvent event) {
+            this.crawlId = crawlId;
+            this.event = event;
+        }
+    }
+}
@@ -2,14 +2,19 @@ package com.handson.searchengine.crawler;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.archive.PageArchive;
+import com.handson.searchengine.graph.LinkGraphService;
 import com.handson.searchengine.kafka.Producer;
 import com.handson.searchengine.model.*;
+import com.handson.searchengine.util.CrawlStatusCodec;
 import com.handson.searchengine.util.ElasticSearch;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.jsoup.Connection;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -20,10 +25,13 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -39,12 +47,69 @@ public class Crawler {
     @Autowired
     private Producer producer;
 
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Autowired
+    private PageArchive pageArchive;
+
+    @Autowired
+    private PageExtractor pageExtractor;
+
+    @Autowired
+    private HostConcurrencyController hostController;
+
+    @Autowired
+    private RetryScheduler retryScheduler;
+
+    @Autowired
+    private Indexer indexer;
+
+    @Autowired
+    private UrlStateStore urlStates;
+
+    @Autowired
+    private UrlBudget urlBudget;
+
+    @Autowired
+    private SitemapSeeder sitemapSeeder;
+
+    @Autowired
+    private VisitedSet visitedSet;
+
+    @Autowired
+    private HttpCache httpCache;
+
+    @Autowired
+    private CrawlKeySweeper crawlKeys;
+
+    @Autowired
+    private LinkGraphService linkGraph;
+
     @Autowired
     private ElasticSearch elasticSearch;
 
+    @Autowired
+    private CrawlSlots crawlSlots;
+
+    @Autowired
+    private CrawlTrace trace;
+
+    @Value("${crawler.host.max-wait-millis:2000}")
+    private long maxHostWaitMillis;
+
+    @Value("${crawler.fetch.max-body-bytes:10485760}")
+    private int maxBodyBytes;
+
+    private static final Set<String> SKIPPED_EXTENSIONS = new HashSet<>(Arrays.asList(
+            "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx", "odt",
+            "jpg", "jpeg", "png", "gif", "webp", "svg", "ico", "bmp", "tif", "tiff",
+            "mp3", "mp4", "m4a", "m4v", "avi", "mov", "wmv", "webm", "ogg", "wav", "flac", "mkv",
+            "zip", "gz", "tgz", "rar", "7z", "tar", "bz2", "xz", "exe", "msi", "dmg", "iso", "apk", "bin",
+            "css", "js", "json", "woff", "woff2", "ttf", "eot", "otf"));
+
     protected final Log logger = LogFactory.getLog(getClass());
 
-    private final ExecutorService indexExecutor = Executors.newFixedThreadPool(4);
     private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
 
     @PostConstruct
@@ -52,17 +117,27 @@ public class Crawler {
         isShuttingDown.set(false); // Ensure clean state on startup
     }
 
-    public void crawl(String crawlId, CrawlerRequest crawlerRequest) throws InterruptedException, IOException, JsonProcessingException {
+    public void crawl(String crawlId, CrawlerRequest crawlerRequest) throws InterruptedException, IOException {
         logger.info("Starting crawl with ID: " + crawlId + " at " + new java.util.Date());
-        initCrawlInRedis(crawlId);
-        CrawlerRecord first = CrawlerRecord.of(crawlerRequest).withCrawlId(crawlId);
+        CrawlContext ctx = CrawlContext.of(crawlId, crawlerRequest);
+        initCrawlInRedis(ctx);
+        CrawlerRecord first = CrawlerRecord.of(ctx, ctx.getBaseUrl(), 0);
         if (!isUrlValid(first.getUrl())) {
             updateCrawlStatusWithError(crawlId, "Invalid URL format: " + first.getUrl());
+            crawlSlots.release(crawlId);
             return;
         }
-        logger.info("Preparing to send initial record for URL: " + first.getUrl() + " at " + new java.util.Date());
-        producer.send(first);
-        logger.info("Sent initial record for crawl ID: " + crawlId + " at " + new java.util.Date());
+        contextRegistry.register(ctx);
+        urlBudget.init(ctx);
+        if (visitedSet.add(crawlId, ctx.getMaxUrls(), first.getUrl()) && urlBudget.tryAcquire(crawlId, ctx.getMaxUrls())) {
+            redisTemplate.opsForValue().increment(crawlId + ".urls.count", 1L);
+        }
+        urlStates.mark(crawlId, first.getUrl(), UrlState.queued, 0);
+        producer.sendFrontier(first);
+        trace.crawl(crawlId, TraceEventType.crawlStarted, first.getUrl());
+        // pages listed in the sitemaps go straight to distance 1 instead of being found link by link
+        List<String> fromSitemaps = sitemapSeeder.discover(ctx, contextRegistry.scopeOf(crawlId, ctx.getBaseUrl()));
+        if (!fromSitemaps.isEmpty()) addUrlsToQueue(first, fromSitemaps, 1);
     }
 
     @PostMapping("/stop/{crawlId}")
@@ -70,116 +145,249 @@ public class Crawler {
         stopCrawlGracefully(crawlId, "Manually stopped by user");
     }
 
-    public void crawlOneRecord(String crawlId, CrawlerRecord rec) {
-        logger.info("Consumer processing crawl for URL: " + rec.getUrl() + " with crawlId: " + crawlId + " at " + new java.util.Date());
-
+    /**
+     * Crawls one frontier record. Returns the number of bytes fetched, which CrawlScheduler charges to the crawl's bandwidth quota.
+     * Each step goes to the crawl's CrawlTrace journal rather than the log; only failures are logged.
+     */
+    public long crawlOneRecord(String crawlId, CrawlerRecord rec) {
         if (isShuttingDown.get()) {
-            logger.info("Skipping crawl for " + rec.getUrl() + " due to shutdown request at " + new java.util.Date());
-            return;
+            trace.page(crawlId, rec.getUrl(), TraceEventType.skipped, 0, 0, 0, "shutting down");
+            return 0;
         }
+        long bytes = 0;
+        long fetchStart = 0;
 
         try {
-            StopReason stopReason = getStopReason(rec);
             CrawlStatus current = readStatus(crawlId);
+            StopReason stopReason = getStopReason(rec, current);
             long startTime = current != null ? current.getStartTimeMillis() : System.currentTimeMillis();
 
-            try {
+            // once stopped, keep the reason and error message that stopped it
+            if (current == null || current.getStopReason() == null) {
                 setCrawlStatus(crawlId, CrawlStatus.of(rec.getDistance(), startTime, getVisitedUrls(crawlId), stopReason));
-            } catch (JsonProcessingException e) {
-                logger.warn("Failed to set crawl status at start: " + e.getMessage() + " at " + new java.util.Date());
+            } else if (stopReason == null && current.getStopReason() != StopReason.userInitiated) {
+                // out of budget (or depth), but the urls admitted before still get crawled; keep the status fresh
+                // so a resume does not take the crawl for abandoned
+                current.setNumPages(getVisitedUrls(crawlId));
+                setCrawlStatus(crawlId, current);
             }
 
             if (stopReason != null) {
-                logger.debug("Not crawling " + rec.getUrl() + " because stopReason=" + stopReason + " at " + new java.util.Date());
-                return;
+                trace.page(crawlId, rec.getUrl(), TraceEventType.skipped, 0, 0, 0, stopReason.name());
+                if (stopReason == StopReason.timeout || stopReason == StopReason.userInitiated) {
+                    urlBudget.release(crawlId);
+                    // also frees the crawl's slot, once per worker
+                    crawlKeys.onCrawlEnded(crawlId);
+                }
+                return 0;
             }
 
-            if (!isUrlAccessible(rec.getUrl())) {
-                updateCrawlStatusWithError(crawlId, getAccessibilityErrorMessage(rec.getUrl()));
-                return;
+            // a resumed crawl may deliver a url twice; don't fetch what was already fetched
+            UrlStateStore.Entry state = urlStates.get(crawlId, rec.getUrl());
+            if (state != null && (state.getState() == UrlState.fetched || state.getState().isDone())) {
+                if (trace.traces(crawlId, rec.getUrl())) {
+                    trace.page(crawlId, rec.getUrl(), TraceEventType.skipped, 0, 0, 0, "already " + state.getState());
+                }
+                return 0;
             }
 
-            // Update visited before fetch to prevent loops
-            if (!crawlHasVisited(rec, rec.getUrl())) {
-                logger.info("Marked " + rec.getUrl() + " as visited at " + new java.util.Date());
+            urlStates.mark(crawlId, rec.getUrl(), UrlState.fetching, rec.getDistance());
+            trace.page(crawlId, rec.getUrl(), TraceEventType.fetchStart);
+            fetchStart = System.currentTimeMillis();
+            FetchedPage page = fetch(rec.getUrl());
+            // cache hits cost the site nothing, so they don't count against the bandwidth quota
+            bytes = page.isCached() ? 0 : page.getBody().length();
+            trace.page(crawlId, rec.getUrl(), TraceEventType.fetchEnd, page.getBody().length(), 0,
+                    System.currentTimeMillis() - fetchStart, page.isCached() ? "cache" : page.getMimeType());
+            archivePage(rec, page);
+            urlStates.mark(crawlId, rec.getUrl(), UrlState.fetched, rec.getDistance());
+            Document webPageContent = page.getDocument();
+            // Improved content check
+            String textContent = page.isHtml()
+                    ? (webPageContent.body() != null ? webPageContent.body().text().trim() : "")
+                    : page.getBody().trim();
+            List<String> innerUrls = page.isHtml() ? extractWebPageUrls(contextRegistry.scopeOf(crawlId, rec.getBaseUrl()), webPageContent) : Collections.<String>emptyList();
+            if (textContent.length() < 10 && innerUrls.isEmpty()) {
+                urlStates.mark(crawlId, rec.getUrl(), UrlState.skipped, rec.getDistance());
+                trace.page(crawlId, rec.getUrl(), TraceEventType.skipped, 0, 0, 0, "no content or links");
+                onPageFailed(crawlId, rec, "Page contains minimal or no usable content/links: " + rec.getUrl());
+            } else {
+                linkGraph.addPage(crawlId, rec.getUrl(), innerUrls);
+                indexElasticSearchAsync(rec, page);
+                addUrlsToQueue(rec, innerUrls, rec.getDistance() + 1);
             }
 
-            Document webPageContent = fetchWithRetry(rec.getUrl(), 3);
-
-            if (webPageContent != null) {
-                // Improved content check
-                String textContent = webPageContent.body() != null ? webPageContent.body().text().trim() : "";
-                List<String> innerUrls = extractWebPageUrls(rec.getBaseUrl(), webPageContent);
-                if (textContent.length() < 10 && innerUrls.isEmpty()) {
-                    updateCrawlStatusWithError(crawlId, "Page contains minimal or no usable content/links: " + rec.getUrl());
-                } else {
-                    indexElasticSearchAsync(rec, webPageContent);
-                    addUrlsToQueue(rec, innerUrls, rec.getDistance() + 1);
-                    logger.info("Successfully crawled: " + rec.getUrl() + " with " + innerUrls.size() + " new URLs at " + new java.util.Date());
-                }
+        } catch (FetchException e) {
+            if (trace.traces(crawlId, rec.getUrl())) {
+                trace.page(crawlId, rec.getUrl(), TraceEventType.fetchFailed, 0, 0, System.currentTimeMillis() - fetchStart,
+                        e.getError() + ": " + e.getMessage());
             }
-
+            onFetchFailed(crawlId, rec, e);
         } catch (Exception e) {
-            String errorMsg = "Failed to crawl " + rec.getUrl() + ": " + e.getMessage() + " at " + new java.util.Date();
+            String errorMsg = "Failed to crawl " + rec.getUrl() + ": " + e.getMessage();
             logger.error(errorMsg, e);
-            updateCrawlStatusWithError(crawlId, errorMsg);
+            trace.page(crawlId, rec.getUrl(), TraceEventType.skipped, 0, 0, 0, errorMsg);
+            onPageFailed(crawlId, rec, errorMsg);
         }
+        return bytes;
     }
 
-    private Document fetchWithRetry(String url, int maxRetries) throws IOException {
-        int attempts = 0;
-        IOException lastException = null;
-
-        while (attempts < maxRetries) {
-            try {
-                return Jsoup.connect(url)
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36")
-                        .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8")
-                        .header("Accept-Language", "en-US,en;q=0.5")
-                        .header("Connection", "keep-alive")
-                        .header("Upgrade-Insecure-Requests", "1")
-                        .timeout(60_000)
-                        .followRedirects(true)
-                        .maxBodySize(10 * 1024 * 1024)
-                        .get();
-            } catch (IOException e) {
-                lastException = e;
-                attempts++;
-                logger.warn("Attempt " + attempts + "/" + maxRetries + " failed for " + url + ": " + e.getMessage() + " at " + new java.util.Date());
-
-                if (attempts >= maxRetries) {
-                    break;
-                }
+    /**
+     * One fetch attempt through the host's concurrency limit. Failures come back classified; retrying is up to
+     * RetryScheduler, so no crawl thread ever sleeps here.
+     * Content-Type and Content-Length are checked before the body is read, so bodies we would not index are never downloaded.
+     * Fresh pages in HttpCache are served without contacting the host; stale ones are fetched conditionally.
+     */
+    private FetchedPage fetch(String url) throws FetchException {
+        HttpCache.Entry cached = httpCache.lookup(url);
+        if (cached != null && cached.isFresh(System.currentTimeMillis())) {
+            FetchedPage page = httpCache.serve(cached);
+            if (page != null) return page;
+            cached = null;
+        }
+        String host = hostOf(url);
+        try {
+            if (!hostController.acquire(host, maxHostWaitMillis)) {
+                throw new FetchException(FetchError.hostBusy, true, hostController.availableInMillis(host),
+                        "No free connection slot for " + host + " within " + maxHostWaitMillis + "ms", null);
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new FetchException(FetchError.unknown, true, 0, "Crawler interrupted", ie);
+        }
 
-                try {
-                    long delay = (long) Math.pow(2, attempts - 1) * 1000;
-                    Thread.sleep(delay);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new IOException("Crawler interrupted", ie);
+        long start = System.currentTimeMillis();
+        HostConcurrencyController.Outcome outcome = HostConcurrencyController.Outcome.error;
+        long retryAfter = 0;
+        Connection.Response res = null;
+        boolean bodyRead = false;
+        try {
+            Connection conn = Jsoup.connect(url)
+                    .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36")
+                    .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,image/webp,*/*;q=0.8")
+                    .header("Accept-Language", "en-US,en;q=0.5")
+                    .header("Connection", "keep-alive")
+                    .header("Upgrade-Insecure-Requests", "1")
+                    .timeout((int) hostController.timeoutMillis(host))
+                    .followRedirects(true)
+                    .ignoreHttpErrors(true)
+                    .ignoreContentType(true)
+                    .maxBodySize(maxBodyBytes);
+            if (cached != null) {
+                if (cached.getEtag() != null) conn.header("If-None-Match", cached.getEtag());
+                if (cached.getLastModified() != null) conn.header("If-Modified-Since", cached.getLastModified());
+            }
+            res = conn.execute();
+            int status = res.statusCode();
+            if (status == 304 && cached != null) {
+                outcome = HostConcurrencyController.Outcome.success;
+                FetchedPage page = httpCache.revalidated(cached, cacheHeaders(res), System.currentTimeMillis());
+                if (page != null) return page;
+                throw new FetchException(FetchError.connection, true, 0, "Cached copy of " + url + " vanished after a 304", null);
+            }
+            if (status < 400) {
+                // the host answered fine, whatever we think of the content
+                outcome = HostConcurrencyController.Outcome.success;
+                String mimeType = mimeTypeOf(res.contentType());
+                if (!pageExtractor.supports(mimeType)) {
+                    throw new FetchException(FetchError.unwanted, false, 0, "Not indexing " + mimeType + " at " + url, null);
                 }
+                long length = contentLength(res.header("Content-Length"));
+                if (length > maxBodyBytes) {
+                    throw new FetchException(FetchError.unwanted, false, 0, "Body of " + length + " bytes at " + url + " is over the limit", null);
+                }
+                bodyRead = true;
+                FetchedPage page = PageExtractor.isHtml(mimeType) ? FetchedPage.html(res.parse()) : FetchedPage.of(mimeType, res.body());
+                if (status == 200) httpCache.store(url, res.url().toString(), page, cacheHeaders(res), System.currentTimeMillis());
+                return page;
+            }
+            retryAfter = HostConcurrencyController.parseRetryAfter(res.header("Retry-After"));
+            if (status == 429) {
+                outcome = HostConcurrencyController.Outcome.overload;
+                throw new FetchException(FetchError.throttled, true, retryAfter, "HTTP 429 fetching " + url, null);
             }
+            if (status >= 500) {
+                outcome = HostConcurrencyController.Outcome.overload;
+                throw new FetchException(FetchError.serverError, true, retryAfter, "HTTP " + status + " fetching " + url, null);
+            }
+            // other 4xx won't get better with a retry
+            throw new FetchException(FetchError.clientError, false, 0, "HTTP " + status + " fetching " + url, null);
+        } catch (SocketTimeoutException e) {
+            outcome = HostConcurrencyController.Outcome.overload;
+            throw new FetchException(FetchError.timeout, true, 0, "Timeout fetching " + url + ": " + e.getMessage(), e);
+        } catch (FetchException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new FetchException(FetchError.connection, true, 0, "Failed fetching " + url + ": " + e.getMessage(), e);
+        } finally {
+            // a rejected or failed response is never read; close its body so the connection is freed now, not on GC
+            if (res != null && !bodyRead) closeBody(res);
+            hostController.release(host, outcome, System.currentTimeMillis() - start, retryAfter);
         }
+    }
 
-        throw lastException != null ? lastException : new IOException("Unknown error occurred");
+    private static void closeBody(Connection.Response res) {
+        try {
+            res.bodyStream().close();
+        } catch (IOException | IllegalArgumentException e) {
+            // already read or closed
+        }
     }
 
-    private boolean isUrlAccessible(String url) {
+    private void onFetchFailed(String crawlId, CrawlerRecord rec, FetchException e) {
+        if (e.getError() == FetchError.unwanted) {
+            urlStates.mark(crawlId, rec.getUrl(), UrlState.skipped, rec.getDistance());
+            if (rec.getDistance() == 0) updateCrawlStatusWithError(crawlId, e.getMessage());
+            return;
+        }
+        if (e.getError() == FetchError.hostBusy) {
+            urlStates.mark(crawlId, rec.getUrl(), UrlState.queued, rec.getDistance());
+            retryScheduler.defer(rec, e.getRetryAfterMillis());
+            return;
+        }
+        logger.warn("Attempt " + (rec.getAttempt() + 1) + " failed for " + rec.getUrl() + " (" + e.getError() + "): " + e.getMessage());
+        boolean retried = retryScheduler.retryOrDeadLetter(rec, e);
+        urlStates.mark(crawlId, rec.getUrl(), retried ? UrlState.queued : UrlState.failed, rec.getDistance());
+        // a broken link only costs its own page, but without the seed there is no crawl
+        if (!retried && rec.getDistance() == 0) {
+            updateCrawlStatusWithError(crawlId, getAccessibilityErrorMessage(rec.getUrl()));
+        }
+    }
+
+    // a broken page only costs itself, but without the seed there is no crawl
+    private void onPageFailed(String crawlId, CrawlerRecord rec, String errorMsg) {
+        if (rec.getDistance() == 0) {
+            updateCrawlStatusWithError(crawlId, errorMsg);
+        } else {
+            logger.warn(errorMsg);
+        }
+    }
+
+    static String mimeTypeOf(String contentType) {
+        if (contentType == null) return "";
+        int semi = contentType.indexOf(';');
+        return (semi < 0 ? contentType : contentType.substring(0, semi)).trim().toLowerCase(java.util.Locale.ROOT);
+    }
+
+    private static HttpCache.Headers cacheHeaders(Connection.Response res) {
+        return new HttpCache.Headers(res.header("Cache-Control"), res.header("Pragma"), res.header("Expires"),
+                res.header("Date"), res.header("Age"), res.header("ETag"), res.header("Last-Modified"));
+    }
+
+    private static long contentLength(String header) {
+        if (header == null) return -1;
         try {
-            URL parsedUrl = new URL(url);
-            int statusCode = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (compatible; SimpleCrawler/1.0)")
-                    .timeout(10_000)
-                    .followRedirects(true)
-                    .execute()
-                    .statusCode();
-            return statusCode < 400;
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String hostOf(String url) {
+        try {
+            return new URL(url).getHost().toLowerCase(java.util.Locale.ROOT);
         } catch (MalformedURLException e) {
-            logger.debug("Invalid URL format: " + url + ": " + e.getMessage() + " at " + new java.util.Date());
-            return false;
-        } catch (IOException e) {
-            logger.debug("URL check failed for " + url + ": " + e.getMessage() + " at " + new java.util.Date());
-            return false;
+            return "";
         }
     }
 
@@ -238,6 +446,7 @@ public class Crawler {
                 current.setErrorMessage(errorMessage);
                 current.setStopReason(StopReason.userInitiated);
                 setCrawlStatus(crawlId, current);
+                trace.crawl(crawlId, TraceEventType.crawlStopped, errorMessage);
                 logger.info("Crawl stopped with user-initiated error for " + crawlId + ": " + errorMessage + " at " + new java.util.Date());
             }
         } catch (Exception e) {
@@ -247,14 +456,15 @@ public class Crawler {
 
     public void stopCrawlGracefully(String crawlId, String stopReason) {
         try {
-            isShuttingDown.set(true);
             CrawlStatus current = readStatus(crawlId);
             if (current != null) {
                 current.setStopReason(StopReason.userInitiated);
                 current.setErrorMessage(stopReason);
                 setCrawlStatus(crawlId, current);
-                // Clear the visited queue to stop processing pending messages
-                redisTemplate.delete(crawlId + ".visited");
+                urlBudget.release(crawlId);
+                crawlSlots.release(crawlId);
+                crawlKeys.onCrawlEnded(crawlId);
+                trace.crawl(crawlId, TraceEventType.crawlStopped, stopReason);
                 logger.info("Gracefully stopping crawl " + crawlId + " with reason: " + stopReason + " at " + new java.util.Date());
             }
             // Allow existing tasks to complete
@@ -263,82 +473,130 @@ public class Crawler {
         }
     }
 
-    private StopReason getStopReason(CrawlerRecord rec) {
+    /**
+     * Stops the crawl and drops what it left behind: its index, its archived pages and its state in Redis. Only the stopped status is
+     * kept for a day, so workers still holding records of the crawl drop them.
+     */
+    public void deleteCrawl(String crawlId) throws IOException {
+        stopCrawlGracefully(crawlId, "Crawl deleted");
+        elasticSearch.deleteCrawl(crawlId);
+        // or the next re-index from the archive would bring it back
+        pageArchive.delete(crawlId);
+        CrawlContext ctx = contextRegistry.get(crawlId);
+        contextRegistry.remove(crawlId);
+        urlStates.delete(crawlId);
+        urlBudget.delete(crawlId);
+        if (ctx != null) visitedSet.delete(crawlId, ctx.getMaxUrls());
+        trace.delete(crawlId);
+        redisTemplate.delete(Arrays.asList(crawlId + ".urls.count", CrawlScheduler.overflowKey(crawlId), LinkGraphService.edgesKey(crawlId)));
+        redisTemplate.expire(crawlId + ".status", 1, java.util.concurrent.TimeUnit.DAYS);
+        logger.info("Deleted crawl " + crawlId + " at " + new java.util.Date());
+    }
+
+    private StopReason getStopReason(CrawlerRecord rec, CrawlStatus current) {
         if (rec.getMaxDistance() >= 0 && rec.getDistance() > rec.getMaxDistance()) return StopReason.maxDistance;
-        if (rec.getMaxUrls() > 0 && getVisitedUrls(rec.getCrawlId()) >= rec.getMaxUrls()) return StopReason.maxUrls;
         if (System.currentTimeMillis() >= rec.getMaxTime()) return StopReason.timeout;
-        if (isShuttingDown.get()) return StopReason.userInitiated;
+        if (current != null && current.getStopReason() == StopReason.userInitiated) return StopReason.userInitiated;
         return null;
     }
 
-    private void addUrlsToQueue(CrawlerRecord rec, List<String> urls, int distance) throws InterruptedException, JsonProcessingException {
-        logger.info("Adding URLs to queue: distance->" + distance + " amount->" + urls.size() + " at " + new java.util.Date());
-        int currentVisited = getVisitedUrls(rec.getCrawlId());
-        int remainingSlots = rec.getMaxUrls() > 0 ? rec.getMaxUrls() - currentVisited : Integer.MAX_VALUE;
-        if (remainingSlots <= 0 || System.currentTimeMillis() >= rec.getMaxTime() || isShuttingDown.get()) return;
-        List<String> urlsToAdd = urls.stream().limit(remainingSlots).collect(Collectors.toList());
-        for (String url : urlsToAdd) {
+    /**
+     * Every url new to the crawl takes one unit of its maxUrls budget; once the budget is spent the rest are dropped.
+     */
+    private void addUrlsToQueue(CrawlerRecord rec, List<String> urls, int distance) {
+        if (System.currentTimeMillis() >= rec.getMaxTime() || isShuttingDown.get()) return;
+        String crawlId = rec.getCrawlId();
+        ScopeMatcher scope = contextRegistry.scopeOf(crawlId, rec.getBaseUrl());
+        int admitted = 0;
+        for (String url : urls) {
             if (System.currentTimeMillis() >= rec.getMaxTime() || isShuttingDown.get()) break;
-            if (!crawlHasVisited(rec, url)) {
-                producer.send(CrawlerRecord.of(rec).withUrl(url).withIncDistance());
+            if (!visitedSet.add(crawlId, rec.getMaxUrls(), url)) continue;
+            if (!scope.admitQueryVariant(url)) continue;
+            if (!urlBudget.tryAcquire(crawlId, rec.getMaxUrls())) {
+                markBudgetSpent(crawlId);
+                break;
             }
+            admitted++;
+            urlStates.mark(crawlId, url, UrlState.queued, distance);
+            producer.sendFrontier(CrawlerRecord.of(rec).withUrl(url).withIncDistance().withAttempt(0));
+        }
+        if (admitted > 0) redisTemplate.opsForValue().increment(crawlId + ".urls.count", admitted);
+        if (trace.traces(crawlId, rec.getUrl())) {
+            trace.page(crawlId, rec.getUrl(), TraceEventType.linksQueued, 0, admitted, 0, urls.size() + " found");
+        }
+    }
+
+    private void markBudgetSpent(String crawlId) {
+        CrawlStatus current = readStatus(crawlId);
+        if (current != null && current.getStopReason() == null) {
+            current.setStopReason(StopReason.maxUrls);
+            setCrawlStatus(crawlId, current);
+            // queued urls still get crawled, but the crawl admits nothing new and need not hold back others
+            crawlSlots.release(crawlId);
+            trace.crawl(crawlId, TraceEventType.crawlStopped, StopReason.maxUrls.name());
         }
     }
 
-    private List<String> extractWebPageUrls(String baseUrl, Document webPageContent) {
-        List<String> links = webPageContent.select("a[href]")
+    private List<String> extractWebPageUrls(ScopeMatcher scope, Document webPageContent) {
+        return webPageContent.select("a[href]")
                 .eachAttr("abs:href")
                 .stream()
                 .filter(url -> url != null)
-                .filter(url -> url.startsWith(baseUrl))
-                .filter(url -> !url.startsWith("mailto:"))
-                .filter(url -> !url.startsWith("javascript:"))
+                .filter(url -> !hasSkippedExtension(url))
+                .filter(scope::allows)
                 .distinct()
                 .collect(Collectors.toList());
-        logger.info("Extracted " + links.size() + " unique links at " + new java.util.Date());
-        return links;
     }
 
-    private void indexElasticSearchAsync(CrawlerRecord rec, Document webPageContent) {
-        if (isShuttingDown.get()) {
-            logger.info("Skipping indexing for " + rec.getUrl() + " due to shutdown at " + new java.util.Date());
-            return;
-        }
-        logger.info("Scheduling Elasticsearch index for: " + rec.getUrl() + " at " + new java.util.Date());
-        String text = webPageContent.body() != null ? webPageContent.body().text() : "";
-        UrlSearchDoc searchDoc = UrlSearchDoc.of(rec.getCrawlId(), text, rec.getUrl(), rec.getBaseUrl(), rec.getDistance(), "html");
+    // links to files we would refuse from their Content-Type anyway; saves the request
+    static boolean hasSkippedExtension(String url) {
+        int end = url.length();
+        int q = url.indexOf('?');
+        if (q >= 0) end = q;
+        int h = url.indexOf('#');
+        if (h >= 0 && h < end) end = h;
+        int slash = url.lastIndexOf('/', end - 1);
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot <= slash) return false;
+        return SKIPPED_EXTENSIONS.contains(url.substring(dot + 1, end).toLowerCase(java.util.Locale.ROOT));
+    }
+
+    private void archivePage(CrawlerRecord rec, FetchedPage page) {
+        if (!pageArchive.isEnabled()) return;
         try {
-            indexExecutor.submit(() -> {
-                try {
-                    elasticSearch.addData(searchDoc);
-                    logger.info("Indexed URL successfully: " + rec.getUrl() + " at " + new java.util.Date());
-                } catch (Exception e) {
-                    logger.error("Failed to index doc async: " + rec.getUrl() + " - " + e.getMessage() + " at " + new java.util.Date(), e);
-                }
-            });
+            pageArchive.append(rec.getCrawlId(), rec.getUrl(), rec.getBaseUrl(), rec.getDistance(), page.getMimeType(), page.getBody());
         } catch (Exception e) {
-            logger.warn("Failed to submit indexing task for " + rec.getUrl() + ": " + e.getMessage() + " at " + new java.util.Date());
+            logger.warn("Failed to archive " + rec.getUrl() + ": " + e.getMessage());
         }
     }
 
-    private void initCrawlInRedis(String crawlId) throws JsonProcessingException {
-        // Reset shutdown flag for new crawl
-        isShuttingDown.set(false);
+    private void indexElasticSearchAsync(CrawlerRecord rec, FetchedPage page) {
+        UrlSearchDoc searchDoc = pageExtractor.extract(rec.getCrawlId(), rec.getUrl(), rec.getBaseUrl(), rec.getDistance(), page);
+        searchDoc.withLinkRank(linkGraph.rankOf(rec.getCrawlId(), rec.getUrl()), linkGraph.inlinksOf(rec.getCrawlId(), rec.getUrl()));
+        indexer.index(searchDoc);
+    }
+
+    private void initCrawlInRedis(CrawlContext ctx) {
+        String crawlId = ctx.getCrawlId();
         // Clear previous crawl data
         redisTemplate.delete(crawlId + ".status");
         redisTemplate.delete(crawlId + ".urls.count");
-        redisTemplate.delete(crawlId + ".visited");
+        redisTemplate.delete(LinkGraphService.edgesKey(crawlId));
+        visitedSet.delete(crawlId, ctx.getMaxUrls());
+        urlStates.delete(crawlId);
         long now = System.currentTimeMillis();
         setCrawlStatus(crawlId, CrawlStatus.of(0, now, 0, null));
         redisTemplate.opsForValue().set(crawlId + ".urls.count", "0");
-        redisTemplate.opsForSet().add(crawlId + ".visited", crawlId);
         logger.info("Initialized crawl in Redis with ID: " + crawlId + " at " + new java.util.Date());
     }
 
-    private void setCrawlStatus(String crawlId, CrawlStatus crawlStatus) throws JsonProcessingException {
+    private void setCrawlStatus(String crawlId, CrawlStatus crawlStatus) {
         crawlStatus.setLastModifiedMillis(System.currentTimeMillis());
-        redisTemplate.opsForValue().set(crawlId + ".status", om.writeValueAsString(crawlStatus));
-        logger.debug("Set crawl status for ID: " + crawlId + " at " + new java.util.Date());
+        try {
+            redisTemplate.opsForValue().set(crawlId + ".status", om.writeValueAsString(crawlStatus));
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to set crawl status for " + crawlId + ": " + e.getMessage() + " at " + new java.util.Date());
+        }
     }
 
     private CrawlStatus readStatus(String crawlId) {
@@ -348,33 +606,13 @@ public class Crawler {
                 logger.warn("No status found for crawlId: " + crawlId + " at " + new java.util.Date());
                 return null;
             }
-            return om.readValue(statusObj.toString(), CrawlStatus.class);
+            return CrawlStatusCodec.decode(statusObj.toString());
         } catch (Exception e) {
             logger.error("Failed reading crawl status for " + crawlId + ": " + e.getMessage() + " at " + new java.util.Date(), e);
             return null;
         }
     }
 
-    private boolean crawlHasVisited(CrawlerRecord rec, String url) {
-        @SuppressWarnings("unchecked")
-        Boolean isMember = redisTemplate.opsForSet().isMember(rec.getCrawlId() + ".visited", url);
-        if (isMember == null || !isMember) {
-            redisTemplate.opsForSet().add(rec.getCrawlId() + ".visited", url);
-            redisTemplate.opsForValue().increment(rec.getCrawlId() + ".urls.count", 1L);
-            try {
-                CrawlStatus cur = readStatus(rec.getCrawlId());
-                long startTime = cur != null ? cur.getStartTimeMillis() : rec.getStartTime();
-                int newCount = getVisitedUrls(rec.getCrawlId());
-                setCrawlStatus(rec.getCrawlId(), CrawlStatus.of(rec.getDistance(), startTime, newCount, null));
-            } catch (JsonProcessingException e) {
-                logger.warn("Failed to update crawl status after visited URL: " + e.getMessage() + " at " + new java.util.Date());
-            }
-            return false;
-        } else {
-            return true;
-        }
-    }
-
     private int getVisitedUrls(String crawlId) {
         Object curCount = redisTemplate.opsForValue().get(crawlId + ".urls.count");
         if (curCount == null) return 0;
@@ -393,7 +631,7 @@ public class Crawler {
                 long now = System.currentTimeMillis();
                 return CrawlStatusOut.of(CrawlStatus.of(0, now, 0, null));
             }
-            CrawlStatus cs = om.readValue(statusObj.toString(), CrawlStatus.class);
+            CrawlStatus cs = CrawlStatusCodec.decode(statusObj.toString());
             cs.setNumPages(getVisitedUrls(crawlId));
             return CrawlStatusOut.of(cs);
         } catch (Exception e) {
@@ -407,8 +645,7 @@ public class Crawler {
     public void shutdown() {
         try {
             isShuttingDown.set(true);
-            indexExecutor.shutdown();
-            logger.info("Shutting down crawler executor service at " + new java.util.Date());
+            logger.info("Shutting down crawler at " + new java.util.Date());
         } catch (Exception ignore) {}
     }
 }
\ No newline at end of file
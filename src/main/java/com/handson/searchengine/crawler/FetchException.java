@@ -0,0 +1,34 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.FetchError;
+
+import java.io.IOException;
+
+/**
+ * A failed fetch, classified so the crawler can decide between a delayed retry and the dead-letter topic.
+ */
+public class FetchException extends IOException {
+    private final FetchError error;
+    private final boolean retryable;
+    private final long retryAfterMillis;
+
+    public FetchException(FetchError error, boolean retryable, long retryAfterMillis, String message, Throwable cause) {
+        super(message, cause);
+        this.error = error;
+        this.retryable = retryable;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public FetchError getError() {
+        return error;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    // delay asked for by the server or the host controller, 0 if none
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
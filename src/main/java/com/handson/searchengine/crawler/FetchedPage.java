@@ -0,0 +1,57 @@
+package com.handson.searchengine.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * A fetched body: parsed when it is HTML, raw text for the types handled by a ContentExtractor.
+ */
+public final class FetchedPage {
+    private final String mimeType;
+    private final Document document;
+    private final String body;
+    private final boolean cached;
+
+    private FetchedPage(String mimeType, Document document, String body, boolean cached) {
+        this.mimeType = mimeType;
+        this.document = document;
+        this.body = body;
+        this.cached = cached;
+    }
+
+    public static FetchedPage html(Document document) {
+        return new FetchedPage("text/html", document, document.outerHtml(), false);
+    }
+
+    public static FetchedPage of(String mimeType, String body) {
+        return new FetchedPage(mimeType, null, body, false);
+    }
+
+    // a body served by HttpCache; baseUri resolves the relative links of HTML pages
+    static FetchedPage cached(String mimeType, String body, String baseUri) {
+        boolean html = PageExtractor.isHtml(mimeType);
+        return new FetchedPage(mimeType, html ? Jsoup.parse(body, baseUri) : null, body, true);
+    }
+
+    public boolean isHtml() {
+        return document != null;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    // null unless isHtml()
+    public Document getDocument() {
+        return document;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    // true if it came from HttpCache rather than the site
+    public boolean isCached() {
+        return cached;
+    }
+}
@@ -0,0 +1,237 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.HostLimit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AIMD concurrency limit per host.
+ * Every fast success adds 1/limit (about +1 per round of requests), every timeout, 429 or 5xx halves the limit.
+ * Retry-After blocks the host until the given time. The fetch timeout follows the host's observed latency.
+ * Host state is guarded by a ReentrantLock rather than a monitor: crawl threads may be virtual, and waiting in
+ * Object.wait() would pin them to their carrier thread.
+ * Hosts idle for crawler.host.idle-evict-millis, with nothing in flight and no Retry-After block, are forgotten and
+ * start over from the initial limit.
+ */
+@Component
+public class HostConcurrencyController {
+
+    public enum Outcome {
+        success,
+        // the request failed in a way that says the host is overloaded: timeout, 429, 5xx
+        overload,
+        // any other failure (404, dns, refused...), says nothing about the host's capacity
+        error
+    }
+
+    @Value("${crawler.host.initial-limit:2}")
+    private double initialLimit;
+
+    @Value("${crawler.host.min-limit:1}")
+    private double minLimit;
+
+    @Value("${crawler.host.max-limit:32}")
+    private double maxLimit;
+
+    @Value("${crawler.host.target-latency-millis:2000}")
+    private long targetLatencyMillis;
+
+    @Value("${crawler.host.min-timeout-millis:5000}")
+    private long minTimeoutMillis;
+
+    @Value("${crawler.host.max-timeout-millis:60000}")
+    private long maxTimeoutMillis;
+
+    @Value("${crawler.host.idle-evict-millis:600000}")
+    private long idleEvictMillis;
+
+    private final Map<String, HostState> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Waits for a free slot on the host. Returns false if none became free within maxWaitMillis.
+     */
+    public boolean acquire(String host, long maxWaitMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+        HostState h = lockInterruptibly(host);
+        try {
+            while (true) {
+                long now = System.currentTimeMillis();
+                if (h.blockedUntilMillis <= now && h.inFlight < Math.floor(h.limit)) {
+                    h.inFlight++;
+                    h.lastUsedMillis = now;
+                    return true;
+                }
+                if (now >= deadline) return false;
+                // a blocked host wakes us up by itself, a full one is woken up by release
+                long wakeAt = h.blockedUntilMillis > now ? Math.min(deadline, h.blockedUntilMillis) : deadline;
+                h.changed.await(Math.max(1, wakeAt - now), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            h.lock.unlock();
+        }
+    }
+
+    /**
+     * Frees the slot taken by acquire and feeds the outcome into the host's limit.
+     *
+     * @param retryAfterMillis delay requested by the server (Retry-After), or 0
+     */
+    public void release(String host, Outcome outcome, long latencyMillis, long retryAfterMillis) {
+        HostState h = lock(host);
+        try {
+            h.inFlight = Math.max(0, h.inFlight - 1);
+            h.lastUsedMillis = System.currentTimeMillis();
+            switch (outcome) {
+                case success:
+                    h.latencyEwmaMillis = h.latencyEwmaMillis == 0 ? latencyMillis : 0.8 * h.latencyEwmaMillis + 0.2 * latencyMillis;
+                    if (latencyMillis <= targetLatencyMillis) {
+                        h.limit = Math.min(maxLimit, h.limit + 1.0 / h.limit);
+                    }
+                    break;
+                case overload:
+                    h.limit = Math.max(minLimit, h.limit / 2);
+                    break;
+                default:
+                    break;
+            }
+            if (retryAfterMillis > 0) {
+                h.blockedUntilMillis = Math.max(h.blockedUntilMillis, System.currentTimeMillis() + retryAfterMillis);
+            }
+            h.changed.signalAll();
+        } finally {
+            h.lock.unlock();
+        }
+    }
+
+    /**
+     * Rough time until the host can take another request: the rest of its Retry-After block, or a short pause if it is just full.
+     */
+    public long availableInMillis(String host) {
+        HostState h = lock(host);
+        try {
+            long blocked = h.blockedUntilMillis - System.currentTimeMillis();
+            return blocked > 0 ? blocked : 500;
+        } finally {
+            h.lock.unlock();
+        }
+    }
+
+    /**
+     * Fetch timeout for the host: a few times its usual latency, within the configured bounds.
+     */
+    public long timeoutMillis(String host) {
+        HostState h = hosts.get(host);
+        if (h == null || h.latencyEwmaMillis == 0) return maxTimeoutMillis;
+        return Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, (long) (h.latencyEwmaMillis * 4)));
+    }
+
+    /**
+     * Forgets hosts that have been idle for idleEvictMillis.
+     */
+    @Scheduled(fixedDelayString = "${crawler.host.idle-evict-millis:600000}")
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Iterator<HostState> it = hosts.values().iterator(); it.hasNext(); ) {
+            HostState h = it.next();
+            // a host that is busy right now is not idle
+            if (!h.lock.tryLock()) continue;
+            try {
+                if (h.inFlight == 0 && h.blockedUntilMillis <= now && now - h.lastUsedMillis > idleEvictMillis
+                        && !h.lock.hasWaiters(h.changed)) {
+                    h.evicted = true;
+                    it.remove();
+                }
+            } finally {
+                h.lock.unlock();
+            }
+        }
+    }
+
+    public List<HostLimit> limits() {
+        List<HostLimit> res = new ArrayList<>();
+        for (Map.Entry<String, HostState> e : hosts.entrySet()) {
+            HostState h = e.getValue();
+            h.lock.lock();
+            try {
+                res.add(HostLimit.of(e.getKey(), h.limit, h.inFlight, (long) h.latencyEwmaMillis, timeoutMillis(e.getKey()), h.blockedUntilMillis));
+            } finally {
+                h.lock.unlock();
+            }
+        }
+        res.sort(Comparator.comparing(HostLimit::getHost));
+        return res;
+    }
+
+    /**
+     * Parses a Retry-After header (delta seconds or an HTTP date) into a delay, 0 if absent or invalid.
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) return 0;
+        String v = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(v) * 1000);
+        } catch (NumberFormatException ignore) {
+        }
+        try {
+            long at = ZonedDateTime.parse(v, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private HostState state(String host) {
+        return hosts.computeIfAbsent(host, k -> new HostState(initialLimit));
+    }
+
+    // the host's current state, locked; a state evicted while we waited for its lock is replaced by a fresh one
+    private HostState lock(String host) {
+        while (true) {
+            HostState h = state(host);
+            h.lock.lock();
+            if (!h.evicted) return h;
+            h.lock.unlock();
+        }
+    }
+
+    private HostState lockInterruptibly(String host) throws InterruptedException {
+        while (true) {
+            HostState h = state(host);
+            h.lock.lockInterruptibly();
+            if (!h.evicted) return h;
+            h.lock.unlock();
+        }
+    }
+
+    private static final class HostState {
+        final ReentrantLock lock = new ReentrantLock();
+        // signalled when a slot frees up or the limit changes
+        final Condition changed = lock.newCondition();
+        double limit;
+        int inFlight;
+        // written under the lock, read without it by timeoutMillis
+        volatile double latencyEwmaMillis;
+        long blockedUntilMillis;
+        long lastUsedMillis;
+        // set under the lock when the state leaves the map; holders of a stale reference look it up again
+        boolean evicted;
+
+        HostState(double limit) {
+            this.limit = limit;
+            this.lastUsedMillis = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.util.Fingerprints;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of fetched pages shared by all crawls on this worker, so a site crawled by several users within
+ * minutes is downloaded once. Follows the shared-cache rules of Cache-Control and Expires: fresh entries are served
+ * without touching the site, stale ones are revalidated with If-None-Match / If-Modified-Since. Entries live in
+ * {http-cache.dir}/{xx}/{fingerprint}.http and the total size is capped by http-cache.max-bytes, least recently used
+ * first out. The index is in memory and rebuilt from the files on start, using file mtime as the last use.
+ */
+@Component
+public class HttpCache {
+    private static final Logger logger = LoggerFactory.getLogger(HttpCache.class);
+    private static final String SUFFIX = ".http";
+    private static final int FORMAT = 1;
+    // DataOutput.writeUTF limit, with room for the other strings
+    private static final int MAX_URL_LENGTH = 8192;
+
+    @Value("${http-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${http-cache.dir:data/http-cache}")
+    private String dir;
+
+    @Value("${http-cache.max-bytes:1073741824}")
+    private long maxBytes;
+
+    // cap of the heuristic freshness given to pages that only have Last-Modified
+    @Value("${http-cache.heuristic-max-millis:86400000}")
+    private long heuristicMaxMillis;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private Path root;
+    // access order, so the eldest entry is the least recently used
+    private final LinkedHashMap<Long, Meta> index = new LinkedHashMap<>(1024, 0.75f, true);
+    private long bytes;
+    private Counter hits;
+    private Counter revalidated;
+    private Counter misses;
+
+    @PostConstruct
+    public void open() throws IOException {
+        hits = Counter.builder("http.cache.hits").description("Fetches served fresh from the cache").register(meterRegistry);
+        revalidated = Counter.builder("http.cache.revalidated").description("Stale entries confirmed by a 304").register(meterRegistry);
+        misses = Counter.builder("http.cache.misses").register(meterRegistry);
+        Gauge.builder("http.cache.bytes", this, HttpCache::getBytes).baseUnit("bytes").register(meterRegistry);
+        if (!enabled) return;
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        List<Path> files;
+        try (Stream<Path> s = Files.walk(root, 2)) {
+            files = s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        // oldest use first, so the rebuilt LRU order matches the one before the restart
+        List<Path> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparingLong(HttpCache::mtime));
+        synchronized (this) {
+            for (Path p : sorted) {
+                try {
+                    Meta m = readMeta(p);
+                    index.put(m.key, m);
+                    bytes += m.size;
+                } catch (IOException e) {
+                    logger.warn("Dropping unreadable cache entry {}: {}", p, e.getMessage());
+                    deleteQuietly(p);
+                }
+            }
+            evict();
+        }
+        logger.info("HTTP cache has {} entries, {} bytes", index.size(), bytes);
+    }
+
+    /**
+     * The cached response for the url, fresh or stale, or null if there is none.
+     */
+    public Entry lookup(String url) {
+        if (!enabled) return null;
+        long key = Fingerprints.url64(url);
+        Meta m;
+        synchronized (this) {
+            m = index.get(key);
+        }
+        if (m == null || !m.url.equals(url)) {
+            misses.increment();
+            return null;
+        }
+        return new Entry(m);
+    }
+
+    /**
+     * Reads the body of a fresh entry; null if the entry was evicted meanwhile.
+     */
+    public FetchedPage serve(Entry entry) {
+        FetchedPage page = load(entry.meta);
+        if (page != null) hits.increment();
+        return page;
+    }
+
+    /**
+     * The site answered 304 to a revalidation: the cached body is still good, with the new freshness.
+     */
+    public FetchedPage revalidated(Entry entry, Headers headers, long now) {
+        FetchedPage page = load(entry.meta);
+        if (page == null) return null;
+        revalidated.increment();
+        long freshness = freshnessMillis(headers, now, heuristicMaxMillis);
+        // a 304 may leave out the validators, the old ones still hold
+        String etag = headers.etag != null ? headers.etag : entry.meta.etag;
+        String lastModified = headers.lastModified != null ? headers.lastModified : entry.meta.lastModified;
+        write(entry.meta.url, entry.meta.finalUrl, page.getMimeType(), etag, lastModified, now + Math.max(freshness, 0), page.getBody());
+        return page;
+    }
+
+    /**
+     * Stores a 200 response if its headers allow a shared cache to keep it.
+     */
+    public void store(String url, String finalUrl, FetchedPage page, Headers headers, long now) {
+        if (!enabled || url.length() > MAX_URL_LENGTH || finalUrl.length() > MAX_URL_LENGTH) return;
+        long freshness = freshnessMillis(headers, now, heuristicMaxMillis);
+        if (freshness < 0) return;
+        // nothing to serve it fresh and nothing to revalidate it with
+        if (freshness == 0 && headers.etag == null && headers.lastModified == null) return;
+        write(url, finalUrl, page.getMimeType(), headers.etag, headers.lastModified, now + freshness, page.getBody());
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * How long a response stays fresh, 0 if it must be revalidated on every use, -1 if it must not be stored.
+     * s-maxage wins over max-age, which wins over Expires; with none of them, pages that have Last-Modified get 10%
+     * of their age, capped at heuristicMax.
+     */
+    static long freshnessMillis(Headers h, long now, long heuristicMax) {
+        Map<String, String> cc = parseCacheControl(h.cacheControl);
+        if (cc.containsKey("no-store") || cc.containsKey("private")) return -1;
+        if (cc.containsKey("no-cache") || "no-cache".equalsIgnoreCase(h.pragma)) return 0;
+        long date = h.date != null ? parseDate(h.date) : -1;
+        if (date < 0) date = now;
+        long age = h.age != null ? Math.max(0, parseLong(h.age) * 1000) : 0;
+        long maxAge = parseLong(cc.get("s-maxage"));
+        if (maxAge < 0) maxAge = parseLong(cc.get("max-age"));
+        if (maxAge >= 0) return Math.max(0, maxAge * 1000 - age);
+        if (h.expires != null) {
+            // an invalid Expires, such as "0", means already expired
+            long expires = parseDate(h.expires);
+            return expires < 0 ? 0 : Math.max(0, expires - date - age);
+        }
+        if (h.lastModified != null) {
+            long lastModified = parseDate(h.lastModified);
+            if (lastModified >= 0 && lastModified < date) return Math.min((date - lastModified) / 10, heuristicMax);
+        }
+        return 0;
+    }
+
+    static Map<String, String> parseCacheControl(String value) {
+        Map<String, String> res = new HashMap<>();
+        if (value == null) return res;
+        for (String part : value.split(",")) {
+            String p = part.trim();
+            if (p.isEmpty()) continue;
+            int eq = p.indexOf('=');
+            if (eq < 0) {
+                res.put(p.toLowerCase(Locale.ROOT), "");
+            } else {
+                String v = p.substring(eq + 1).trim();
+                if (v.length() >= 2 && v.startsWith("\"") && v.endsWith("\"")) v = v.substring(1, v.length() - 1);
+                res.put(p.substring(0, eq).trim().toLowerCase(Locale.ROOT), v);
+            }
+        }
+        return res;
+    }
+
+    private static long parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private FetchedPage load(Meta m) {
+        Path p = path(m.key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            readHeader(in, p);
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            touch(p);
+            return FetchedPage.cached(m.mimeType, new String(body, StandardCharsets.UTF_8), m.finalUrl);
+        } catch (NoSuchFileException e) {
+            // evicted since the lookup
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed reading cache entry for {}: {}", m.url, e.getMessage());
+            return null;
+        }
+    }
+
+    private void write(String url, String finalUrl, String mimeType, String etag, String lastModified, long freshUntil, String body) {
+        long key = Fingerprints.url64(url);
+        Path p = path(key);
+        try {
+            Files.createDirectories(p.getParent());
+            Path tmp = Files.createTempFile(p.getParent(), "entry", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FORMAT);
+                out.writeUTF(url);
+                out.writeUTF(finalUrl);
+                out.writeUTF(mimeType);
+                out.writeUTF(etag != null ? etag : "");
+                out.writeUTF(lastModified != null ? lastModified : "");
+                out.writeLong(freshUntil);
+                byte[] b = body.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            long size = Files.size(tmp);
+            synchronized (this) {
+                Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Meta old = index.put(key, new Meta(key, url, finalUrl, mimeType, etag, lastModified, freshUntil, size));
+                if (old != null) bytes -= old.size;
+                bytes += size;
+                evict();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed caching {}: {}", url, e.getMessage());
+        }
+    }
+
+    // callers hold the lock
+    private void evict() {
+        Iterator<Meta> it = index.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Meta m = it.next();
+            it.remove();
+            bytes -= m.size;
+            deleteQuietly(path(m.key));
+        }
+    }
+
+    private Meta readMeta(Path p) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            return readHeader(in, p);
+        }
+    }
+
+    private Meta readHeader(DataInputStream in, Path p) throws IOException {
+        if (in.readInt() != FORMAT) throw new IOException("Unknown cache entry format");
+        String url = in.readUTF();
+        String finalUrl = in.readUTF();
+        String mimeType = in.readUTF();
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        long freshUntil = in.readLong();
+        return new Meta(Fingerprints.url64(url), url, finalUrl, mimeType, etag.isEmpty() ? null : etag,
+                lastModified.isEmpty() ? null : lastModified, freshUntil, Files.size(p));
+    }
+
+    private Path path(long key) {
+        String hex = Fingerprints.hex(key);
+        return root.resolve(hex.substring(0, 2)).resolve(hex + SUFFIX);
+    }
+
+    private static void touch(Path p) {
+        try {
+            Files.setLastModifiedTime(p, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignore) {
+            // only affects the LRU order after a restart
+        }
+    }
+
+    private static long mtime(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            logger.warn("Failed deleting cache entry {}: {}", p, e.getMessage());
+        }
+    }
+
+    /**
+     * The response headers the cache looks at.
+     */
+    public static final class Headers {
+        final String cacheControl;
+        final String pragma;
+        final String expires;
+        final String date;
+        final String age;
+        final String etag;
+        final String lastModified;
+
+        public Headers(String cacheControl, String pragma, String expires, String date, String age, String etag, String lastModified) {
+            this.cacheControl = cacheControl;
+            this.pragma = pragma;
+            this.expires = expires;
+            this.date = date;
+            this.age = age;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * A cache hit; isFresh() tells whether it can be served as is or needs revalidating first.
+     */
+    public static final class Entry {
+        private final Meta meta;
+
+        private Entry(Meta meta) {
+            this.meta = meta;
+        }
+
+        public boolean isFresh(long now) {
+            return now < meta.freshUntil;
+        }
+
+        // null if the site did not send one
+        public String getEtag() {
+            return meta.etag;
+        }
+
+        public String getLastModified() {
+            return meta.lastModified;
+        }
+    }
+
+    private static final class Meta {
+        final long key;
+        final String url;
+        final String finalUrl;
+        final String mimeType;
+        final String etag;
+        final String lastModified;
+        final long freshUntil;
+        final long size;
+
+        Meta(long key, String url, String finalUrl, String mimeType, String etag, String lastModified, long freshUntil, long size) {
+            this.key = key;
+            this.url = url;
+            this.finalUrl = finalUrl;
+            this.mimeType = mimeType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.freshUntil = freshUntil;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.handson.searchengine.crawler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.model.TraceEventType;
+import com.handson.searchengine.model.UrlSearchDoc;
+import com.handson.searchengine.model.UrlState;
+import com.handson.searchengine.suggest.SuggestService;
+import com.handson.searchengine.util.BlockingIoExecutor;
+import com.handson.searchengine.util.CircuitBreaker;
+import com.handson.searchengine.util.ElasticSearch;
+import com.handson.searchengine.util.IndexSpool;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends crawled docs to Elasticsearch without ever losing them.
+ * Docs go through a bounded in-memory queue while ES is healthy; when the queue is full, the circuit breaker is
+ * open or a write fails, they go to the disk spool instead, and the spool is replayed in order once ES is back.
+ * While the spool is not empty new docs queue up behind it, so ES sees them in crawl order.
+ */
+@Component
+public class Indexer {
+
+    @Autowired
+    private ElasticSearch elasticSearch;
+
+    @Autowired
+    private IndexSpool spool;
+
+    @Autowired
+    private ObjectMapper om;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private UrlStateStore urlStates;
+
+    @Autowired
+    private SuggestService suggestService;
+
+    @Autowired
+    private CrawlTrace trace;
+
+    @Value("${indexer.threads:4}")
+    private int threads;
+
+    @Value("${executor.virtual-threads:true}")
+    private boolean virtualThreads;
+
+    @Value("${indexer.queue-capacity:1000}")
+    private int queueCapacity;
+
+    @Value("${indexer.replay-batch:200}")
+    private int replayBatch;
+
+    @Value("${indexer.replay-max-batches:10}")
+    private int replayMaxBatches;
+
+    @Value("${indexer.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${indexer.breaker.open-millis:30000}")
+    private long openMillis;
+
+    @Value("${indexer.shutdown.drain-millis:10000}")
+    private long drainMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private BlockingIoExecutor executor;
+    private CircuitBreaker breaker;
+    private Counter dropped;
+
+    @PostConstruct
+    public void init() {
+        executor = BlockingIoExecutor.create("indexer", threads, queueCapacity, virtualThreads);
+        breaker = new CircuitBreaker(failureThreshold, openMillis);
+        Gauge.builder("indexer.spool.depth", spool, IndexSpool::getDepth).description("Docs waiting in the disk spool").register(meterRegistry);
+        Gauge.builder("indexer.spool.bytes", spool, IndexSpool::getBytes).baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("indexer.queue.size", executor, BlockingIoExecutor::getQueued).register(meterRegistry);
+        Gauge.builder("indexer.breaker.open", breaker, b -> b.getState() == CircuitBreaker.State.closed ? 0 : 1).register(meterRegistry);
+        dropped = Counter.builder("indexer.spool.dropped").description("Docs lost because the spool was full").register(meterRegistry);
+    }
+
+    public void index(UrlSearchDoc doc) {
+        if (!spool.isEmpty() || !breaker.allowRequest()) {
+            trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.spooled, 0, 0, 0, spool.isEmpty() ? "breaker open" : "behind spool");
+            toSpool(doc);
+            return;
+        }
+        try {
+            executor.execute(new IndexTask(doc));
+        } catch (RejectedExecutionException e) {
+            // allowRequest() may have handed out the half-open probe; an indexer that cannot keep up counts as a
+            // failed probe, otherwise the breaker would wait in half open for a result that never comes
+            breaker.onFailure();
+            trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.spooled, 0, 0, 0, "queue full");
+            toSpool(doc);
+        }
+    }
+
+    private void send(UrlSearchDoc doc) {
+        try {
+            elasticSearch.addData(doc);
+            breaker.onSuccess();
+            urlStates.mark(doc.getCrawlId(), doc.getUrl(), UrlState.indexed, doc.getLevel());
+            trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.indexed);
+            suggestService.onIndexed(doc);
+        } catch (Exception e) {
+            breaker.onFailure();
+            logger.warn("Failed to index " + doc.getUrl() + ", spooling it: " + e.getMessage());
+            trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.spooled, 0, 0, 0, e.getMessage());
+            toSpool(doc);
+        }
+    }
+
+    private void toSpool(UrlSearchDoc doc) {
+        try {
+            if (!spool.append(om.writeValueAsBytes(doc))) {
+                dropped.increment();
+                trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.indexFailed, 0, 0, 0, "spool full");
+                logger.error("Index spool is full, dropping " + doc.getUrl());
+            }
+        } catch (Exception e) {
+            dropped.increment();
+            logger.error("Failed to spool " + doc.getUrl() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replays up to indexer.replay-max-batches batches of the spool per run, so a large backlog does not hold the
+     * shared scheduler thread. A batch is committed up to its first doc throttled by ES (429, 5xx); that doc and
+     * everything after it stay at the head of the spool for the next run, so replay stays in order and a doc that
+     * made it into the spool is never dropped for lack of room.
+     */
+    @Scheduled(fixedDelayString = "${indexer.replay-millis:1000}")
+    public void replay() {
+        for (int batch = 0; batch < replayMaxBatches && !spool.isEmpty() && breaker.allowRequest(); batch++) {
+            try {
+                List<byte[]> records = spool.peek(replayBatch);
+                if (records.isEmpty()) return;
+                List<UrlSearchDoc> docs = new ArrayList<>(records.size());
+                for (byte[] r : records) {
+                    docs.add(om.readValue(r, UrlSearchDoc.class));
+                }
+                int[] statuses = elasticSearch.bulkIndex(docs);
+                int rejected = 0;
+                int done = 0;
+                for (; done < docs.size(); done++) {
+                    UrlSearchDoc doc = docs.get(done);
+                    int status = done < statuses.length ? statuses[done] : 500;
+                    if (status == 429 || status >= 500) break;
+                    if (status < 300) {
+                        urlStates.mark(doc.getCrawlId(), doc.getUrl(), UrlState.indexed, doc.getLevel());
+                        trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.indexed, 0, 0, 0, "from spool");
+                        suggestService.onIndexed(doc);
+                    } else {
+                        // rejected by ES itself (mapping, parse errors), replaying it again would not help
+                        rejected++;
+                        trace.page(doc.getCrawlId(), doc.getUrl(), TraceEventType.indexFailed, 0, 0, 0, "rejected by Elasticsearch");
+                    }
+                }
+                if (rejected > 0) {
+                    dropped.increment(rejected);
+                    logger.error(rejected + " spooled docs were rejected by Elasticsearch");
+                }
+                spool.commit(done);
+                if (done == docs.size()) {
+                    breaker.onSuccess();
+                } else {
+                    // ES is shedding load, back off instead of replaying the rest of the spool at it; the docs
+                    // after the throttled one that did go in are sent again next time, which only overwrites them
+                    breaker.onFailure();
+                    logger.warn((docs.size() - done) + " spooled docs were throttled by Elasticsearch, will retry");
+                    return;
+                }
+            } catch (Exception e) {
+                breaker.onFailure();
+                logger.warn("Spool replay failed, will retry: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    /**
+     * Lets queued docs go out for up to indexer.shutdown.drain-millis; whatever is still waiting after that
+     * goes to the spool and is sent by the next start.
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        boolean drained = false;
+        try {
+            drained = executor.awaitTermination(drainMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Runnable> pending = executor.shutdownNow();
+        if (pending.isEmpty()) return;
+        if (!drained) logger.info("Index queue not drained in " + drainMillis + "ms, spooling " + pending.size() + " docs");
+        for (Runnable r : pending) {
+            toSpool(((IndexTask) r).doc);
+        }
+    }
+
+    private final class IndexTask implements Runnable {
+        final UrlSearchDoc doc;
+
+        IndexTask(UrlSearchDoc doc) {
+            this.doc = doc;
+        }
+
+        @Override
+        public void run() {
+            send(doc);
+        }
+    }
+}
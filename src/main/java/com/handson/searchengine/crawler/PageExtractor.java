@@ -0,0 +1,164 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.ArchivedPage;
+import com.handson.searchengine.model.UrlSearchDoc;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns a fetched page into the document we index.
+ * Shared by the crawler and the re-index job, so both always produce the same fields.
+ * Besides the full text it extracts the short fields search works on: title, meta description, h1-h3 headings and a
+ * lead snippet of the first real paragraphs.
+ */
+@Component
+public class PageExtractor {
+
+    static final int MAX_TITLE = 300;
+    static final int MAX_DESCRIPTION = 500;
+    static final int MAX_HEADINGS = 1000;
+    static final int MAX_SNIPPET = 300;
+    // shorter paragraphs are usually navigation, captions or cookie banners
+    private static final int MIN_PARAGRAPH = 60;
+
+    @Autowired(required = false)
+    private List<ContentExtractor> extractors = Collections.emptyList();
+
+    public static boolean isHtml(String mimeType) {
+        return mimeType == null || mimeType.isEmpty() || "text/html".equals(mimeType) || "application/xhtml+xml".equals(mimeType);
+    }
+
+    /**
+     * Whether a body of this type can be indexed at all, so the fetcher can skip it before downloading.
+     */
+    public boolean supports(String mimeType) {
+        return isHtml(mimeType) || extractorFor(mimeType) != null;
+    }
+
+    public UrlSearchDoc extract(String crawlId, String url, String baseUrl, int level, Document webPageContent) {
+        String text = webPageContent.body() != null ? webPageContent.body().text() : "";
+        String description = metaContent(webPageContent, "meta[name=description]");
+        if (description.isEmpty()) description = metaContent(webPageContent, "meta[property=og:description]");
+        String title = webPageContent.title().trim();
+        if (title.isEmpty()) title = metaContent(webPageContent, "meta[property=og:title]");
+        return UrlSearchDoc.of(crawlId, text, url, baseUrl, level, "html")
+                .withSummary(cut(title, MAX_TITLE), cut(description, MAX_DESCRIPTION), headings(webPageContent),
+                        leadSnippet(webPageContent, description, text));
+    }
+
+    public UrlSearchDoc extract(String crawlId, String url, String baseUrl, int level, FetchedPage page) {
+        if (page.isHtml()) return extract(crawlId, url, baseUrl, level, page.getDocument());
+        return extract(crawlId, url, baseUrl, level, page.getMimeType(), page.getBody());
+    }
+
+    public UrlSearchDoc extract(ArchivedPage page) {
+        String baseUrl = page.getBaseUrl() != null ? page.getBaseUrl() : originOf(page.getUrl());
+        return extract(page.getCrawlId(), page.getUrl(), baseUrl, page.getLevel(), page.getContentType(), page.getContent());
+    }
+
+    private UrlSearchDoc extract(String crawlId, String url, String baseUrl, int level, String mimeType, String body) {
+        ContentExtractor extractor = isHtml(mimeType) ? null : extractorFor(mimeType);
+        if (extractor == null) {
+            return extract(crawlId, url, baseUrl, level, Jsoup.parse(body, url));
+        }
+        String text = extractor.text(body);
+        return UrlSearchDoc.of(crawlId, text, url, baseUrl, level, extractor.type())
+                .withSummary("", "", "", cut(text, MAX_SNIPPET));
+    }
+
+    /**
+     * Re-maps a doc read back from an existing index. The html is gone there, so only the stored fields are used.
+     */
+    public UrlSearchDoc extract(Map<String, Object> source) {
+        Object level = source.get("level");
+        Object pageRank = source.get("pageRank");
+        Object inlinks = source.get("inlinks");
+        return UrlSearchDoc.of(
+                (String) source.get("crawlId"),
+                (String) source.get("content"),
+                (String) source.get("url"),
+                (String) source.get("baseUrl"),
+                level instanceof Number ? ((Number) level).intValue() : 0,
+                (String) source.get("contentType"))
+                .withLinkRank(pageRank instanceof Number ? ((Number) pageRank).floatValue() : 1f,
+                        inlinks instanceof Number ? ((Number) inlinks).intValue() : 0)
+                .withSummary((String) source.get("title"), (String) source.get("description"),
+                        (String) source.get("headings"), snippetOf(source));
+    }
+
+    // docs indexed before snippets existed get one from their content
+    private static String snippetOf(Map<String, Object> source) {
+        Object snippet = source.get("snippet");
+        if (snippet instanceof String) return (String) snippet;
+        Object content = source.get("content");
+        return content instanceof String ? cut((String) content, MAX_SNIPPET) : "";
+    }
+
+    private static String metaContent(Document doc, String selector) {
+        Element meta = doc.selectFirst(selector);
+        return meta != null ? meta.attr("content").trim() : "";
+    }
+
+    private static String headings(Document doc) {
+        StringBuilder sb = new StringBuilder();
+        for (Element h : doc.select("h1, h2, h3")) {
+            String t = h.text().trim();
+            if (t.isEmpty()) continue;
+            if (sb.length() + t.length() + 1 > MAX_HEADINGS) break;
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The first paragraphs that look like prose, else the meta description, else the start of the text.
+     */
+    static String leadSnippet(Document doc, String description, String text) {
+        StringBuilder sb = new StringBuilder();
+        Element root = doc.selectFirst("article, main");
+        for (Element p : (root != null ? root : doc).select("p")) {
+            String t = p.text().trim();
+            if (t.length() < MIN_PARAGRAPH) continue;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(t);
+            if (sb.length() >= MAX_SNIPPET) break;
+        }
+        if (sb.length() > 0) return cut(sb.toString(), MAX_SNIPPET);
+        return cut(description.isEmpty() ? text : description, MAX_SNIPPET);
+    }
+
+    // at most max chars, cut at a word boundary
+    static String cut(String s, int max) {
+        if (s == null) return "";
+        if (s.length() <= max) return s;
+        int space = s.lastIndexOf(' ', max);
+        return (space > max / 2 ? s.substring(0, space) : s.substring(0, max)) + "…";
+    }
+
+    private ContentExtractor extractorFor(String mimeType) {
+        if (mimeType == null) return null;
+        String mime = mimeType.toLowerCase(Locale.ROOT);
+        for (ContentExtractor e : extractors) {
+            if (e.supports(mime)) return e;
+        }
+        return null;
+    }
+
+    private static String originOf(String url) {
+        try {
+            java.net.URL u = new java.net.URL(url);
+            return u.getProtocol() + "://" + u.getAuthority();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
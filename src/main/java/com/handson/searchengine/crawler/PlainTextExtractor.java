@@ -0,0 +1,22 @@
+package com.handson.searchengine.crawler;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class PlainTextExtractor implements ContentExtractor {
+
+    @Override
+    public boolean supports(String mimeType) {
+        return "text/plain".equals(mimeType);
+    }
+
+    @Override
+    public String type() {
+        return "text";
+    }
+
+    @Override
+    public String text(String body) {
+        return body.trim();
+    }
+}
@@ -0,0 +1,108 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.kafka.FrontierCodec;
+import com.handson.searchengine.kafka.Producer;
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlerRecord;
+import com.handson.searchengine.model.DeadLetter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delayed retries without sleeping on a crawl thread.
+ * A failed record goes into a Redis sorted set scored by its due time; a poller on every worker moves due
+ * records back onto the crawl topic (ZREM decides which worker gets it). Records out of attempts go to the
+ * dead-letter topic with their error classification.
+ */
+@Component
+public class RetryScheduler {
+
+    static final String RETRY_KEY = "crawler.retry";
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private Producer producer;
+
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Value("${crawler.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${crawler.retry.base-delay-millis:1000}")
+    private long baseDelayMillis;
+
+    @Value("${crawler.retry.batch:100}")
+    private int batch;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    /**
+     * Schedules the next attempt of a failed fetch, or dead-letters it. Returns false if the record was dead-lettered.
+     */
+    public boolean retryOrDeadLetter(CrawlerRecord rec, FetchException e) {
+        if (!e.isRetryable() || rec.getAttempt() + 1 >= maxAttempts) {
+            deadLetter(rec, e);
+            return false;
+        }
+        long backoff = baseDelayMillis << Math.min(rec.getAttempt(), 10);
+        long delay = Math.max(e.getRetryAfterMillis(), backoff + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        schedule(CrawlerRecord.of(rec).withAttempt(rec.getAttempt() + 1), delay);
+        return true;
+    }
+
+    /**
+     * Puts the record back later without counting an attempt, e.g. when its host is blocked by Retry-After.
+     */
+    public void defer(CrawlerRecord rec, long delayMillis) {
+        schedule(rec, Math.max(delayMillis, 100));
+    }
+
+    public void deadLetter(CrawlerRecord rec, FetchException e) {
+        try {
+            producer.sendDeadLetter(DeadLetter.of(rec, e.getError(), e.getMessage()));
+        } catch (Exception ex) {
+            logger.error("Failed to dead-letter " + rec.getUrl() + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private void schedule(CrawlerRecord rec, long delayMillis) {
+        String member = Base64.getEncoder().encodeToString(FrontierCodec.encode(rec));
+        redisTemplate.opsForZSet().add(RETRY_KEY, member, System.currentTimeMillis() + delayMillis);
+    }
+
+    @Scheduled(fixedDelayString = "${crawler.retry.poll-millis:500}")
+    public void publishDue() {
+        Set<Object> due;
+        try {
+            due = redisTemplate.opsForZSet().rangeByScore(RETRY_KEY, 0, System.currentTimeMillis(), 0, batch);
+        } catch (Exception e) {
+            logger.warn("Failed polling retry queue: " + e.getMessage());
+            return;
+        }
+        if (due == null) return;
+        for (Object member : due) {
+            Long removed = redisTemplate.opsForZSet().remove(RETRY_KEY, member);
+            if (removed == null || removed == 0) continue; // another worker took it
+            try {
+                FrontierCodec.Message msg = FrontierCodec.decode(Base64.getDecoder().decode(member.toString()));
+                CrawlContext ctx = contextRegistry.get(msg.getCrawlId());
+                if (ctx == null) continue;
+                producer.sendFrontier(CrawlerRecord.of(ctx, msg.getUrl(), msg.getDistance(), msg.getAttempt()));
+            } catch (Exception e) {
+                logger.error("Failed to republish retry record: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which links belong to a crawl. Built once per crawl from its CrawlContext (see CrawlContextRegistry.scopeOf)
+ * and then tests every link of every page, so a link is checked with one pass over its characters:
+ * <ul>
+ * <li>the host goes down a trie of reversed host labels (the seed host, its subdomains when includeSubdomains is set,
+ * and the extra hosts, where "*.example.com" means any subdomain);</li>
+ * <li>the path must be under the seed's path, as before;</li>
+ * <li>path and query run through one Aho-Corasick automaton for the exclude substrings and one for the include
+ * substrings (if any include is given, a link must contain one of them);</li>
+ * <li>trap detection drops overlong urls, deep paths, a path segment repeated over and over (/a/b/a/b/a/b) and
+ * query strings with too many parameters. Distinct query strings of one path are capped by admitQueryVariant,
+ * counted per worker.</li>
+ * </ul>
+ */
+public final class ScopeMatcher {
+
+    static final int MAX_URL_LENGTH = 2048;
+    static final int MAX_PATH_SEGMENTS = 24;
+    // a segment seen this many times in one path is a loop, not a site structure
+    static final int MAX_SEGMENT_REPEATS = 3;
+    static final int MAX_QUERY_PARAMS = 12;
+    static final int DEFAULT_MAX_QUERY_VARIANTS = 100;
+    // paths tracked for query variants; past that new paths are not capped rather than using more memory
+    private static final int MAX_TRACKED_PATHS = 100_000;
+
+    private final String basePath;
+    private final HostTrie hosts = new HostTrie();
+    private final Automaton include;
+    private final Automaton exclude;
+    private final int maxQueryVariants;
+    private final Map<String, AtomicInteger> queryVariants = new ConcurrentHashMap<>();
+
+    private ScopeMatcher(String baseUrl, boolean includeSubdomains, Collection<String> extraHosts,
+                         Collection<String> include, Collection<String> exclude, int maxQueryVariants) {
+        Url base = Url.parse(baseUrl);
+        if (base == null) throw new IllegalArgumentException("Not an http(s) url: " + baseUrl);
+        this.basePath = base.path;
+        hosts.add(base.host, true, includeSubdomains);
+        if (includeSubdomains && base.host.startsWith("www.")) hosts.add(base.host.substring(4), true, true);
+        for (String h : extraHosts) {
+            String host = h.trim().toLowerCase(Locale.ROOT);
+            if (host.isEmpty()) continue;
+            if (host.startsWith("*.")) {
+                hosts.add(host.substring(2), false, true);
+            } else {
+                hosts.add(host, true, false);
+            }
+        }
+        this.include = include.isEmpty() ? null : new Automaton(include);
+        this.exclude = exclude.isEmpty() ? null : new Automaton(exclude);
+        this.maxQueryVariants = maxQueryVariants > 0 ? maxQueryVariants : DEFAULT_MAX_QUERY_VARIANTS;
+    }
+
+    public static ScopeMatcher of(CrawlContext ctx) {
+        return new ScopeMatcher(ctx.getBaseUrl(), ctx.isIncludeSubdomains(), ctx.getHosts(), ctx.getInclude(),
+                ctx.getExclude(), ctx.getMaxQueryVariants());
+    }
+
+    // scope of a crawl whose context is gone: the seed prefix only
+    public static ScopeMatcher of(String baseUrl) {
+        return new ScopeMatcher(baseUrl, false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 0);
+    }
+
+    /**
+     * True if the absolute url is in the crawl's scope and does not look like a crawler trap.
+     */
+    public boolean allows(String url) {
+        if (url == null || url.length() > MAX_URL_LENGTH) return false;
+        Url u = Url.parse(url);
+        if (u == null || !hosts.matches(u.host) || !u.path.startsWith(basePath)) return false;
+        String rest = u.query == null ? u.path : u.path + "?" + u.query;
+        if (exclude != null && exclude.matches(rest)) return false;
+        if (include != null && !include.matches(rest)) return false;
+        return !isTrap(u);
+    }
+
+    /**
+     * Counts a url new to the crawl against the cap on distinct query strings of its path; false once over it.
+     */
+    public boolean admitQueryVariant(String url) {
+        Url u = Url.parse(url);
+        if (u == null || u.query == null) return true;
+        String key = u.host + u.path;
+        AtomicInteger count = queryVariants.get(key);
+        if (count == null) {
+            if (queryVariants.size() >= MAX_TRACKED_PATHS) return true;
+            count = queryVariants.computeIfAbsent(key, k -> new AtomicInteger());
+        }
+        return count.incrementAndGet() <= maxQueryVariants;
+    }
+
+    static boolean isTrap(Url u) {
+        Map<String, Integer> seen = new HashMap<>();
+        int segments = 0;
+        int start = 1;
+        String path = u.path;
+        while (start < path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) end = path.length();
+            if (end > start) {
+                if (++segments > MAX_PATH_SEGMENTS) return true;
+                if (seen.merge(path.substring(start, end), 1, Integer::sum) >= MAX_SEGMENT_REPEATS) return true;
+            }
+            start = end + 1;
+        }
+        if (u.query != null) {
+            int params = 1;
+            for (int i = 0; i < u.query.length(); i++) {
+                if (u.query.charAt(i) == '&' && ++params > MAX_QUERY_PARAMS) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The parts of an http(s) url the rules look at; hand parsed, it runs for every link of every page.
+     */
+    static final class Url {
+        final String host;
+        final String path;
+        // null when there is no '?'
+        final String query;
+
+        private Url(String host, String path, String query) {
+            this.host = host;
+            this.path = path;
+            this.query = query;
+        }
+
+        static Url parse(String url) {
+            int hostStart;
+            if (url.regionMatches(true, 0, "https://", 0, 8)) {
+                hostStart = 8;
+            } else if (url.regionMatches(true, 0, "http://", 0, 7)) {
+                hostStart = 7;
+            } else {
+                return null;
+            }
+            int end = url.indexOf('#', hostStart);
+            if (end < 0) end = url.length();
+            int hostEnd = hostStart;
+            while (hostEnd < end && url.charAt(hostEnd) != '/' && url.charAt(hostEnd) != '?') hostEnd++;
+            String authority = url.substring(hostStart, hostEnd);
+            int at = authority.lastIndexOf('@');
+            if (at >= 0) authority = authority.substring(at + 1);
+            int colon = authority.lastIndexOf(':');
+            if (colon >= 0 && authority.indexOf(']') < colon) authority = authority.substring(0, colon);
+            if (authority.isEmpty()) return null;
+            int q = url.indexOf('?', hostEnd);
+            if (q >= end) q = -1;
+            String path = url.substring(hostEnd, q >= 0 ? q : end);
+            return new Url(authority.toLowerCase(Locale.ROOT), path.isEmpty() ? "/" : path, q >= 0 ? url.substring(q + 1, end) : null);
+        }
+    }
+
+    /**
+     * Hosts keyed by their labels from the right, so "a.b.example.com" walks com, example, b, a.
+     */
+    private static final class HostTrie {
+        private final Node root = new Node();
+
+        void add(String host, boolean exact, boolean subdomains) {
+            Node n = root;
+            String[] labels = host.split("\\.");
+            for (int i = labels.length - 1; i >= 0; i--) {
+                n = n.children.computeIfAbsent(labels[i], l -> new Node());
+            }
+            n.exact |= exact;
+            n.subdomains |= subdomains;
+        }
+
+        boolean matches(String host) {
+            Node n = root;
+            int end = host.length();
+            while (end > 0) {
+                int dot = host.lastIndexOf('.', end - 1);
+                n = n.children.get(host.substring(dot + 1, end));
+                if (n == null) return false;
+                end = dot;
+                if (end > 0 && n.subdomains) return true;
+            }
+            return n.exact;
+        }
+
+        private static final class Node {
+            final Map<String, Node> children = new HashMap<>(4);
+            boolean exact;
+            boolean subdomains;
+        }
+    }
+
+    /**
+     * Aho-Corasick automaton over a set of substrings: one pass over the text tells whether any of them occurs.
+     * Transitions are kept as sorted char arrays per state.
+     */
+    static final class Automaton {
+        private char[][] keys;
+        private int[][] targets;
+        private int[] fail;
+        private boolean[] match;
+
+        Automaton(Collection<String> patterns) {
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<Boolean> terminal = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            terminal.add(false);
+            for (String p : patterns) {
+                if (p == null || p.isEmpty()) continue;
+                int s = 0;
+                for (int i = 0; i < p.length(); i++) {
+                    Integer next = trie.get(s).get(p.charAt(i));
+                    if (next == null) {
+                        next = trie.size();
+                        trie.add(new TreeMap<>());
+                        terminal.add(false);
+                        trie.get(s).put(p.charAt(i), next);
+                    }
+                    s = next;
+                }
+                terminal.set(s, true);
+            }
+            int n = trie.size();
+            keys = new char[n][];
+            targets = new int[n][];
+            fail = new int[n];
+            match = new boolean[n];
+            for (int s = 0; s < n; s++) {
+                TreeMap<Character, Integer> t = trie.get(s);
+                keys[s] = new char[t.size()];
+                targets[s] = new int[t.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> e : t.entrySet()) {
+                    keys[s][i] = e.getKey();
+                    targets[s][i++] = e.getValue();
+                }
+                match[s] = terminal.get(s);
+            }
+            // failure links breadth first, so a state's fail target is done before the state
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int child : targets[0]) queue.add(child);
+            while (!queue.isEmpty()) {
+                int s = queue.poll();
+                for (int i = 0; i < keys[s].length; i++) {
+                    int child = targets[s][i];
+                    int f = fail[s];
+                    int next;
+                    while ((next = step(f, keys[s][i])) < 0 && f != 0) f = fail[f];
+                    fail[child] = next >= 0 ? next : 0;
+                    match[child] |= match[fail[child]];
+                    queue.add(child);
+                }
+            }
+        }
+
+        boolean matches(String text) {
+            int s = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                int next;
+                while ((next = step(s, c)) < 0 && s != 0) s = fail[s];
+                s = next >= 0 ? next : 0;
+                if (match[s]) return true;
+            }
+            return false;
+        }
+
+        private int step(int s, char c) {
+            int i = Arrays.binarySearch(keys[s], c);
+            return i >= 0 ? targets[s][i] : -1;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.handson.searchengine.crawler;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streaming reader for sitemaps (urlset) and sitemap indexes (sitemapindex), plain or gzipped.
+ * Entries are reported one by one as they are read, so a 50MB sitemap costs no more memory than a small one.
+ * Reading stops at the protocol's limits, 50MB uncompressed or 50,000 entries; what was read up to there is kept.
+ */
+public final class SitemapParser {
+
+    public interface Listener {
+        void sitemap(String loc);
+
+        /**
+         * lastmod is epoch millis, 0 if the entry has none or it can't be read.
+         */
+        void url(String loc, long lastmod);
+    }
+
+    public static final long MAX_BYTES = 50L * 1024 * 1024;
+    public static final int MAX_ENTRIES = 50_000;
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    private SitemapParser() {
+    }
+
+    public static void parse(InputStream in, Listener listener) throws IOException {
+        parse(in, listener, MAX_BYTES, MAX_ENTRIES);
+    }
+
+    /**
+     * Reads at most maxBytes after decompression and reports at most maxEntries entries; IOException past maxBytes.
+     */
+    public static void parse(InputStream in, Listener listener, long maxBytes, int maxEntries) throws IOException {
+        InputStream stream = new LimitedInputStream(maybeGunzip(in), maxBytes, 0);
+        XMLStreamReader reader = null;
+        int entries = 0;
+        try {
+            reader = FACTORY.createXMLStreamReader(stream);
+            boolean inUrl = false;
+            boolean inSitemap = false;
+            String loc = null;
+            String lastmod = null;
+            while (entries < maxEntries && reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("url".equals(name)) {
+                        inUrl = true;
+                        loc = lastmod = null;
+                    } else if ("sitemap".equals(name)) {
+                        inSitemap = true;
+                        loc = lastmod = null;
+                    } else if ((inUrl || inSitemap) && "loc".equals(name)) {
+                        loc = reader.getElementText().trim();
+                    } else if ((inUrl || inSitemap) && "lastmod".equals(name)) {
+                        lastmod = reader.getElementText().trim();
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (inUrl && "url".equals(name)) {
+                        inUrl = false;
+                        if (loc != null && !loc.isEmpty()) {
+                            listener.url(loc, parseLastmod(lastmod));
+                            entries++;
+                        }
+                    } else if (inSitemap && "sitemap".equals(name)) {
+                        inSitemap = false;
+                        if (loc != null && !loc.isEmpty()) {
+                            listener.sitemap(loc);
+                            entries++;
+                        }
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            // the parser wraps what the stream threw, e.g. the size limit
+            if (e.getNestedException() instanceof IOException) throw (IOException) e.getNestedException();
+            throw new IOException("Malformed sitemap: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignore) {
+                }
+            }
+        }
+    }
+
+    // W3C datetime: a date, or a date and time with a zone offset
+    static long parseLastmod(String s) {
+        if (s == null || s.isEmpty()) return 0;
+        try {
+            return OffsetDateTime.parse(s).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            // fall through to date only
+        }
+        try {
+            return LocalDate.parse(s.length() > 10 ? s.substring(0, 10) : s).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    // sitemap.xml.gz is often served without Content-Encoding, so look at the magic bytes instead of headers
+    private static InputStream maybeGunzip(InputStream in) throws IOException {
+        InputStream buffered = in.markSupported() ? in : new BufferedInputStream(in);
+        buffered.mark(2);
+        int b1 = buffered.read();
+        int b2 = buffered.read();
+        buffered.reset();
+        if (b1 == 0x1f && b2 == 0x8b) return new GZIPInputStream(buffered);
+        return buffered;
+    }
+
+    /**
+     * Fails reads past maxBytes, or past the deadline (System.nanoTime(), 0 for none), with an IOException.
+     */
+    static final class LimitedInputStream extends FilterInputStream {
+        private final long maxBytes;
+        private final long deadlineNanos;
+        private long read;
+
+        LimitedInputStream(InputStream in, long maxBytes, long deadlineNanos) {
+            super(in);
+            this.maxBytes = maxBytes;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            int b = super.read();
+            if (b >= 0) read++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            check();
+            int n = super.read(b, off, (int) Math.min(len, maxBytes - read + 1));
+            if (n > 0) read += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            check();
+            long skipped = super.skip(Math.min(n, maxBytes - read + 1));
+            read += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void check() throws IOException {
+            if (read > maxBytes) throw new IOException("Sitemap is over " + maxBytes + " bytes");
+            if (deadlineNanos != 0 && System.nanoTime() - deadlineNanos > 0) throw new IOException("Sitemap took too long to read");
+        }
+    }
+
+    private static XMLInputFactory newFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // sitemaps come from the sites being crawled; no DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
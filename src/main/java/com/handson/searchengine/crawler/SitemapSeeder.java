@@ -0,0 +1,196 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds the pages of a site from its sitemaps (robots.txt "Sitemap:" lines, else /sitemap.xml), following
+ * sitemap indexes. Keeps only the most recently modified urls in the crawl's scope, in a bounded heap,
+ * and returns them newest first so they are published, and crawled, in that order.
+ * Fetches take a slot of the host like page fetches do. A sitemap is read up to crawler.sitemap.max-bytes compressed,
+ * the protocol's 50MB / 50,000 entries uncompressed, and crawler.sitemap.max-read-millis, whichever comes first.
+ */
+@Component
+public class SitemapSeeder {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (compatible; SimpleCrawler/1.0)";
+    // Google reads at most 500KB of a robots.txt
+    private static final int ROBOTS_MAX_BYTES = 512 * 1024;
+
+    @Value("${crawler.sitemap.enabled:true}")
+    private boolean enabled;
+
+    @Value("${crawler.sitemap.max-urls:10000}")
+    private int maxUrls;
+
+    @Value("${crawler.sitemap.max-sitemaps:50}")
+    private int maxSitemaps;
+
+    @Value("${crawler.sitemap.timeout-millis:15000}")
+    private int timeoutMillis;
+
+    @Value("${crawler.sitemap.max-bytes:52428800}")
+    private int maxBytes;
+
+    @Value("${crawler.sitemap.max-read-millis:60000}")
+    private long maxReadMillis;
+
+    @Value("${crawler.host.max-wait-millis:2000}")
+    private long maxHostWaitMillis;
+
+    @Autowired
+    private HostConcurrencyController hostController;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private interface ResponseReader {
+        void read(Connection.Response res) throws IOException;
+    }
+
+    private static final class Entry {
+        final String url;
+        final long lastmod;
+
+        Entry(String url, long lastmod) {
+            this.url = url;
+            this.lastmod = lastmod;
+        }
+    }
+
+    public List<String> discover(CrawlContext ctx, ScopeMatcher scope) {
+        if (!enabled || ctx.getMaxDistance() == 0) return Collections.emptyList();
+        int limit = ctx.getMaxUrls() > 0 ? Math.min(maxUrls, ctx.getMaxUrls()) : maxUrls;
+        String prefix = ctx.getBaseUrl();
+        // oldest on top, so it is the one dropped when a newer url comes in
+        PriorityQueue<Entry> newest = new PriorityQueue<>(Comparator.comparingLong((Entry e) -> e.lastmod));
+        Set<String> seen = new HashSet<>();
+        ArrayDeque<String> sitemaps = new ArrayDeque<>(sitemapsOf(ctx.getBaseUrl()));
+        Set<String> fetched = new HashSet<>();
+
+        SitemapParser.Listener listener = new SitemapParser.Listener() {
+            @Override
+            public void sitemap(String loc) {
+                if (fetched.size() + sitemaps.size() < maxSitemaps) sitemaps.add(loc);
+            }
+
+            @Override
+            public void url(String loc, long lastmod) {
+                if (!scope.allows(loc) || loc.equals(prefix) || seen.contains(loc) || Crawler.hasSkippedExtension(loc)) return;
+                if (newest.size() >= limit) {
+                    if (lastmod <= newest.peek().lastmod) return;
+                    seen.remove(newest.poll().url);
+                }
+                seen.add(loc);
+                newest.add(new Entry(loc, lastmod));
+            }
+        };
+
+        while (!sitemaps.isEmpty() && fetched.size() < maxSitemaps) {
+            String sitemap = sitemaps.poll();
+            if (!fetched.add(sitemap)) continue;
+            try {
+                fetch(sitemap, maxBytes, res -> {
+                    if (res.statusCode() >= 400) {
+                        logger.debug("No sitemap at " + sitemap + " (HTTP " + res.statusCode() + ")");
+                        return;
+                    }
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxReadMillis);
+                    try (InputStream in = new SitemapParser.LimitedInputStream(res.bodyStream(), Long.MAX_VALUE, deadline)) {
+                        SitemapParser.parse(in, listener);
+                    }
+                });
+            } catch (IOException e) {
+                logger.info("Failed reading sitemap " + sitemap + ": " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        List<String> urls = new ArrayList<>(newest.size());
+        while (!newest.isEmpty()) urls.add(newest.poll().url);
+        Collections.reverse(urls);
+        logger.info("Found " + urls.size() + " urls in " + fetched.size() + " sitemaps of " + ctx.getBaseUrl());
+        return urls;
+    }
+
+    private List<String> sitemapsOf(String baseUrl) {
+        URL base;
+        try {
+            base = new URL(baseUrl);
+        } catch (MalformedURLException e) {
+            return Collections.emptyList();
+        }
+        String root = base.getProtocol() + "://" + base.getAuthority();
+        List<String> sitemaps = new ArrayList<>();
+        try {
+            fetch(root + "/robots.txt", ROBOTS_MAX_BYTES, robots -> {
+                if (robots.statusCode() >= 400) return;
+                for (String line : robots.body().split("\n")) {
+                    String l = line.trim();
+                    if (l.regionMatches(true, 0, "sitemap:", 0, 8)) {
+                        String loc = l.substring(8).trim();
+                        if (!loc.isEmpty()) sitemaps.add(loc);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            logger.debug("Failed to read robots.txt of " + root + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        }
+        if (sitemaps.isEmpty()) sitemaps.add(root + "/sitemap.xml");
+        return sitemaps;
+    }
+
+    /**
+     * Fetches url within a slot of its host and hands the response to reader. Overload (429, 5xx, timeouts) is fed
+     * to the host's limit; anything else is reported as neutral, as a sitemap's download time says nothing about
+     * the host's page latency.
+     */
+    private void fetch(String url, int maxBodyBytes, ResponseReader reader) throws IOException, InterruptedException {
+        String host = Crawler.hostOf(url);
+        if (!hostController.acquire(host, maxHostWaitMillis)) {
+            throw new IOException("No free connection slot for " + host + " within " + maxHostWaitMillis + "ms");
+        }
+        long start = System.currentTimeMillis();
+        HostConcurrencyController.Outcome outcome = HostConcurrencyController.Outcome.error;
+        long retryAfter = 0;
+        try {
+            Connection.Response res = Jsoup.connect(url)
+                    .userAgent(USER_AGENT)
+                    .timeout(timeoutMillis)
+                    .followRedirects(true)
+                    .ignoreHttpErrors(true)
+                    .ignoreContentType(true)
+                    .maxBodySize(maxBodyBytes)
+                    .execute();
+            int status = res.statusCode();
+            if (status == 429 || status >= 500) {
+                outcome = HostConcurrencyController.Outcome.overload;
+                retryAfter = HostConcurrencyController.parseRetryAfter(res.header("Retry-After"));
+            }
+            reader.read(res);
+        } catch (SocketTimeoutException e) {
+            outcome = HostConcurrencyController.Outcome.overload;
+            throw e;
+        } finally {
+            hostController.release(host, outcome, System.currentTimeMillis() - start, retryAfter);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The maxUrls budget of a crawl, shared by all workers.
+ * The remaining budget lives in Redis ({crawlId}.urls.budget); a worker leases a block of it with one atomic
+ * script call and hands it out locally, so admitting a url usually costs no Redis call at all. Blocks shrink
+ * as the budget runs low so little is stranded on one worker, and unused leases go back when the crawl stops or
+ * the lease has not been used for crawler.budget.lease-idle-millis (a crawl that just ran dry).
+ * Exactly maxUrls urls are admitted across all nodes.
+ */
+@Component
+public class UrlBudget {
+
+    private static final long BUDGET_GRACE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long EXHAUSTED_RECHECK_MILLIS = 1000;
+
+    // a lease takes at most this share of the remaining budget
+    static final int LOW_BUDGET_SHARE = 8;
+
+    // takes blockFor(block, remaining), see there
+    private static final DefaultRedisScript<Long> LEASE = new DefaultRedisScript<>(
+            "local r = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "if r <= 0 then return 0 end " +
+            "local n = math.min(tonumber(ARGV[1]), math.max(1, math.floor(r / " + LOW_BUDGET_SHARE + ")), r) " +
+            "redis.call('DECRBY', KEYS[1], n) " +
+            "return n", Long.class);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${crawler.budget.lease-size:64}")
+    private int leaseSize;
+
+    @Value("${crawler.budget.lease-idle-millis:300000}")
+    private long leaseIdleMillis;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private static final class Lease {
+        int available;
+        long exhaustedAt;
+        long lastUsedMillis = System.currentTimeMillis();
+        boolean released;
+    }
+
+    public void init(CrawlContext ctx) {
+        String key = budgetKey(ctx.getCrawlId());
+        leases.remove(ctx.getCrawlId());
+        if (ctx.getMaxUrls() <= 0) {
+            redisTemplate.delete(key);
+            return;
+        }
+        long ttl = Math.max(ctx.getMaxTime() - System.currentTimeMillis(), 0) + BUDGET_GRACE_MILLIS;
+        redisTemplate.opsForValue().set(key, String.valueOf(ctx.getMaxUrls()), ttl, TimeUnit.MILLISECONDS);
+    }
+
+    public void delete(String crawlId) {
+        leases.remove(crawlId);
+        redisTemplate.delete(budgetKey(crawlId));
+    }
+
+    /**
+     * Takes one url from the crawl's budget. Always true for crawls without maxUrls.
+     */
+    public boolean tryAcquire(String crawlId, int maxUrls) {
+        if (maxUrls <= 0) return true;
+        Lease lease = leases.computeIfAbsent(crawlId, id -> new Lease());
+        synchronized (lease) {
+            if (lease.released) return false;
+            long now = System.currentTimeMillis();
+            lease.lastUsedMillis = now;
+            if (lease.available == 0) {
+                if (now - lease.exhaustedAt < EXHAUSTED_RECHECK_MILLIS) return false;
+                lease.available = leaseBlock(crawlId);
+                if (lease.available == 0) {
+                    lease.exhaustedAt = now;
+                    return false;
+                }
+            }
+            lease.available--;
+            return true;
+        }
+    }
+
+    /**
+     * Gives the unused part of this worker's lease back to the crawl.
+     */
+    public void release(String crawlId) {
+        Lease lease = leases.remove(crawlId);
+        if (lease == null) return;
+        int unused;
+        synchronized (lease) {
+            unused = lease.available;
+            lease.available = 0;
+            lease.released = true;
+        }
+        if (unused == 0) return;
+        try {
+            String key = budgetKey(crawlId);
+            // the key is gone once the crawl expired or was restarted; don't resurrect it
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(key))) {
+                redisTemplate.opsForValue().increment(key, unused);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed returning " + unused + " leased urls of crawl " + crawlId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives back the leases of crawls this worker has not admitted a url for in a while; most crawls end by running
+     * dry or reaching maxDistance, which no stop event reports.
+     */
+    @Scheduled(fixedDelayString = "${crawler.budget.lease-idle-millis:300000}")
+    public void releaseIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Lease> e : leases.entrySet()) {
+            boolean idle;
+            synchronized (e.getValue()) {
+                idle = e.getValue().lastUsedMillis + leaseIdleMillis < now;
+            }
+            if (idle) release(e.getKey());
+        }
+    }
+
+    /**
+     * Size of the next lease: min(block, remaining / LOW_BUDGET_SHARE) but at least 1, as long as anything remains.
+     * The LEASE script applies the same rule inside Redis.
+     */
+    static long blockFor(long block, long remaining) {
+        if (remaining <= 0) return 0;
+        return Math.min(block, Math.min(Math.max(1, remaining / LOW_BUDGET_SHARE), remaining));
+    }
+
+    private int leaseBlock(String crawlId) {
+        try {
+            Long n = redisTemplate.execute(LEASE, Collections.singletonList(budgetKey(crawlId)), String.valueOf(leaseSize));
+            return n == null ? 0 : n.intValue();
+        } catch (Exception e) {
+            logger.warn("Failed leasing url budget of crawl " + crawlId + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void releaseAll() {
+        for (String crawlId : leases.keySet()) {
+            release(crawlId);
+        }
+    }
+
+    private static String budgetKey(String crawlId) {
+        return crawlId + ".urls.budget";
+    }
+}
@@ -0,0 +1,95 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.UrlState;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Lifecycle of every url of a crawl ({crawlId}.urls.state: url -> "state:distance"),
+ * so a crawl interrupted by a restart can be resumed where it stopped.
+ */
+@Component
+public class UrlStateStore {
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    public static final class Entry {
+        private final UrlState state;
+        private final int distance;
+
+        Entry(UrlState state, int distance) {
+            this.state = state;
+            this.distance = distance;
+        }
+
+        public UrlState getState() {
+            return state;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+
+    public void mark(String crawlId, String url, UrlState state, int distance) {
+        try {
+            redisTemplate.opsForHash().put(stateKey(crawlId), url, state.name() + ":" + distance);
+        } catch (Exception e) {
+            logger.warn("Failed to record state " + state + " for " + url + ": " + e.getMessage());
+        }
+    }
+
+    public Entry get(String crawlId, String url) {
+        try {
+            return parse(redisTemplate.opsForHash().get(stateKey(crawlId), url));
+        } catch (Exception e) {
+            logger.warn("Failed to read state of " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void forEach(String crawlId, BiConsumer<String, Entry> consumer) {
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash()
+                .scan(stateKey(crawlId), ScanOptions.scanOptions().count(1000).build())) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> e = cursor.next();
+                Entry entry = parse(e.getValue());
+                if (entry != null) consumer.accept(e.getKey().toString(), entry);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed scanning url states of crawl " + crawlId + ": " + e.getMessage(), e);
+        }
+    }
+
+    public void delete(String crawlId) {
+        redisTemplate.delete(stateKey(crawlId));
+    }
+
+    private static Entry parse(Object value) {
+        if (value == null) return null;
+        String s = value.toString();
+        int sep = s.indexOf(':');
+        try {
+            UrlState state = UrlState.valueOf(sep < 0 ? s : s.substring(0, sep));
+            int distance = sep < 0 ? 0 : Integer.parseInt(s.substring(sep + 1));
+            return new Entry(state, distance);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String stateKey(String crawlId) {
+        return crawlId + ".urls.state";
+    }
+}
@@ -0,0 +1,77 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.util.Fingerprints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Urls a crawl has seen, as 64-bit fingerprints spread over small Redis hashes ({crawlId}.visited.{shard}).
+ * The shard count is picked from maxUrls so each hash stays around SHARD_TARGET entries, where Redis keeps it in
+ * its compact listpack encoding; an entry then costs about 12 bytes instead of a full url in a set.
+ * Two urls with the same fingerprint would count as one; at 64 bits that is negligible for any crawl size.
+ */
+@Component
+public class VisitedSet {
+
+    private static final int SHARD_TARGET = 100;
+    private static final int MAX_SHARDS = 1 << 16;
+    // for crawls without maxUrls
+    private static final int UNBOUNDED_SHARDS = 1 << 12;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    /**
+     * Marks the url as visited; true if it was not visited before. One HSETNX, so check and mark are atomic.
+     */
+    public boolean add(String crawlId, int maxUrls, String url) {
+        long fp = Fingerprints.url64(url);
+        Boolean added = redisTemplate.opsForHash().putIfAbsent(shardKey(crawlId, shardOf(fp, maxUrls)), field(fp), "");
+        return Boolean.TRUE.equals(added);
+    }
+
+    public List<String> keys(String crawlId, int maxUrls) {
+        int shards = shardsFor(maxUrls);
+        List<String> keys = new ArrayList<>(shards + 1);
+        for (int i = 0; i < shards; i++) keys.add(shardKey(crawlId, i));
+        // the url set used before fingerprints
+        keys.add(crawlId + ".visited");
+        return keys;
+    }
+
+    public void delete(String crawlId, int maxUrls) {
+        redisTemplate.delete(keys(crawlId, maxUrls));
+    }
+
+    static int shardsFor(int maxUrls) {
+        if (maxUrls <= 0) return UNBOUNDED_SHARDS;
+        int needed = maxUrls / SHARD_TARGET + (maxUrls % SHARD_TARGET == 0 ? 0 : 1);
+        int shards = Integer.highestOneBit(Math.max(needed, 1));
+        if (shards < needed) shards <<= 1;
+        return Math.min(shards, MAX_SHARDS);
+    }
+
+    // the high bits pick the shard, see Fingerprints.url64
+    private static int shardOf(long fp, int maxUrls) {
+        int shards = shardsFor(maxUrls);
+        return shards == 1 ? 0 : (int) (fp >>> (64 - Integer.numberOfTrailingZeros(shards)));
+    }
+
+    private static String field(long fp) {
+        byte[] b = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            b[i] = (byte) fp;
+            fp >>>= 8;
+        }
+        return Base64.getEncoder().withoutPadding().encodeToString(b);
+    }
+
+    private static String shardKey(String crawlId, int shard) {
+        return crawlId + ".visited." + shard;
+    }
+}
@@ -0,0 +1,272 @@
+package com.handson.searchengine.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The link graph of one crawl, in primitive arrays only.
+ * Urls are kept as 64-bit fingerprints mapped to dense int ids by an open-addressing table; edges are appended
+ * to a buffer and folded into a CSR adjacency (offsets + targets) on each rank computation. PageRank is
+ * warm-started from the previous ranks, so a crawl that grew a little converges in a few iterations.
+ * Ranks are reported scaled by the node count, so an average page has rank 1.
+ */
+public final class LinkGraph {
+
+    private static final float DAMPING = 0.85f;
+    // a scaled rank change below this is not worth an index update
+    private static final float PUSH_THRESHOLD = 0.1f;
+
+    public static final class Update {
+        private final long fingerprint;
+        private final float pageRank;
+        private final int inlinks;
+
+        Update(long fingerprint, float pageRank, int inlinks) {
+            this.fingerprint = fingerprint;
+            this.pageRank = pageRank;
+            this.inlinks = inlinks;
+        }
+
+        public long getFingerprint() {
+            return fingerprint;
+        }
+
+        public float getPageRank() {
+            return pageRank;
+        }
+
+        public int getInlinks() {
+            return inlinks;
+        }
+    }
+
+    // fingerprint -> id + 1, 0 marks a free slot
+    private long[] slotKeys = new long[1024];
+    private int[] slotIds = new int[1024];
+
+    private int nodes;
+    private long[] fingerprints = new long[256];
+    private int[] inlinks = new int[256];
+    // fetched pages, the only nodes that have a doc in the index
+    private long[] pages = new long[4];
+
+    // CSR over the first csrNodes nodes
+    private int csrNodes;
+    private int[] offsets = {0};
+    private int[] targets = new int[0];
+
+    private int[] newFrom = new int[256];
+    private int[] newTo = new int[256];
+    private int newEdges;
+
+    // scaled ranks from the last computation, and what was last handed out as an update
+    private float[] ranks = new float[0];
+    private float[] pushedRanks = new float[0];
+    private int[] pushedInlinks = new int[0];
+    private boolean dirty;
+
+    /**
+     * Records a fetched page and its outgoing links. A page is only recorded once.
+     */
+    public synchronized void addPage(long page, long[] links) {
+        int from = idOf(page);
+        if (isPage(from)) return;
+        setPage(from);
+        for (long link : links) {
+            int to = idOf(link);
+            if (to == from) continue;
+            if (newEdges == newFrom.length) {
+                newFrom = Arrays.copyOf(newFrom, newEdges * 2);
+                newTo = Arrays.copyOf(newTo, newEdges * 2);
+            }
+            newFrom[newEdges] = from;
+            newTo[newEdges] = to;
+            newEdges++;
+            inlinks[to]++;
+        }
+        dirty = true;
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized int size() {
+        return nodes;
+    }
+
+    public synchronized int edges() {
+        return targets.length + newEdges;
+    }
+
+    /**
+     * Scaled rank from the last computation; 1 (average) for pages not ranked yet.
+     */
+    public synchronized float rankOf(long fingerprint) {
+        int id = find(fingerprint);
+        return id >= 0 && id < ranks.length ? ranks[id] : 1f;
+    }
+
+    public synchronized int inlinksOf(long fingerprint) {
+        int id = find(fingerprint);
+        return id >= 0 ? inlinks[id] : 0;
+    }
+
+    /**
+     * Recomputes PageRank over everything added so far and returns the pages whose rank or inlink count
+     * changed enough to be worth updating in the index.
+     */
+    public List<Update> recompute(int maxIterations, double tolerance) {
+        int n;
+        int[] off;
+        int[] tgt;
+        float[] previous;
+        synchronized (this) {
+            compact();
+            dirty = false;
+            n = nodes;
+            off = offsets;
+            tgt = targets;
+            previous = ranks;
+        }
+        if (n == 0) return new ArrayList<>();
+        // the arrays above are never modified once built, so ranking runs without holding the lock
+        float[] rank = pageRank(n, off, tgt, previous, maxIterations, tolerance);
+
+        List<Update> updates = new ArrayList<>();
+        synchronized (this) {
+            if (pushedRanks.length < n) {
+                pushedRanks = Arrays.copyOf(pushedRanks, n);
+                pushedInlinks = Arrays.copyOf(pushedInlinks, n);
+            }
+            ranks = rank;
+            for (int id = 0; id < n; id++) {
+                if (!isPage(id)) continue;
+                float pushed = pushedRanks[id];
+                if (Math.abs(rank[id] - pushed) > PUSH_THRESHOLD * Math.max(pushed, 1f) || inlinks[id] != pushedInlinks[id]) {
+                    pushedRanks[id] = rank[id];
+                    pushedInlinks[id] = inlinks[id];
+                    updates.add(new Update(fingerprints[id], rank[id], inlinks[id]));
+                }
+            }
+        }
+        return updates;
+    }
+
+    static float[] pageRank(int n, int[] off, int[] tgt, float[] previous, int maxIterations, double tolerance) {
+        float[] r = new float[n];
+        // warm start: previous scaled ranks, 1 for new nodes, back to probabilities
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            r[i] = i < previous.length ? previous[i] : 1f;
+            sum += r[i];
+        }
+        for (int i = 0; i < n; i++) r[i] /= sum;
+
+        float[] next = new float[n];
+        int csrNodes = off.length - 1;
+        for (int iter = 0; iter < maxIterations; iter++) {
+            double dangling = 0;
+            Arrays.fill(next, 0f);
+            for (int j = 0; j < n; j++) {
+                int begin = j < csrNodes ? off[j] : 0;
+                int end = j < csrNodes ? off[j + 1] : 0;
+                if (begin == end) {
+                    dangling += r[j];
+                    continue;
+                }
+                float share = DAMPING * r[j] / (end - begin);
+                for (int k = begin; k < end; k++) next[tgt[k]] += share;
+            }
+            float base = (float) ((1 - DAMPING) / n + DAMPING * dangling / n);
+            double delta = 0;
+            for (int i = 0; i < n; i++) {
+                next[i] += base;
+                delta += Math.abs(next[i] - r[i]);
+            }
+            float[] t = r;
+            r = next;
+            next = t;
+            if (delta < tolerance) break;
+        }
+        for (int i = 0; i < n; i++) r[i] *= n;
+        return r;
+    }
+
+    // folds the new edges into a fresh CSR covering all current nodes
+    private void compact() {
+        if (newEdges == 0 && csrNodes == nodes) return;
+        int[] degree = new int[nodes + 1];
+        for (int j = 0; j < csrNodes; j++) degree[j] = offsets[j + 1] - offsets[j];
+        for (int e = 0; e < newEdges; e++) degree[newFrom[e]]++;
+        int[] off = new int[nodes + 1];
+        for (int j = 0; j < nodes; j++) off[j + 1] = off[j] + degree[j];
+        int[] tgt = new int[off[nodes]];
+        int[] fill = Arrays.copyOf(off, nodes);
+        for (int j = 0; j < csrNodes; j++) {
+            int len = offsets[j + 1] - offsets[j];
+            System.arraycopy(targets, offsets[j], tgt, fill[j], len);
+            fill[j] += len;
+        }
+        for (int e = 0; e < newEdges; e++) tgt[fill[newFrom[e]]++] = newTo[e];
+        offsets = off;
+        targets = tgt;
+        csrNodes = nodes;
+        newEdges = 0;
+        if (newFrom.length > 4096) {
+            newFrom = new int[256];
+            newTo = new int[256];
+        }
+    }
+
+    private int idOf(long fingerprint) {
+        int slot = slotOf(fingerprint);
+        if (slotIds[slot] != 0) return slotIds[slot] - 1;
+        int id = nodes++;
+        if (id == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, id * 2);
+            inlinks = Arrays.copyOf(inlinks, id * 2);
+        }
+        if ((id >>> 6) >= pages.length) pages = Arrays.copyOf(pages, pages.length * 2);
+        fingerprints[id] = fingerprint;
+        slotKeys[slot] = fingerprint;
+        slotIds[slot] = id + 1;
+        // keep the table at most half full
+        if (nodes * 2 > slotKeys.length) rehash();
+        return id;
+    }
+
+    private int find(long fingerprint) {
+        int slot = slotOf(fingerprint);
+        return slotIds[slot] - 1;
+    }
+
+    private int slotOf(long fingerprint) {
+        int mask = slotKeys.length - 1;
+        int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+        while (slotIds[slot] != 0 && slotKeys[slot] != fingerprint) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldKeys = slotKeys;
+        int[] oldIds = slotIds;
+        slotKeys = new long[oldKeys.length * 2];
+        slotIds = new int[oldIds.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldIds[i] == 0) continue;
+            int slot = slotOf(oldKeys[i]);
+            slotKeys[slot] = oldKeys[i];
+            slotIds[slot] = oldIds[i];
+        }
+    }
+
+    private boolean isPage(int id) {
+        return (pages[id >>> 6] & (1L << id)) != 0;
+    }
+
+    private void setPage(int id) {
+        pages[id >>> 6] |= 1L << id;
+    }
+}
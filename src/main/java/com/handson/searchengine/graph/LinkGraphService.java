@@ -0,0 +1,221 @@
+package com.handson.searchengine.graph;
+
+import com.handson.searchengine.crawler.CrawlContextRegistry;
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.util.ElasticSearch;
+import com.handson.searchengine.util.Fingerprints;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranks the pages of each crawl by its link graph, across all workers.
+ * Every worker appends the links of the pages it fetched to the crawl's edge list in Redis ({crawlId}.graph.edges);
+ * one node at a time, elected through a lock in Redis, reads the lists into a LinkGraph per crawl, periodically
+ * re-ranks the graphs that changed and sends the new pageRank / inlinks to the index as partial updates.
+ * A node that takes over as ranker rebuilds the graphs from the start of the lists.
+ */
+@Component
+public class LinkGraphService {
+
+    private static final long EVICT_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final String CRAWLS_KEY = "graph.crawls";
+    private static final String RANKER_KEY = "graph.ranker.lock";
+    private static final int LOAD_BATCH = 1000;
+
+    // takes the lock if it is free, or extends it if this node holds it
+    private static final DefaultRedisScript<Long> HOLD_LOCK = new DefaultRedisScript<>(
+            "local owner = redis.call('GET', KEYS[1]) " +
+            "if owner == ARGV[1] then redis.call('PEXPIRE', KEYS[1], ARGV[2]) return 1 end " +
+            "if owner then return 0 end " +
+            "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2]) " +
+            "return 1", Long.class);
+
+    @Autowired
+    private ElasticSearch elasticSearch;
+
+    @Autowired
+    private CrawlContextRegistry contextRegistry;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Value("${graph.enabled:true}")
+    private boolean enabled;
+
+    @Value("${graph.recompute-millis:30000}")
+    private long recomputeMillis;
+
+    @Value("${graph.max-iterations:20}")
+    private int maxIterations;
+
+    @Value("${graph.tolerance:0.0001}")
+    private double tolerance;
+
+    @Value("${graph.update-batch:500}")
+    private int updateBatch;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final String nodeId = UUID.randomUUID().toString();
+    // only filled on the ranker
+    private final Map<String, LinkGraph> graphs = new ConcurrentHashMap<>();
+    // how much of each crawl's edge list is in its graph
+    private final Map<String, Long> loaded = new HashMap<>();
+
+    public void addPage(String crawlId, String url, List<String> links) {
+        if (!enabled) return;
+        long[] targets = new long[links.size()];
+        for (int i = 0; i < targets.length; i++) targets[i] = Fingerprints.url64(links.get(i));
+        String record = encode(Fingerprints.url64(url), targets);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.rPush(edgesKey(crawlId).getBytes(StandardCharsets.UTF_8), record.getBytes(StandardCharsets.US_ASCII));
+                connection.sAdd(CRAWLS_KEY.getBytes(StandardCharsets.UTF_8), crawlId.getBytes(StandardCharsets.UTF_8));
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Failed recording links of " + url + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Scaled rank of the page as last computed; 1 (average) on nodes other than the ranker, which pushes the real
+     * rank to the index on its next run.
+     */
+    public float rankOf(String crawlId, String url) {
+        LinkGraph graph = graphs.get(crawlId);
+        return graph == null ? 1f : graph.rankOf(Fingerprints.url64(url));
+    }
+
+    public int inlinksOf(String crawlId, String url) {
+        LinkGraph graph = graphs.get(crawlId);
+        return graph == null ? 0 : graph.inlinksOf(Fingerprints.url64(url));
+    }
+
+    @Scheduled(fixedDelayString = "${graph.recompute-millis:30000}")
+    public synchronized void recompute() {
+        if (!enabled) return;
+        if (!holdRankerLock()) {
+            if (!graphs.isEmpty()) logger.info("No longer ranking, dropping " + graphs.size() + " link graphs");
+            graphs.clear();
+            loaded.clear();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<Object> crawlIds = redisTemplate.opsForSet().members(CRAWLS_KEY);
+        if (crawlIds == null) return;
+        for (Object o : crawlIds) {
+            String crawlId = o.toString();
+            try {
+                CrawlContext ctx = contextRegistry.get(crawlId);
+                if (ctx == null || ctx.getMaxTime() + EVICT_GRACE_MILLIS < now) {
+                    redisTemplate.opsForSet().remove(CRAWLS_KEY, crawlId);
+                    graphs.remove(crawlId);
+                    loaded.remove(crawlId);
+                    continue;
+                }
+                LinkGraph graph = graphs.computeIfAbsent(crawlId, id -> new LinkGraph());
+                load(crawlId, graph);
+                if (graph.isDirty()) {
+                    long start = System.currentTimeMillis();
+                    List<LinkGraph.Update> updates = graph.recompute(maxIterations, tolerance);
+                    logger.info("Ranked crawl " + crawlId + ": " + graph.size() + " urls, " + graph.edges() + " links, "
+                            + updates.size() + " updates in " + (System.currentTimeMillis() - start) + "ms");
+                    push(crawlId, updates);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed ranking crawl " + crawlId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean holdRankerLock() {
+        try {
+            Long held = redisTemplate.execute(HOLD_LOCK, Collections.singletonList(RANKER_KEY), nodeId, String.valueOf(recomputeMillis * 3));
+            return held != null && held == 1;
+        } catch (Exception e) {
+            logger.warn("Failed checking the ranker lock: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // reads the edges appended since the last run into the graph
+    private void load(String crawlId, LinkGraph graph) {
+        long offset = loaded.getOrDefault(crawlId, 0L);
+        while (true) {
+            List<Object> records = redisTemplate.opsForList().range(edgesKey(crawlId), offset, offset + LOAD_BATCH - 1);
+            if (records == null || records.isEmpty()) break;
+            for (Object r : records) {
+                long[] page = decode(r.toString());
+                if (page != null) graph.addPage(page[0], Arrays.copyOfRange(page, 1, page.length));
+            }
+            offset += records.size();
+            if (records.size() < LOAD_BATCH) break;
+        }
+        loaded.put(crawlId, offset);
+    }
+
+    private void push(String crawlId, List<LinkGraph.Update> updates) {
+        Map<String, Map<String, Object>> batch = new LinkedHashMap<>();
+        for (LinkGraph.Update u : updates) {
+            Map<String, Object> partial = new HashMap<>();
+            partial.put("pageRank", u.getPageRank());
+            partial.put("inlinks", u.getInlinks());
+            batch.put(ElasticSearch.docId(crawlId, u.getFingerprint()), partial);
+            if (batch.size() >= updateBatch) {
+                send(crawlId, batch);
+                batch = new LinkedHashMap<>();
+            }
+        }
+        if (!batch.isEmpty()) send(crawlId, batch);
+    }
+
+    private void send(String crawlId, Map<String, Map<String, Object>> batch) {
+        try {
+            // pages still in the indexer's queue have no doc yet; they get the next update of their rank or inlinks
+            elasticSearch.bulkUpdate(crawlId, batch);
+        } catch (Exception e) {
+            logger.warn("Failed updating ranks of crawl " + crawlId + ": " + e.getMessage());
+        }
+    }
+
+    public static String edgesKey(String crawlId) {
+        return crawlId + ".graph.edges";
+    }
+
+    // the page and its links as big-endian fingerprints, base64 for the String serializer
+    static String encode(long page, long[] links) {
+        ByteBuffer buf = ByteBuffer.allocate(8 * (links.length + 1));
+        buf.putLong(page);
+        for (long link : links) buf.putLong(link);
+        return Base64.getEncoder().withoutPadding().encodeToString(buf.array());
+    }
+
+    // the page followed by its links; null if unreadable
+    static long[] decode(String record) {
+        byte[] b;
+        try {
+            b = Base64.getDecoder().decode(record);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (b.length == 0 || b.length % 8 != 0) return null;
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        long[] res = new long[b.length / 8];
+        for (int i = 0; i < res.length; i++) res[i] = buf.getLong();
+        return res;
+    }
+}
@@ -1,34 +1,63 @@
 package com.handson.searchengine.kafka;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.handson.searchengine.crawler.Crawler;
+import com.handson.searchengine.crawler.CrawlContextRegistry;
+import com.handson.searchengine.crawler.CrawlScheduler;
+import com.handson.searchengine.model.CrawlContext;
 import com.handson.searchengine.model.CrawlerRecord;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
-import java.util.Optional;
 
 import static com.handson.searchengine.kafka.Producer.APP_TOPIC;
 
+// eager even with lazy initialization (worker profile): the listener, and everything it needs, starts with the app
 @Component
+@Lazy(false)
 public class Consumer {
 
     @Autowired
     ObjectMapper om;
 
     @Autowired
-    Crawler crawler;
-
-    @KafkaListener(topics = {APP_TOPIC}, concurrency = "5")
-    public void listen(ConsumerRecord<?, ?> record) throws IOException, InterruptedException {
-        Optional<?> kafkaMessage = Optional.ofNullable(record.value());
-        if (kafkaMessage.isPresent()) {
-            Object message = kafkaMessage.get();
-            CrawlerRecord rec = om.readValue(message.toString(), CrawlerRecord.class);
-            crawler.crawlOneRecord(rec.getCrawlId(), rec);
+    CrawlScheduler scheduler;
+
+    @Autowired
+    CrawlContextRegistry contextRegistry;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    @KafkaListener(topics = {APP_TOPIC}, concurrency = "5", autoStartup = "${crawler.consumer.auto-startup:true}")
+    public void listen(ConsumerRecord<String, byte[]> record) throws IOException, InterruptedException {
+        byte[] value = record.value();
+        if (value == null) return;
+        CrawlerRecord rec = FrontierCodec.isFrontier(value) ? decodeFrontier(value) : decodeLegacy(value);
+        if (rec != null) {
+            scheduler.submit(rec);
         }
     }
-}
\ No newline at end of file
+
+    private CrawlerRecord decodeFrontier(byte[] value) {
+        FrontierCodec.Message msg = FrontierCodec.decode(value);
+        CrawlContext ctx = contextRegistry.get(msg.getCrawlId());
+        if (ctx == null) {
+            logger.warn("Dropping frontier record for unknown crawl " + msg.getCrawlId() + ": " + msg.getUrl());
+            return null;
+        }
+        return CrawlerRecord.of(ctx, msg.getUrl(), msg.getDistance(), msg.getAttempt());
+    }
+
+    // records produced before the binary format was introduced (JSON, possibly wrapped in a JSON string)
+    private CrawlerRecord decodeLegacy(byte[] value) throws IOException {
+        JsonNode node = om.readTree(value);
+        if (node.isTextual()) node = om.readTree(node.asText());
+        return om.treeToValue(node, CrawlerRecord.class);
+    }
+}
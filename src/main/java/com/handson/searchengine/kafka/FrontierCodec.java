@@ -0,0 +1,110 @@
+package com.handson.searchengine.kafka;
+
+import com.handson.searchengine.model.CrawlerRecord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary wire format for frontier messages.
+ * Only what changes per link travels on the topic; the rest lives in CrawlContextRegistry.
+ *
+ * <pre>
+ * [magic:1][version:1][crawlIdLen:1][crawlId:ascii][distance:varint]([attempt:varint] since v2)[url:utf8 ...]
+ * </pre>
+ */
+public final class FrontierCodec {
+
+    static final byte MAGIC = (byte) 0xF7;
+    static final byte VERSION_1 = 1;
+    static final byte VERSION = 2;
+
+    private FrontierCodec() {
+    }
+
+    public static final class Message {
+        private final String crawlId;
+        private final int distance;
+        private final int attempt;
+        private final String url;
+
+        Message(String crawlId, int distance, int attempt, String url) {
+            this.crawlId = crawlId;
+            this.distance = distance;
+            this.attempt = attempt;
+            this.url = url;
+        }
+
+        public String getCrawlId() {
+            return crawlId;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+    }
+
+    public static byte[] encode(CrawlerRecord rec) {
+        return encode(rec.getCrawlId(), rec.getDistance(), rec.getAttempt(), rec.getUrl());
+    }
+
+    public static byte[] encode(String crawlId, int distance, int attempt, String url) {
+        byte[] id = crawlId.getBytes(StandardCharsets.US_ASCII);
+        if (id.length > 255) throw new IllegalArgumentException("crawlId too long: " + crawlId);
+        byte[] u = url.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(3 + id.length + 10 + u.length);
+        buf.put(MAGIC).put(VERSION).put((byte) id.length).put(id);
+        putVarInt(buf, distance);
+        putVarInt(buf, attempt);
+        buf.put(u);
+        byte[] res = new byte[buf.position()];
+        buf.flip();
+        buf.get(res);
+        return res;
+    }
+
+    public static boolean isFrontier(byte[] data) {
+        return data != null && data.length >= 3 && data[0] == MAGIC;
+    }
+
+    public static Message decode(byte[] data) {
+        if (!isFrontier(data)) throw new IllegalArgumentException("Not a frontier message");
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.get();
+        byte version = buf.get();
+        if (version != VERSION && version != VERSION_1) throw new IllegalArgumentException("Unsupported frontier version: " + version);
+        int idLen = buf.get() & 0xFF;
+        String crawlId = new String(data, buf.position(), idLen, StandardCharsets.US_ASCII);
+        buf.position(buf.position() + idLen);
+        int distance = getVarInt(buf);
+        int attempt = version >= VERSION ? getVarInt(buf) : 0;
+        String url = new String(data, buf.position(), buf.remaining(), StandardCharsets.UTF_8);
+        return new Message(crawlId, distance, attempt, url);
+    }
+
+    private static void putVarInt(ByteBuffer buf, int v) {
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    private static int getVarInt(ByteBuffer buf) {
+        int res = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buf.get();
+            res |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return res;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
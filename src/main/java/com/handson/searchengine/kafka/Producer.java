@@ -2,6 +2,8 @@ package com.handson.searchengine.kafka;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.model.CrawlerRecord;
+import com.handson.searchengine.model.DeadLetter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Component;
@@ -11,14 +13,24 @@ import org.springframework.stereotype.Component;
 public class Producer {
 
     public static final String APP_TOPIC = "searchengine";
+    public static final String DEAD_LETTER_TOPIC = "searchengine.dlt";
     @Autowired
     ObjectMapper om;
 
     @Autowired
-    private KafkaTemplate kafkaTemplate;
+    private KafkaTemplate<String, byte[]> kafkaTemplate;
 
     public void send(Object message) throws JsonProcessingException {
-        kafkaTemplate.send(APP_TOPIC, om.writeValueAsString(message));
+        kafkaTemplate.send(APP_TOPIC, om.writeValueAsBytes(message));
+    }
+
+    // frontier records go out in the compact binary format, crawl parameters are in CrawlContextRegistry
+    public void sendFrontier(CrawlerRecord rec) {
+        kafkaTemplate.send(APP_TOPIC, FrontierCodec.encode(rec));
+    }
+
+    public void sendDeadLetter(DeadLetter deadLetter) throws JsonProcessingException {
+        kafkaTemplate.send(DEAD_LETTER_TOPIC, deadLetter.getCrawlId(), om.writeValueAsBytes(deadLetter));
     }
 
 }
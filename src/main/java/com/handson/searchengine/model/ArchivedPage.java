@@ -0,0 +1,67 @@
+package com.handson.searchengine.model;
+
+public class ArchivedPage {
+    private String crawlId;
+    private String url;
+    private String baseUrl;
+    private int level;
+    private long urlHash;
+    private long fetchTime;
+    private String contentType;
+    private String content;
+
+    public static ArchivedPage of(String crawlId, String url, String baseUrl, int level, long urlHash, long fetchTime, String contentType, String content) {
+        ArchivedPage res = new ArchivedPage();
+        res.crawlId = crawlId;
+        res.url = url;
+        res.baseUrl = baseUrl;
+        res.level = level;
+        res.urlHash = urlHash;
+        res.fetchTime = fetchTime;
+        res.contentType = contentType;
+        res.content = content;
+        return res;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public long getUrlHash() {
+        return urlHash;
+    }
+
+    public long getFetchTime() {
+        return fetchTime;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchivedPage{" +
+                "crawlId='" + crawlId + '\'' +
+                ", url='" + url + '\'' +
+                ", fetchTime=" + fetchTime +
+                ", contentType='" + contentType + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,162 @@
+package com.handson.searchengine.model;
+
+import java.util.*;
+
+/**
+ * Per-crawl parameters that never change while a crawl runs.
+ * Stored once per crawl (see CrawlContextRegistry) instead of being repeated on every frontier message.
+ */
+public class CrawlContext {
+    private String crawlId;
+    private String baseUrl;
+    private long startTime;
+    private long maxTime;
+    private int maxDistance;
+    private int maxUrls;
+    private int weight = 1;
+    private int maxConcurrency;
+    private long maxBytesPerSecond;
+    private boolean includeSubdomains;
+    private List<String> hosts = Collections.emptyList();
+    private List<String> include = Collections.emptyList();
+    private List<String> exclude = Collections.emptyList();
+    private int maxQueryVariants;
+
+    public static CrawlContext of(String crawlId, CrawlerRequest r) {
+        long startTime = System.currentTimeMillis();
+        CrawlContext res = new CrawlContext();
+        res.crawlId = crawlId;
+        res.baseUrl = r.getUrl();
+        res.startTime = startTime;
+        res.maxTime = startTime + 1000L * r.getMaxSeconds();
+        res.maxDistance = r.getMaxDistance();
+        res.maxUrls = r.getMaxUrls();
+        res.weight = Math.max(1, r.getWeight());
+        res.maxConcurrency = Math.max(0, r.getMaxConcurrency());
+        res.maxBytesPerSecond = Math.max(0, r.getMaxBytesPerSecond());
+        res.includeSubdomains = r.isIncludeSubdomains();
+        res.hosts = nonEmpty(r.getHosts());
+        res.include = nonEmpty(r.getInclude());
+        res.exclude = nonEmpty(r.getExclude());
+        res.maxQueryVariants = Math.max(0, r.getMaxQueryVariants());
+        return res;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> res = new HashMap<>();
+        res.put("crawlId", crawlId);
+        res.put("baseUrl", baseUrl);
+        res.put("startTime", String.valueOf(startTime));
+        res.put("maxTime", String.valueOf(maxTime));
+        res.put("maxDistance", String.valueOf(maxDistance));
+        res.put("maxUrls", String.valueOf(maxUrls));
+        res.put("weight", String.valueOf(weight));
+        res.put("maxConcurrency", String.valueOf(maxConcurrency));
+        res.put("maxBytesPerSecond", String.valueOf(maxBytesPerSecond));
+        res.put("includeSubdomains", String.valueOf(includeSubdomains));
+        res.put("hosts", String.join("\n", hosts));
+        res.put("include", String.join("\n", include));
+        res.put("exclude", String.join("\n", exclude));
+        res.put("maxQueryVariants", String.valueOf(maxQueryVariants));
+        return res;
+    }
+
+    public static CrawlContext fromMap(Map<?, ?> m) {
+        if (m == null || m.isEmpty() || m.get("crawlId") == null) return null;
+        CrawlContext res = new CrawlContext();
+        res.crawlId = m.get("crawlId").toString();
+        res.baseUrl = m.get("baseUrl") != null ? m.get("baseUrl").toString() : null;
+        res.startTime = parseLong(m.get("startTime"));
+        res.maxTime = parseLong(m.get("maxTime"));
+        res.maxDistance = (int) parseLong(m.get("maxDistance"));
+        res.maxUrls = (int) parseLong(m.get("maxUrls"));
+        res.weight = Math.max(1, (int) parseLong(m.get("weight")));
+        res.maxConcurrency = (int) parseLong(m.get("maxConcurrency"));
+        res.maxBytesPerSecond = parseLong(m.get("maxBytesPerSecond"));
+        res.includeSubdomains = m.get("includeSubdomains") != null && Boolean.parseBoolean(m.get("includeSubdomains").toString());
+        res.hosts = parseList(m.get("hosts"));
+        res.include = parseList(m.get("include"));
+        res.exclude = parseList(m.get("exclude"));
+        res.maxQueryVariants = (int) parseLong(m.get("maxQueryVariants"));
+        return res;
+    }
+
+    // rules are single-line strings, stored newline separated
+    private static List<String> parseList(Object o) {
+        return o == null ? Collections.emptyList() : nonEmpty(Arrays.asList(o.toString().split("\n")));
+    }
+
+    private static List<String> nonEmpty(List<String> values) {
+        if (values == null) return Collections.emptyList();
+        List<String> res = new ArrayList<>();
+        for (String v : values) {
+            if (v != null && !v.trim().isEmpty()) res.add(v.trim());
+        }
+        return res;
+    }
+
+    private static long parseLong(Object o) {
+        if (o == null) return 0;
+        try {
+            return Long.parseLong(o.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    public int getMaxUrls() {
+        return maxUrls;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    public boolean isIncludeSubdomains() {
+        return includeSubdomains;
+    }
+
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public List<String> getInclude() {
+        return include;
+    }
+
+    public List<String> getExclude() {
+        return exclude;
+    }
+
+    public int getMaxQueryVariants() {
+        return maxQueryVariants;
+    }
+}
@@ -0,0 +1,41 @@
+package com.handson.searchengine.model;
+
+public class CrawlSubmission {
+
+    public enum Status {
+        started,
+        // waiting in the pending queue for a free slot
+        pending,
+        rejected
+    }
+
+    private String crawlId;
+    private Status status;
+    private long retryAfterSeconds;
+    private String message;
+
+    public static CrawlSubmission of(String crawlId, Status status, long retryAfterSeconds, String message) {
+        CrawlSubmission res = new CrawlSubmission();
+        res.crawlId = crawlId;
+        res.status = status;
+        res.retryAfterSeconds = retryAfterSeconds;
+        res.message = message;
+        return res;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -9,6 +9,7 @@ public class CrawlerRecord {
     long startTime;
     long maxTime;
     int maxUrls;
+    int attempt;
 
     // משתמשים בגטרים של CrawlerRequest במקום גישה לשדות פרטיים
     public static CrawlerRecord of(CrawlerRequest r) {
@@ -34,6 +35,25 @@ public class CrawlerRecord {
         res.startTime = r.startTime;
         res.maxDistance = r.maxDistance;
         res.maxUrls = r.maxUrls;
+        res.attempt = r.attempt;
+        return res;
+    }
+
+    public static CrawlerRecord of(CrawlContext ctx, String url, int distance) {
+        return of(ctx, url, distance, 0);
+    }
+
+    public static CrawlerRecord of(CrawlContext ctx, String url, int distance, int attempt) {
+        CrawlerRecord res = new CrawlerRecord();
+        res.crawlId = ctx.getCrawlId();
+        res.baseUrl = ctx.getBaseUrl();
+        res.url = url;
+        res.distance = distance;
+        res.startTime = ctx.getStartTime();
+        res.maxTime = ctx.getMaxTime();
+        res.maxDistance = ctx.getMaxDistance();
+        res.maxUrls = ctx.getMaxUrls();
+        res.attempt = attempt;
         return res;
     }
 
@@ -52,6 +72,11 @@ public class CrawlerRecord {
         return this;
     }
 
+    public CrawlerRecord withAttempt(int attempt) {
+        this.attempt = attempt;
+        return this;
+    }
+
     public String getCrawlId() {
         return crawlId;
     }
@@ -83,4 +108,8 @@ public class CrawlerRecord {
     public int getMaxUrls() {
         return maxUrls;
     }
+
+    public int getAttempt() {
+        return attempt;
+    }
 }
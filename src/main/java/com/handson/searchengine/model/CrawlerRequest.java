@@ -1,10 +1,25 @@
 package com.handson.searchengine.model;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class CrawlerRequest {
     private String url;
     private int maxDistance;
     private int maxSeconds;
     private int maxUrls;
+    // fair scheduling across crawls: share of the workers, and optional per-crawl quotas (0 = no limit)
+    private int weight = 1;
+    private int maxConcurrency;
+    private long maxBytesPerSecond;
+    // scope beyond the seed prefix: subdomains of the seed host, extra hosts ("*.example.com" for any subdomain),
+    // and substrings of path?query a link must (include) or must not (exclude) contain
+    private boolean includeSubdomains;
+    private List<String> hosts = new ArrayList<>();
+    private List<String> include = new ArrayList<>();
+    private List<String> exclude = new ArrayList<>();
+    // distinct query strings crawled per path (0 = default)
+    private int maxQueryVariants;
 
     public CrawlerRequest() {}
 
@@ -12,9 +27,25 @@ public class CrawlerRequest {
     public int getMaxDistance() { return maxDistance; }
     public int getMaxSeconds() { return maxSeconds; }
     public int getMaxUrls() { return maxUrls; }
+    public int getWeight() { return weight; }
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public long getMaxBytesPerSecond() { return maxBytesPerSecond; }
+    public boolean isIncludeSubdomains() { return includeSubdomains; }
+    public List<String> getHosts() { return hosts; }
+    public List<String> getInclude() { return include; }
+    public List<String> getExclude() { return exclude; }
+    public int getMaxQueryVariants() { return maxQueryVariants; }
 
     public void setUrl(String url) { this.url = url; }
     public void setMaxDistance(int maxDistance) { this.maxDistance = maxDistance; }
     public void setMaxSeconds(int maxSeconds) { this.maxSeconds = maxSeconds; }
     public void setMaxUrls(int maxUrls) { this.maxUrls = maxUrls; }
+    public void setWeight(int weight) { this.weight = weight; }
+    public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) { this.maxBytesPerSecond = maxBytesPerSecond; }
+    public void setIncludeSubdomains(boolean includeSubdomains) { this.includeSubdomains = includeSubdomains; }
+    public void setHosts(List<String> hosts) { this.hosts = hosts != null ? hosts : new ArrayList<>(); }
+    public void setInclude(List<String> include) { this.include = include != null ? include : new ArrayList<>(); }
+    public void setExclude(List<String> exclude) { this.exclude = exclude != null ? exclude : new ArrayList<>(); }
+    public void setMaxQueryVariants(int maxQueryVariants) { this.maxQueryVariants = maxQueryVariants; }
 }
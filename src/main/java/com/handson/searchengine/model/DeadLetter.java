@@ -0,0 +1,31 @@
+package com.handson.searchengine.model;
+
+public class DeadLetter {
+    private String crawlId;
+    private String url;
+    private int distance;
+    private int attempts;
+    private FetchError error;
+    private String errorMessage;
+    private long failedAtMillis;
+
+    public static DeadLetter of(CrawlerRecord rec, FetchError error, String errorMessage) {
+        DeadLetter res = new DeadLetter();
+        res.crawlId = rec.getCrawlId();
+        res.url = rec.getUrl();
+        res.distance = rec.getDistance();
+        res.attempts = rec.getAttempt() + 1;
+        res.error = error;
+        res.errorMessage = errorMessage;
+        res.failedAtMillis = System.currentTimeMillis();
+        return res;
+    }
+
+    public String getCrawlId() { return crawlId; }
+    public String getUrl() { return url; }
+    public int getDistance() { return distance; }
+    public int getAttempts() { return attempts; }
+    public FetchError getError() { return error; }
+    public String getErrorMessage() { return errorMessage; }
+    public long getFailedAtMillis() { return failedAtMillis; }
+}
@@ -0,0 +1,13 @@
+package com.handson.searchengine.model;
+
+public enum FetchError {
+    timeout,
+    throttled,
+    serverError,
+    clientError,
+    connection,
+    hostBusy,
+    // content type or size we don't index; rejected from the headers
+    unwanted,
+    unknown
+}
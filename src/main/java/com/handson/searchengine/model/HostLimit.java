@@ -0,0 +1,28 @@
+package com.handson.searchengine.model;
+
+public class HostLimit {
+    private String host;
+    private double limit;
+    private int inFlight;
+    private long latencyMillis;
+    private long timeoutMillis;
+    private long blockedUntilMillis;
+
+    public static HostLimit of(String host, double limit, int inFlight, long latencyMillis, long timeoutMillis, long blockedUntilMillis) {
+        HostLimit res = new HostLimit();
+        res.host = host;
+        res.limit = limit;
+        res.inFlight = inFlight;
+        res.latencyMillis = latencyMillis;
+        res.timeoutMillis = timeoutMillis;
+        res.blockedUntilMillis = blockedUntilMillis;
+        return res;
+    }
+
+    public String getHost() { return host; }
+    public double getLimit() { return limit; }
+    public int getInFlight() { return inFlight; }
+    public long getLatencyMillis() { return latencyMillis; }
+    public long getTimeoutMillis() { return timeoutMillis; }
+    public long getBlockedUntilMillis() { return blockedUntilMillis; }
+}
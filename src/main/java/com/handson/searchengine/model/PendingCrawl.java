@@ -0,0 +1,36 @@
+package com.handson.searchengine.model;
+
+/**
+ * A submitted crawl waiting for a free slot, as kept in the crawls.pending list.
+ */
+public class PendingCrawl {
+    private String crawlId;
+    private String clientId;
+    private long submittedAt;
+    private CrawlerRequest request;
+
+    public static PendingCrawl of(String crawlId, String clientId, CrawlerRequest request) {
+        PendingCrawl res = new PendingCrawl();
+        res.crawlId = crawlId;
+        res.clientId = clientId;
+        res.submittedAt = System.currentTimeMillis();
+        res.request = request;
+        return res;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public CrawlerRequest getRequest() {
+        return request;
+    }
+}
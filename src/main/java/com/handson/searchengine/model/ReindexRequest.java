@@ -0,0 +1,31 @@
+package com.handson.searchengine.model;
+
+import java.util.List;
+
+public class ReindexRequest {
+    public static final String SOURCE_ARCHIVE = "archive";
+    public static final String SOURCE_INDEX = "index";
+
+    private String source = SOURCE_ARCHIVE;
+    private List<String> crawlIds;
+    private String sourceIndex;
+    private int batchSize = 500;
+    private int parallelism;
+    private int maxFailedDocs;
+
+    public ReindexRequest() {}
+
+    public String getSource() { return source; }
+    public List<String> getCrawlIds() { return crawlIds; }
+    public String getSourceIndex() { return sourceIndex; }
+    public int getBatchSize() { return batchSize; }
+    public int getParallelism() { return parallelism; }
+    public int getMaxFailedDocs() { return maxFailedDocs; }
+
+    public void setSource(String source) { this.source = source; }
+    public void setCrawlIds(List<String> crawlIds) { this.crawlIds = crawlIds; }
+    public void setSourceIndex(String sourceIndex) { this.sourceIndex = sourceIndex; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+    public void setParallelism(int parallelism) { this.parallelism = parallelism; }
+    public void setMaxFailedDocs(int maxFailedDocs) { this.maxFailedDocs = maxFailedDocs; }
+}
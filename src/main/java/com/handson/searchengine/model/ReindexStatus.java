@@ -0,0 +1,55 @@
+package com.handson.searchengine.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.Set;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReindexStatus {
+    public enum State {
+        running,
+        completed,
+        failed
+    }
+
+    private String jobId;
+    private State state;
+    private String source;
+    private String targetIndex;
+    private long read;
+    private long indexed;
+    private long failed;
+    private long startTimeMillis;
+    private long endTimeMillis;
+    private Set<String> previousIndices;
+    private String errorMessage;
+
+    public static ReindexStatus of(String jobId, State state, String source, String targetIndex, long read, long indexed, long failed,
+                                   long startTimeMillis, long endTimeMillis, Set<String> previousIndices, String errorMessage) {
+        ReindexStatus res = new ReindexStatus();
+        res.jobId = jobId;
+        res.state = state;
+        res.source = source;
+        res.targetIndex = targetIndex;
+        res.read = read;
+        res.indexed = indexed;
+        res.failed = failed;
+        res.startTimeMillis = startTimeMillis;
+        res.endTimeMillis = endTimeMillis;
+        res.previousIndices = previousIndices;
+        res.errorMessage = errorMessage;
+        return res;
+    }
+
+    public String getJobId() { return jobId; }
+    public State getState() { return state; }
+    public String getSource() { return source; }
+    public String getTargetIndex() { return targetIndex; }
+    public long getRead() { return read; }
+    public long getIndexed() { return indexed; }
+    public long getFailed() { return failed; }
+    public long getStartTimeMillis() { return startTimeMillis; }
+    public long getEndTimeMillis() { return endTimeMillis; }
+    public Set<String> getPreviousIndices() { return previousIndices; }
+    public String getErrorMessage() { return errorMessage; }
+}
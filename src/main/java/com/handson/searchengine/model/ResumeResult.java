@@ -0,0 +1,22 @@
+package com.handson.searchengine.model;
+
+public class ResumeResult {
+    private String crawlId;
+    private int requeued;
+    private int reindexed;
+    private int done;
+
+    public static ResumeResult of(String crawlId, int requeued, int reindexed, int done) {
+        ResumeResult res = new ResumeResult();
+        res.crawlId = crawlId;
+        res.requeued = requeued;
+        res.reindexed = reindexed;
+        res.done = done;
+        return res;
+    }
+
+    public String getCrawlId() { return crawlId; }
+    public int getRequeued() { return requeued; }
+    public int getReindexed() { return reindexed; }
+    public int getDone() { return done; }
+}
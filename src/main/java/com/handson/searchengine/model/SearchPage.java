@@ -0,0 +1,28 @@
+package com.handson.searchengine.model;
+
+import java.util.List;
+
+/**
+ * One page of a search and the cursor of the page after it, null on the last page.
+ */
+public class SearchPage {
+    private final List<SearchResultDto> results;
+    private final String nextCursor;
+
+    private SearchPage(List<SearchResultDto> results, String nextCursor) {
+        this.results = results;
+        this.nextCursor = nextCursor;
+    }
+
+    public static SearchPage of(List<SearchResultDto> results, String nextCursor) {
+        return new SearchPage(results, nextCursor);
+    }
+
+    public List<SearchResultDto> getResults() {
+        return results;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,44 @@
+package com.handson.searchengine.model;
+
+/**
+ * One query of a batch search.
+ */
+public class SearchQuery {
+    private String query;
+    private int size = 10;
+    private int offset = 0;
+    // optional, limits the query to one crawl
+    private String crawlId;
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public void setOffset(int offset) {
+        this.offset = offset;
+    }
+
+    public String getCrawlId() {
+        return crawlId;
+    }
+
+    public void setCrawlId(String crawlId) {
+        this.crawlId = crawlId;
+    }
+}
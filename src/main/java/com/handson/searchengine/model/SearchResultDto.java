@@ -2,6 +2,7 @@ package com.handson.searchengine.model;
 
 public class SearchResultDto {
     private String url;
+    private String title;
     private String snippet;
 
     public SearchResultDto() {}
@@ -11,10 +12,20 @@ public class SearchResultDto {
         this.snippet = snippet;
     }
 
+    public SearchResultDto(String url, String title, String snippet) {
+        this.url = url;
+        this.title = title;
+        this.snippet = snippet;
+    }
+
     public String getUrl() {
         return url;
     }
 
+    public String getTitle() {
+        return title;
+    }
+
     public String getSnippet() {
         return snippet;
     }
@@ -23,6 +34,10 @@ public class SearchResultDto {
         this.url = url;
     }
 
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
     public void setSnippet(String snippet) {
         this.snippet = snippet;
     }
@@ -0,0 +1,39 @@
+package com.handson.searchengine.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of one query of a batch search; a failed query has an error and no results, the others are unaffected.
+ */
+public class SearchResults {
+    private List<SearchResultDto> results;
+    private long total;
+    private String error;
+
+    public static SearchResults of(List<SearchResultDto> results, long total) {
+        SearchResults res = new SearchResults();
+        res.results = results;
+        res.total = total;
+        return res;
+    }
+
+    public static SearchResults failed(String error) {
+        SearchResults res = new SearchResults();
+        res.results = Collections.emptyList();
+        res.error = error;
+        return res;
+    }
+
+    public List<SearchResultDto> getResults() {
+        return results;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,19 @@
+package com.handson.searchengine.model;
+
+public class Suggestion {
+    private String text;
+    private long count;
+
+    public Suggestion() {}
+
+    public Suggestion(String text, long count) {
+        this.text = text;
+        this.count = count;
+    }
+
+    public String getText() { return text; }
+    public long getCount() { return count; }
+
+    public void setText(String text) { this.text = text; }
+    public void setCount(long count) { this.count = count; }
+}
@@ -0,0 +1,40 @@
+package com.handson.searchengine.model;
+
+/**
+ * One step of a crawl as kept by CrawlTrace. Fields that do not apply to the step are 0 or null:
+ * bytes for fetchEnd, links for linksQueued (new urls queued), millis for fetchEnd/fetchFailed, detail for the rest
+ * (where the page came from, why it failed or was skipped). seq numbers the crawl's events in the order they reached
+ * its journal in Redis, across all nodes.
+ */
+public class TraceEvent {
+    private long seq;
+    private long timeMillis;
+    private TraceEventType type;
+    private String url;
+    private long bytes;
+    private int links;
+    private long millis;
+    private String detail;
+
+    public static TraceEvent of(long seq, long timeMillis, TraceEventType type, String url, long bytes, int links, long millis, String detail) {
+        TraceEvent res = new TraceEvent();
+        res.seq = seq;
+        res.timeMillis = timeMillis;
+        res.type = type;
+        res.url = url;
+        res.bytes = bytes;
+        res.links = links;
+        res.millis = millis;
+        res.detail = detail;
+        return res;
+    }
+
+    public long getSeq() { return seq; }
+    public long getTimeMillis() { return timeMillis; }
+    public TraceEventType getType() { return type; }
+    public String getUrl() { return url; }
+    public long getBytes() { return bytes; }
+    public int getLinks() { return links; }
+    public long getMillis() { return millis; }
+    public String getDetail() { return detail; }
+}
@@ -0,0 +1,14 @@
+package com.handson.searchengine.model;
+
+public enum TraceEventType {
+    crawlStarted,
+    crawlStopped,
+    fetchStart,
+    fetchEnd,
+    fetchFailed,
+    skipped,
+    linksQueued,
+    indexed,
+    spooled,
+    indexFailed
+}
@@ -9,6 +9,16 @@ public class UrlSearchDoc {
     private int level;
     private String crawlId;
     private String contentType; // הפרמטר הנוסף (לפי החתימה אצלך)
+    // link signals from the crawl's link graph; rank 1 is an average page
+    private float pageRank = 1f;
+    private int inlinks;
+    // short fields extracted at crawl time, so search ranks and highlights on them rather than on the whole content
+    private String title;
+    private String description;
+    private String headings;
+    private String snippet;
+    // when the doc was last written by the crawl (epoch millis, 0 if never), so API instances can pick up new docs
+    private long indexedAt;
 
     // חתימה עם 6 פרמטרים – כמו שהקומפיילר שלך דרש
     public static UrlSearchDoc of(String crawlId, String content, String url, String baseUrl, int level, String contentType) {
@@ -22,15 +32,37 @@ public class UrlSearchDoc {
         return res;
     }
 
+    public UrlSearchDoc withLinkRank(float pageRank, int inlinks) {
+        this.pageRank = pageRank;
+        this.inlinks = inlinks;
+        return this;
+    }
+
+    public UrlSearchDoc withSummary(String title, String description, String headings, String snippet) {
+        this.title = title;
+        this.description = description;
+        this.headings = headings;
+        this.snippet = snippet;
+        return this;
+    }
+
+    public UrlSearchDoc withIndexedAt(long indexedAt) {
+        this.indexedAt = indexedAt;
+        return this;
+    }
+
     @Override
     public String toString() {
         return "UrlSearchDoc{" +
                 "crawlId='" + crawlId + '\'' +
                 ", url='" + url + '\'' +
+                ", title='" + title + '\'' +
                 ", baseUrl='" + baseUrl + '\'' +
                 ", content='" + content + '\'' +
                 ", level=" + level +
                 ", contentType='" + contentType + '\'' +
+                ", pageRank=" + pageRank +
+                ", inlinks=" + inlinks +
                 '}';
     }
 
@@ -74,4 +106,32 @@ public class UrlSearchDoc {
     public String getContentType() {
         return contentType;
     }
+
+    public float getPageRank() {
+        return pageRank;
+    }
+
+    public int getInlinks() {
+        return inlinks;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getHeadings() {
+        return headings;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public long getIndexedAt() {
+        return indexedAt;
+    }
 }
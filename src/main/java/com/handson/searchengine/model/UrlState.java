@@ -0,0 +1,15 @@
+package com.handson.searchengine.model;
+
+public enum UrlState {
+    queued,
+    fetching,
+    fetched,
+    indexed,
+    // fetched, but nothing worth indexing on the page
+    skipped,
+    failed;
+
+    public boolean isDone() {
+        return this == indexed || this == skipped || this == failed;
+    }
+}
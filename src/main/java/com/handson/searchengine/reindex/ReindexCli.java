@@ -0,0 +1,50 @@
+package com.handson.searchengine.reindex;
+
+import com.handson.searchengine.SearchengineApplication;
+import com.handson.searchengine.model.ReindexRequest;
+import com.handson.searchengine.model.ReindexStatus;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line entry point for a re-index, without the web server and without consuming the crawl topic:
+ * <pre>
+ * java -cp searchengine.jar -Dloader.main=com.handson.searchengine.reindex.ReindexCli \
+ *      org.springframework.boot.loader.PropertiesLauncher --reindex.source=archive [--reindex.crawl-ids=a,b]
+ * </pre>
+ */
+public class ReindexCli {
+
+    public static void main(String[] args) {
+        SpringApplication app = new SpringApplication(SearchengineApplication.class);
+        app.setWebApplicationType(WebApplicationType.NONE);
+        Map<String, Object> defaults = new HashMap<>();
+        defaults.put("crawler.consumer.auto-startup", "false");
+        defaults.put("crawler.kafka.auto-create-topics", "false");
+        app.setDefaultProperties(defaults);
+        ConfigurableApplicationContext ctx = app.run(args);
+
+        Environment env = ctx.getEnvironment();
+        ReindexRequest request = new ReindexRequest();
+        request.setSource(env.getProperty("reindex.source", ReindexRequest.SOURCE_ARCHIVE));
+        request.setSourceIndex(env.getProperty("reindex.source-index"));
+        String crawlIds = env.getProperty("reindex.crawl-ids");
+        if (crawlIds != null && !crawlIds.isEmpty()) request.setCrawlIds(Arrays.asList(crawlIds.split(",")));
+        request.setBatchSize(env.getProperty("reindex.batch-size", Integer.class, 500));
+        request.setParallelism(env.getProperty("reindex.parallelism", Integer.class, 0));
+        request.setMaxFailedDocs(env.getProperty("reindex.max-failed-docs", Integer.class, 0));
+
+        ReindexStatus status = ctx.getBean(ReindexService.class).run(request);
+        System.out.println("Reindex " + status.getState() + ": read=" + status.getRead() + " indexed=" + status.getIndexed()
+                + " failed=" + status.getFailed() + " index=" + status.getTargetIndex()
+                + (status.getErrorMessage() != null ? " error=" + status.getErrorMessage() : ""));
+        int exitCode = SpringApplication.exit(ctx, () -> status.getState() == ReindexStatus.State.completed ? 0 : 1);
+        System.exit(exitCode);
+    }
+}
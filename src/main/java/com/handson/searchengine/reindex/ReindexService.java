@@ -0,0 +1,267 @@
+package com.handson.searchengine.reindex;
+
+import com.handson.searchengine.archive.PageArchive;
+import com.handson.searchengine.crawler.PageExtractor;
+import com.handson.searchengine.model.ArchivedPage;
+import com.handson.searchengine.model.ReindexRequest;
+import com.handson.searchengine.model.ReindexStatus;
+import com.handson.searchengine.model.UrlSearchDoc;
+import com.handson.searchengine.util.ElasticSearch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds the search index from stored pages (the local page archive or an existing index) without crawling again.
+ * A reader thread streams the source into a bounded queue, a pool of workers extracts docs in parallel and
+ * bulk-writes them into a fresh index; the alias is swapped to it in a single call at the end.
+ * With per-crawl indices each crawl gets a fresh index of its own ({crawlIndex}-{timestamp}), and the swap only
+ * replaces the alias entries of the crawls that were re-indexed.
+ */
+@Service
+public class ReindexService {
+
+    private static final Object END = new Object();
+    // how long the reader waits on a full queue before checking the workers are still there
+    private static final long OFFER_MILLIS = 200;
+
+    @Autowired
+    private ElasticSearch elasticSearch;
+
+    @Autowired
+    private PageArchive pageArchive;
+
+    @Autowired
+    private PageExtractor pageExtractor;
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    // one job at a time: two concurrent swaps of the same alias make no sense
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor();
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public ReindexStatus start(ReindexRequest request) {
+        Job job = new Job(UUID.randomUUID().toString(), request);
+        jobs.put(job.jobId, job);
+        jobExecutor.submit(() -> run(job));
+        return job.status();
+    }
+
+    /**
+     * Runs the job on the calling thread (used by the command line entry point).
+     */
+    public ReindexStatus run(ReindexRequest request) {
+        Job job = new Job(UUID.randomUUID().toString(), request);
+        jobs.put(job.jobId, job);
+        run(job);
+        return job.status();
+    }
+
+    public ReindexStatus getStatus(String jobId) {
+        Job job = jobs.get(jobId);
+        return job != null ? job.status() : null;
+    }
+
+    private void run(Job job) {
+        ReindexRequest req = job.request;
+        int parallelism = req.getParallelism() > 0 ? req.getParallelism() : Runtime.getRuntime().availableProcessors();
+        int batchSize = Math.max(1, req.getBatchSize());
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try {
+            job.timestamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+            if (elasticSearch.isPerCrawlIndex()) {
+                // created per crawl as its docs come in
+                job.crawlTargets = new LinkedHashMap<>();
+                job.targetIndex = elasticSearch.getIndex() + "-crawl-*-" + job.timestamp;
+            } else {
+                job.targetIndex = elasticSearch.getIndex() + "-" + job.timestamp;
+                elasticSearch.createIndex(job.targetIndex);
+            }
+            logger.info("Reindex " + job.jobId + " from " + req.getSource() + " into " + job.targetIndex + " with " + parallelism + " workers");
+
+            BlockingQueue<Object> queue = new ArrayBlockingQueue<>(parallelism * batchSize);
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < parallelism; i++) {
+                running.add(workers.submit(() -> work(job, queue, batchSize)));
+            }
+            try {
+                readSource(job, queue, running);
+            } finally {
+                for (int i = 0; i < parallelism; i++) {
+                    if (!put(queue, END, job, running)) break;
+                }
+            }
+            for (Future<?> f : running) {
+                f.get();
+            }
+
+            if (job.failed.get() > req.getMaxFailedDocs()) {
+                throw new IllegalStateException(job.failed.get() + " docs failed, alias " + elasticSearch.getAlias() + " left unchanged");
+            }
+            job.previousIndices = job.crawlTargets != null
+                    ? elasticSearch.swapCrawlIndices(job.crawlTargets)
+                    : elasticSearch.swapAlias(elasticSearch.getAlias(), job.targetIndex);
+            job.finish(ReindexStatus.State.completed, null);
+            logger.info("Reindex " + job.jobId + " completed: " + job.indexed.get() + " docs, alias " + elasticSearch.getAlias() + " -> " + job.targetIndex);
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            logger.error("Reindex " + job.jobId + " failed: " + cause.getMessage(), cause);
+            job.finish(ReindexStatus.State.failed, cause.getMessage());
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void readSource(Job job, BlockingQueue<Object> queue, List<Future<?>> running) throws Exception {
+        ReindexRequest req = job.request;
+        Set<String> crawlIds = req.getCrawlIds() != null && !req.getCrawlIds().isEmpty() ? new HashSet<>(req.getCrawlIds()) : null;
+        if (ReindexRequest.SOURCE_INDEX.equals(req.getSource())) {
+            String sourceIndex = req.getSourceIndex() != null ? req.getSourceIndex() : elasticSearch.getAlias();
+            elasticSearch.scroll(sourceIndex, req.getBatchSize(), sources -> {
+                for (Map<String, Object> src : sources) {
+                    if (crawlIds != null && !crawlIds.contains(src.get("crawlId"))) continue;
+                    enqueue(job, queue, running, src);
+                }
+            });
+        } else if (ReindexRequest.SOURCE_ARCHIVE.equals(req.getSource())) {
+            for (String crawlId : crawlIds != null ? new ArrayList<>(crawlIds) : pageArchive.crawlIds()) {
+                pageArchive.forEach(crawlId, page -> enqueue(job, queue, running, page));
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown reindex source: " + req.getSource());
+        }
+    }
+
+    private void enqueue(Job job, BlockingQueue<Object> queue, List<Future<?>> running, Object item) {
+        if (!put(queue, item, job, running)) {
+            throw new CancellationException("Reindex workers stopped: " + job.abortReason);
+        }
+        job.read.incrementAndGet();
+    }
+
+    /**
+     * Puts item on the queue unless the workers are gone: false once one failed or all have ended, since nothing
+     * would take it and the reader would wait forever.
+     */
+    private boolean put(BlockingQueue<Object> queue, Object item, Job job, List<Future<?>> running) {
+        try {
+            while (!queue.offer(item, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (job.abortReason != null || running.stream().allMatch(Future::isDone)) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Reindex interrupted");
+        }
+    }
+
+    private Void work(Job job, BlockingQueue<Object> queue, int batchSize) throws Exception {
+        try {
+            List<UrlSearchDoc> batch = new ArrayList<>(batchSize);
+            while (job.abortReason == null) {
+                Object item = queue.take();
+                if (item == END) break;
+                try {
+                    batch.add(item instanceof ArchivedPage
+                            ? pageExtractor.extract((ArchivedPage) item)
+                            : pageExtractor.extract((Map<String, Object>) item));
+                } catch (Exception e) {
+                    job.failed.incrementAndGet();
+                    logger.warn("Reindex " + job.jobId + " could not extract a doc: " + e.getMessage());
+                }
+                if (batch.size() >= batchSize) flush(job, batch);
+            }
+            flush(job, batch);
+            return null;
+        } catch (Throwable t) {
+            // stops the reader and the other workers; f.get() in run reports the cause
+            if (job.abortReason == null) job.abortReason = String.valueOf(t.getMessage());
+            throw t;
+        }
+    }
+
+    private void flush(Job job, List<UrlSearchDoc> batch) throws Exception {
+        if (batch.isEmpty()) return;
+        if (job.crawlTargets == null) {
+            int failed = elasticSearch.bulkIndex(job.targetIndex, batch);
+            job.failed.addAndGet(failed);
+            job.indexed.addAndGet(batch.size() - failed);
+        } else {
+            Map<String, List<UrlSearchDoc>> byCrawl = new LinkedHashMap<>();
+            for (UrlSearchDoc doc : batch) {
+                if (doc.getCrawlId() == null) {
+                    job.failed.incrementAndGet();
+                    continue;
+                }
+                byCrawl.computeIfAbsent(doc.getCrawlId(), k -> new ArrayList<>()).add(doc);
+            }
+            for (Map.Entry<String, List<UrlSearchDoc>> e : byCrawl.entrySet()) {
+                int failed = elasticSearch.bulkIndex(crawlTarget(job, e.getKey()), e.getValue());
+                job.failed.addAndGet(failed);
+                job.indexed.addAndGet(e.getValue().size() - failed);
+            }
+        }
+        batch.clear();
+    }
+
+    private String crawlTarget(Job job, String crawlId) throws IOException {
+        synchronized (job.crawlTargets) {
+            String target = job.crawlTargets.get(crawlId);
+            if (target == null) {
+                target = elasticSearch.reindexedCrawlIndex(crawlId, job.timestamp);
+                elasticSearch.createIndex(target);
+                job.crawlTargets.put(crawlId, target);
+            }
+            return target;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+    }
+
+    private static final class Job {
+        final String jobId;
+        final ReindexRequest request;
+        final long startTimeMillis = System.currentTimeMillis();
+        final AtomicLong read = new AtomicLong();
+        final AtomicLong indexed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        volatile String targetIndex;
+        volatile String timestamp;
+        // crawlId -> index built for it, with per-crawl indices; guarded by itself
+        volatile Map<String, String> crawlTargets;
+        volatile Set<String> previousIndices;
+        volatile ReindexStatus.State state = ReindexStatus.State.running;
+        volatile long endTimeMillis;
+        volatile String errorMessage;
+        // set by the first worker that fails
+        volatile String abortReason;
+
+        Job(String jobId, ReindexRequest request) {
+            this.jobId = jobId;
+            this.request = request;
+        }
+
+        void finish(ReindexStatus.State state, String errorMessage) {
+            this.errorMessage = errorMessage;
+            this.endTimeMillis = System.currentTimeMillis();
+            this.state = state;
+        }
+
+        ReindexStatus status() {
+            return ReindexStatus.of(jobId, state, request.getSource(), targetIndex, read.get(), indexed.get(), failed.get(),
+                    startTimeMillis, endTimeMillis, previousIndices, errorMessage);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.handson.searchengine.suggest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Radix trie of suggestion texts with their frequencies. Every node keeps the TOP_K most frequent texts below it,
+ * so a lookup is a walk down the prefix and a copy of at most TOP_K entries, whatever the number of texts.
+ * Frequencies only grow, which keeps the per-node lists exact when they are updated on insert.
+ * Not thread safe; SuggestService guards it.
+ */
+final class SuggestIndex {
+
+    static final int TOP_K = 10;
+
+    private final Node root = new Node("");
+    private final int maxEntries;
+    private int entries;
+    private int nodes = 1;
+
+    SuggestIndex(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Adds count occurrences of text. Once maxEntries texts are known, only known texts are counted.
+     */
+    void add(String text, int count) {
+        if (text.isEmpty() || count <= 0) return;
+        Node found = find(text, true);
+        if ((found == null || found.entry == null) && entries >= maxEntries) return;
+        List<Node> path = new ArrayList<>();
+        Node n = root;
+        path.add(n);
+        int i = 0;
+        while (i < text.length()) {
+            Node child = n.child(text.charAt(i));
+            if (child == null) {
+                child = new Node(text.substring(i));
+                n.addChild(child);
+                nodes++;
+                path.add(child);
+                n = child;
+                break;
+            }
+            int common = commonPrefix(child.label, text, i);
+            if (common < child.label.length()) {
+                // split the edge: the new node takes the shared part and, for now, everything below child
+                Node mid = new Node(child.label.substring(0, common));
+                mid.top = Arrays.copyOf(child.top, child.top.length);
+                mid.size = child.size;
+                child.label = child.label.substring(common);
+                mid.addChild(child);
+                n.replaceChild(mid);
+                nodes++;
+                child = mid;
+            }
+            n = child;
+            path.add(n);
+            i += common;
+        }
+        if (n.entry == null) {
+            n.entry = new Entry(text);
+            entries++;
+        }
+        n.entry.count += count;
+        for (Node p : path) p.offer(n.entry);
+    }
+
+    /**
+     * The most frequent texts starting with prefix, most frequent first.
+     */
+    List<Entry> top(String prefix, int size) {
+        Node n = find(prefix, false);
+        if (n == null) return Collections.emptyList();
+        int k = Math.min(size, n.size);
+        List<Entry> res = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) res.add(n.top[i].copy());
+        return res;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    int nodes() {
+        return nodes;
+    }
+
+    // exact: the node ending at text; otherwise the first node whose path starts with text
+    private Node find(String text, boolean exact) {
+        Node n = root;
+        int i = 0;
+        while (i < text.length()) {
+            Node child = n.child(text.charAt(i));
+            if (child == null) return null;
+            int common = commonPrefix(child.label, text, i);
+            if (common < child.label.length()) {
+                return !exact && i + common == text.length() ? child : null;
+            }
+            n = child;
+            i += common;
+        }
+        return n;
+    }
+
+    private static int commonPrefix(String label, String text, int from) {
+        int max = Math.min(label.length(), text.length() - from);
+        int i = 0;
+        while (i < max && label.charAt(i) == text.charAt(from + i)) i++;
+        return i;
+    }
+
+    static final class Entry {
+        final String text;
+        long count;
+
+        Entry(String text) {
+            this.text = text;
+        }
+
+        Entry copy() {
+            Entry e = new Entry(text);
+            e.count = count;
+            return e;
+        }
+    }
+
+    private static final class Node {
+        String label;
+        // children sorted by the first char of their label
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        // set when a text ends here; shared with the top lists above, so its count is updated everywhere at once
+        Entry entry;
+        Entry[] top = new Entry[0];
+        int size;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        void addChild(Node child) {
+            char c = child.label.charAt(0);
+            int i = -(Arrays.binarySearch(keys, c) + 1);
+            char[] k = new char[keys.length + 1];
+            Node[] ch = new Node[children.length + 1];
+            System.arraycopy(keys, 0, k, 0, i);
+            System.arraycopy(children, 0, ch, 0, i);
+            k[i] = c;
+            ch[i] = child;
+            System.arraycopy(keys, i, k, i + 1, keys.length - i);
+            System.arraycopy(children, i, ch, i + 1, children.length - i);
+            keys = k;
+            children = ch;
+        }
+
+        void replaceChild(Node child) {
+            children[Arrays.binarySearch(keys, child.label.charAt(0))] = child;
+        }
+
+        // the entry's count just grew: move it up, or in if it now beats the last one
+        void offer(Entry e) {
+            int i = 0;
+            while (i < size && top[i] != e) i++;
+            if (i == size) {
+                if (size < TOP_K) {
+                    if (top.length == size) top = Arrays.copyOf(top, Math.min(TOP_K, Math.max(2, size * 2)));
+                    size++;
+                } else if (top[size - 1].count >= e.count) {
+                    return;
+                }
+                i = size - 1;
+                top[i] = e;
+            }
+            while (i > 0 && top[i - 1].count < e.count) {
+                top[i] = top[i - 1];
+                top[i - 1] = e;
+                i--;
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.handson.searchengine.suggest;
+
+import com.handson.searchengine.model.Suggestion;
+import com.handson.searchengine.model.UrlSearchDoc;
+import com.handson.searchengine.util.ElasticSearch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Type-ahead suggestions from an in-memory SuggestIndex, without calling ES.
+ * Fed with the title of every indexed doc (as a whole, when short) and the words of its title and headings, counted
+ * once per doc. On start the index is warmed from the docs already behind the read alias; after that it is
+ * refreshed every suggest.refresh-millis from the docs written since (by indexedAt), so docs indexed by crawl
+ * workers show up too. With suggest.refresh-enabled=false only the docs this instance indexes are added.
+ * Disabled on crawl workers (suggest.enabled=false in the worker profile), which never serve it.
+ */
+@Component
+public class SuggestService {
+    private static final Logger logger = LoggerFactory.getLogger(SuggestService.class);
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+    private static final List<String> FIELDS = Arrays.asList("title", "headings");
+    // docs younger than this may not be searchable yet (ES refresh, bulk requests in flight); they wait for the next round
+    private static final long REFRESH_LAG_MILLIS = 10_000;
+    static final int MAX_PHRASE = 80;
+    static final int MIN_WORD = 3;
+
+    @Autowired
+    private ElasticSearch elasticSearch;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${suggest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${suggest.max-entries:500000}")
+    private int maxEntries;
+
+    @Value("${suggest.warmup:true}")
+    private boolean warmup;
+
+    @Value("${suggest.refresh-enabled:true}")
+    private boolean refreshEnabled;
+
+    private SuggestIndex index;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // docs with indexedAt before this are in the index; 0 until the warm-up has run
+    private volatile long watermark;
+
+    @PostConstruct
+    public void init() {
+        index = new SuggestIndex(maxEntries);
+        Gauge.builder("suggest.entries", this, s -> s.size()).register(meterRegistry);
+    }
+
+    public void onIndexed(UrlSearchDoc doc) {
+        // with refresh on, the doc comes back from ES with everybody else's, and is counted only then
+        if (!enabled || refreshEnabled) return;
+        add(doc.getTitle(), doc.getHeadings());
+    }
+
+    public List<Suggestion> suggest(String prefix, int size) {
+        String p = normalize(prefix);
+        if (p.isEmpty()) return Collections.emptyList();
+        List<SuggestIndex.Entry> top;
+        lock.readLock().lock();
+        try {
+            top = index.top(p, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Suggestion> res = new ArrayList<>(top.size());
+        for (SuggestIndex.Entry e : top) res.add(new Suggestion(e.text, e.count));
+        return res;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return index.entries();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(String title, String headings) {
+        Set<String> texts = texts(title, headings);
+        if (texts.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (String t : texts) index.add(t, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // the whole title when short enough to be a query, plus the distinct words of title and headings
+    static Set<String> texts(String title, String headings) {
+        Set<String> res = new LinkedHashSet<>();
+        String t = normalize(title);
+        if (!t.isEmpty() && t.length() <= MAX_PHRASE) res.add(t);
+        for (String source : new String[]{t, normalize(headings)}) {
+            for (String w : NON_WORD.split(source)) {
+                if (w.length() >= MIN_WORD && !isNumber(w)) res.add(w);
+            }
+        }
+        return res;
+    }
+
+    static String normalize(String s) {
+        if (s == null) return "";
+        return SPACES.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static boolean isNumber(String w) {
+        for (int i = 0; i < w.length(); i++) {
+            if (!Character.isDigit(w.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) return;
+        long until = System.currentTimeMillis() - REFRESH_LAG_MILLIS;
+        if (!warmup) {
+            watermark = until;
+            return;
+        }
+        Thread t = new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                // everything older than the watermark, including docs written before indexedAt existed
+                String query = "{ \"bool\": { \"must_not\": { \"range\": { \"indexedAt\": { \"gte\": " + until + " } } } } }";
+                elasticSearch.scroll(elasticSearch.getAlias(), 1000, FIELDS, query, this::addAll);
+                logger.info("Suggest index warmed up with {} entries in {} ms", size(), System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                logger.warn("Suggest warm-up failed, suggestions only cover docs indexed from now on: {}", e.getMessage());
+            }
+            watermark = until;
+        }, "suggest-warmup");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Adds the docs written since the last round, on any instance.
+     */
+    @Scheduled(fixedDelayString = "${suggest.refresh-millis:30000}", initialDelayString = "${suggest.refresh-millis:30000}")
+    public void refresh() {
+        long from = watermark;
+        if (!enabled || !refreshEnabled || from == 0) return;
+        long until = System.currentTimeMillis() - REFRESH_LAG_MILLIS;
+        if (until <= from) return;
+        String query = "{ \"range\": { \"indexedAt\": { \"gte\": " + from + ", \"lt\": " + until + " } } }";
+        try {
+            elasticSearch.scroll(elasticSearch.getAlias(), 1000, FIELDS, query, this::addAll);
+            watermark = until;
+        } catch (Exception e) {
+            logger.warn("Suggest refresh failed, will retry from the same point: {}", e.getMessage());
+        }
+    }
+
+    private void addAll(List<Map<String, Object>> sources) {
+        for (Map<String, Object> src : sources) {
+            Object title = src.get("title");
+            Object headings = src.get("headings");
+            add(title instanceof String ? (String) title : null, headings instanceof String ? (String) headings : null);
+        }
+    }
+}
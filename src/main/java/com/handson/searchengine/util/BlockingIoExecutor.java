@@ -0,0 +1,177 @@
+package com.handson.searchengine.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking I/O tasks (fetches, Elasticsearch writes) with at most maxConcurrent of them at a time.
+ * On a JDK with virtual threads every task gets its own virtual thread, so thousands of slow fetches cost no more
+ * than their stacks; elsewhere the tasks run on pooled platform threads. Either way the
+ * limit is a semaphore, not a pool size, and up to queueCapacity tasks wait for a permit before execute() rejects.
+ * A thread that finishes a task takes the next waiting one, so waiting tasks run in submission order.
+ */
+public final class BlockingIoExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(BlockingIoExecutor.class);
+
+    private final String name;
+    private final ExecutorService threads;
+    private final boolean virtual;
+    private final int maxConcurrent;
+    private final Semaphore permits;
+    private final BlockingQueue<Runnable> waiting;
+    private volatile boolean shutdown;
+
+    private BlockingIoExecutor(String name, ExecutorService threads, boolean virtual, int maxConcurrent, int queueCapacity) {
+        this.name = name;
+        this.threads = threads;
+        this.virtual = virtual;
+        this.maxConcurrent = maxConcurrent;
+        this.permits = new Semaphore(maxConcurrent);
+        this.waiting = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : new SynchronousQueue<>();
+    }
+
+    /**
+     * Virtual threads if preferVirtual and the JDK has them, a bounded platform pool otherwise.
+     */
+    public static BlockingIoExecutor create(String name, int maxConcurrent, int queueCapacity, boolean preferVirtual) {
+        int limit = Math.max(1, maxConcurrent);
+        if (preferVirtual) {
+            ExecutorService vt = newVirtualThreadPerTaskExecutor();
+            if (vt != null) {
+                logger.info("{}: virtual threads, {} concurrent tasks", name, limit);
+                return new BlockingIoExecutor(name, vt, true, limit, queueCapacity);
+            }
+        }
+        AtomicInteger n = new AtomicInteger();
+        // not capped at limit: a thread that gave its permit back may not be idle in the pool yet, and the next task
+        // would be rejected; the permits keep at most limit tasks running
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                r -> new Thread(r, name + "-" + n.incrementAndGet()));
+        logger.info("{}: platform threads, {} concurrent tasks", name, limit);
+        return new BlockingIoExecutor(name, pool, false, limit, queueCapacity);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() through reflection, as we compile for Java 11; null without it
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            // e.g. a JDK where they are still a preview feature
+            logger.info("Virtual threads not available: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs the task now if a permit is free, else queues it; RejectedExecutionException when the queue is full too.
+     */
+    public void execute(Runnable task) {
+        if (shutdown) throw new RejectedExecutionException(name + " is shut down");
+        if (permits.tryAcquire()) {
+            start(task);
+            return;
+        }
+        if (!waiting.offer(task)) throw new RejectedExecutionException(name + " is saturated");
+        // every running task may have finished between the tryAcquire and the offer
+        startWaiting();
+    }
+
+    /**
+     * Waits for a free permit, then runs the task.
+     */
+    public void executeBlocking(Runnable task) throws InterruptedException {
+        if (shutdown) throw new RejectedExecutionException(name + " is shut down");
+        permits.acquire();
+        start(task);
+    }
+
+    private void start(Runnable task) {
+        try {
+            threads.execute(() -> runChain(task));
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    // the permit goes with the thread: it runs the task, then whatever is waiting, then gives the permit back
+    private void runChain(Runnable task) {
+        Runnable next = task;
+        while (next != null) {
+            try {
+                next.run();
+            } catch (Throwable t) {
+                logger.error("{}: task failed: {}", name, t.getMessage(), t);
+            }
+            next = Thread.currentThread().isInterrupted() ? null : waiting.poll();
+        }
+        permits.release();
+        startWaiting();
+    }
+
+    private void startWaiting() {
+        while (!waiting.isEmpty() && !shutdown && permits.tryAcquire()) {
+            Runnable next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                return;
+            }
+            try {
+                start(next);
+            } catch (RejectedExecutionException e) {
+                // shut down meanwhile; leave it for shutdownNow
+                waiting.offer(next);
+                return;
+            }
+        }
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getActive() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    public int getQueued() {
+        return waiting.size();
+    }
+
+    /**
+     * Takes no new tasks; the running and waiting ones still run. A task that was queued just as the last running
+     * one ended may be left waiting; shutdownNow returns it.
+     */
+    public void shutdown() {
+        shutdown = true;
+        threads.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threads.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Interrupts the running tasks and returns the waiting ones, which never started.
+     */
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+        waiting.drainTo(pending);
+        threads.shutdownNow();
+        return pending;
+    }
+}
@@ -0,0 +1,49 @@
+package com.handson.searchengine.util;
+
+/**
+ * Minimal circuit breaker: opens after a run of consecutive failures, lets one probe through after openMillis
+ * (half open), and closes again on the first success.
+ */
+public class CircuitBreaker {
+    public enum State {
+        closed,
+        open,
+        halfOpen
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.closed;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public synchronized boolean allowRequest() {
+        if (state == State.open && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.halfOpen;
+            return true;
+        }
+        return state == State.closed;
+    }
+
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.closed;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.halfOpen || consecutiveFailures >= failureThreshold) {
+            state = State.open;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
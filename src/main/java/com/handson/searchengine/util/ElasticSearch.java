@@ -1,7 +1,14 @@
 package com.handson.searchengine.util;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.model.SearchPage;
+import com.handson.searchengine.model.SearchQuery;
 import com.handson.searchengine.model.SearchResultDto;
+import com.handson.searchengine.model.SearchResults;
 import com.handson.searchengine.model.UrlSearchDoc;
 import okhttp3.*;
 import org.apache.tomcat.util.codec.binary.Base64;
@@ -9,15 +16,28 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Component
 public class ElasticSearch {
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearch.class);
+    // relevance, then url so hits with equal scores keep one order between pages (under a point in time ES adds
+    // its own _shard_doc tie breaker after these)
+    private static final String SEARCH_SORT = "[ { \"_score\": \"desc\" }, { \"url.keyword\": { \"order\": \"asc\", \"missing\": \"_last\" } } ]";
+    // how long a point in time stays open after each page read from it
+    private static final String PIT_KEEP_ALIVE = "2m";
+    // how long a crawl's concrete index is trusted before the alias is asked again; another node may re-index it
+    private static final long CRAWL_INDEX_CACHE_MILLIS = 60_000;
     OkHttpClient client = new OkHttpClient();
 
     @Value("${elasticsearch.base.url}")
@@ -29,31 +49,43 @@ public class ElasticSearch {
     @Value("${elasticsearch.index}")
     private String index;
 
+    // reads and writes go through this alias, so a re-index can swap the index underneath it
+    @Value("${elasticsearch.alias:${elasticsearch.index}-live}")
+    private String alias;
+
+    // each crawl writes to its own index ({index}-crawl-...), created on its first write and added to the alias;
+    // a re-index replaces it with {crawlIndex}-{timestamp}
+    @Value("${elasticsearch.per-crawl-index:true}")
+    private boolean perCrawlIndex;
+
     @Autowired
     ObjectMapper om;
 
+    private final AtomicBoolean aliasReady = new AtomicBoolean(false);
+    private final AtomicBoolean templateReady = new AtomicBoolean(false);
+    // crawl index name -> the concrete index the alias reads that crawl from
+    private final Map<String, String> liveCrawlIndices = new ConcurrentHashMap<>();
+    private volatile long liveCrawlIndicesLoadedAt;
+    private volatile boolean pitSupported = true;
+
     /**
      * מוסיף מסמך חדש לאינדקס
      */
     public void addData(UrlSearchDoc doc) throws IOException {
-        String auth = new String(Base64.encodeBase64(API_KEY.getBytes()));
-        String json = om.writeValueAsString(doc);
-
+        doc.withIndexedAt(System.currentTimeMillis());
         RequestBody body = RequestBody.create(
                 MediaType.parse("application/json"),
-                json
+                om.writeValueAsBytes(doc)
         );
 
-        Request request = new Request.Builder()
-                .url(ELASTIC_SEARCH_URL + "/" + index + "/_doc")
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .addHeader(HttpHeaders.AUTHORIZATION, "Basic " + auth)
+        Request request = newRequest("/" + writeTarget(doc.getCrawlId()) + "/_doc/" + docId(doc))
+                .put(body)
                 .build();
 
         try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful()) {
                 logger.error("Failed to add data to Elasticsearch: {} {}", response.code(), response.message());
+                throw new IOException("Elasticsearch returned " + response.code() + " " + response.message());
             } else {
                 logger.debug("Document added to Elasticsearch successfully.");
             }
@@ -61,78 +93,714 @@ public class ElasticSearch {
     }
 
     /**
-     * חיפוש עם סינון כדי להוציא עמודי בית ועם highlight
+     * One page of hits by relevance, starting after cursor (null for the first page); the cursor of the next page
+     * comes with it. Pages are read with search_after on the live index, with the url as tie breaker, so a deep page
+     * costs what the first does. With snapshot the first page opens a point in time where ES has them (7.10+) and
+     * the later pages of the cursor read from it, so the order holds still while pages are indexed meanwhile; that
+     * costs an extra round trip, so it is only done when asked for.
+     * With a crawlId only that crawl's index is searched (or the alias filtered by crawlId if it has none).
      */
-    public List<SearchResultDto> search(String query) throws IOException {
-        List<SearchResultDto> results = new ArrayList<>();
-        String auth = new String(Base64.encodeBase64(API_KEY.getBytes()));
+    public SearchPage searchPage(String query, String crawlId, int size, String cursor, boolean snapshot) throws IOException {
+        SearchCursor after = cursor == null || cursor.isEmpty() ? null : SearchCursor.decode(cursor, query, crawlId);
+        String[] target = searchTarget(crawlId);
+        String pitId = after != null ? after.getPitId() : snapshot ? openPit(target[0]) : null;
+        // homepages are dropped from the hits, so ask for some extra
+        int fetchSize = size + (size + 1) / 2;
+        StringBuilder paging = new StringBuilder(",\n  \"track_total_hits\": false,\n  \"sort\": ").append(SEARCH_SORT);
+        if (after != null) paging.append(",\n  \"search_after\": ").append(om.writeValueAsString(after.getSearchAfter()));
+        if (pitId != null) {
+            paging.append(",\n  \"pit\": { \"id\": \"").append(escapeJson(pitId))
+                    .append("\", \"keep_alive\": \"").append(PIT_KEEP_ALIVE).append("\" }");
+        }
+        RequestBody body = RequestBody.create(MediaType.parse("application/json"),
+                searchBody(query, fetchSize, 0, target[1], paging.toString()));
+        // a point in time names its indices itself
+        Request request = newRequest(pitId != null ? "/_search" : "/" + target[0] + "/_search")
+                .post(body)
+                .build();
+
+        try (Response response = client.newCall(request).execute()) {
+            if (after != null && after.getPitId() != null && response.code() == 404) {
+                throw new IllegalArgumentException("Cursor expired, search again without it");
+            }
+            if (!response.isSuccessful()) {
+                logger.error("Search failed: {}", response.code());
+                return SearchPage.of(new ArrayList<>(), null);
+            }
+
+            Map<String, Object> map = om.readValue(response.body().byteStream(), Map.class);
+            if (map.get("pit_id") instanceof String) pitId = (String) map.get("pit_id");
+            Map<String, Object> hitsMap = (Map<String, Object>) map.get("hits");
+            List<Map<String, Object>> hits = hitsMap == null ? null : (List<Map<String, Object>>) hitsMap.get("hits");
+            if (hits == null) hits = new ArrayList<>();
+
+            // the page ends at the hit that filled it; the next page starts right after that hit
+            int taken = 0;
+            int kept = 0;
+            while (taken < hits.size() && kept < size) {
+                Map<String, Object> src = (Map<String, Object>) hits.get(taken++).get("_source");
+                Object url = src == null ? null : src.get("url");
+                if (url instanceof String && !isHomepage((String) url)) kept++;
+            }
+            List<SearchResultDto> results = toResults(hits.subList(0, taken), size);
+            if (taken == hits.size() && hits.size() < fetchSize) {
+                if (pitId != null) closePit(pitId);
+                return SearchPage.of(results, null);
+            }
+            List<Object> lastSort = (List<Object>) hits.get(taken - 1).get("sort");
+            if (lastSort == null) return SearchPage.of(results, null);
+            return SearchPage.of(results, new SearchCursor(pitId, lastSort).encode(query, crawlId));
+        }
+    }
+
+    // a point in time on index, or null where ES has none (before 7.10, or a service that does not allow it)
+    private String openPit(String index) {
+        if (!pitSupported) return null;
+        Request request = newRequest("/" + index + "/_pit?keep_alive=" + PIT_KEEP_ALIVE)
+                .post(RequestBody.create(MediaType.parse("application/json"), ""))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                Object id = om.readValue(response.body().byteStream(), Map.class).get("id");
+                return id instanceof String ? (String) id : null;
+            }
+            if (response.code() == 400 || response.code() == 404 || response.code() == 405) {
+                logger.info("Point in time not available ({}), paging searches on the live index", response.code());
+                pitSupported = false;
+            }
+            return null;
+        } catch (IOException e) {
+            logger.warn("Failed to open a point in time on {}: {}", index, e.getMessage());
+            return null;
+        }
+    }
+
+    // once the last page is read; an abandoned one expires by itself after its keep alive
+    private void closePit(String pitId) {
+        Request request = newRequest("/_pit")
+                .delete(RequestBody.create(MediaType.parse("application/json"), "{\"id\":\"" + escapeJson(pitId) + "\"}"))
+                .build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                logger.debug("Failed to close point in time: {}", e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+            }
+        });
+    }
 
-        String requestBody = "{\n" +
-                "  \"size\": 80,\n" +
+    /**
+     * Runs all queries in one _msearch round trip. The response is read with a streaming parser, one hit at a
+     * time, and results come back in query order; a query ES fails on gets an error entry, not an exception.
+     */
+    public List<SearchResults> multiSearch(List<SearchQuery> queries) throws IOException {
+        if (queries.isEmpty()) return new ArrayList<>();
+        StringBuilder ndjson = new StringBuilder();
+        for (SearchQuery q : queries) {
+            String[] target = searchTarget(q.getCrawlId());
+            // homepages are dropped from the hits, so ask for some extra
+            int fetchSize = q.getSize() + (q.getSize() + 1) / 2;
+            ndjson.append("{\"index\":\"").append(escapeJson(target[0])).append("\"}\n")
+                    .append(searchBody(q.getQuery(), fetchSize, q.getOffset(), target[1], "").replace("\n", ""))
+                    .append('\n');
+        }
+        Request request = newRequest("/_msearch")
+                .post(RequestBody.create(MediaType.parse("application/x-ndjson"), ndjson.toString()))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Multi search failed: " + response.code() + " " + response.message());
+            }
+            List<SearchResults> out = new ArrayList<>(queries.size());
+            try (JsonParser parser = om.getFactory().createParser(response.body().byteStream())) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) throw new IOException("Unexpected multi search response");
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (!"responses".equals(field)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        int size = out.size() < queries.size() ? queries.get(out.size()).getSize() : 0;
+                        out.add(readSearchResponse(parser, size));
+                    }
+                }
+            }
+            while (out.size() < queries.size()) out.add(SearchResults.failed("No response from Elasticsearch"));
+            return out;
+        }
+    }
+
+    private SearchResults readSearchResponse(JsonParser parser, int size) throws IOException {
+        List<Map<String, Object>> hits = new ArrayList<>();
+        long total = 0;
+        String error = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("hits".equals(field)) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsField = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("total".equals(hitsField)) {
+                        // {"value": n, "relation": ...} on ES 7+, a plain number before
+                        total = parser.currentToken() == JsonToken.START_OBJECT
+                                ? parser.<JsonNode>readValueAsTree().path("value").asLong()
+                                : parser.getLongValue();
+                    } else if ("hits".equals(hitsField)) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            hits.add(parser.readValueAs(Map.class));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("error".equals(field)) {
+                JsonNode node = parser.readValueAsTree();
+                error = node.path("reason").asText(node.toString());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (error != null) return SearchResults.failed(error);
+        List<SearchResultDto> results = toResults(hits, size);
+        return SearchResults.of(results.size() > size ? new ArrayList<>(results.subList(0, size)) : results, total);
+    }
+
+    // the index the alias reads the crawl from if it has its own, otherwise the alias plus a crawlId filter clause
+    // for the bool query
+    private String[] searchTarget(String crawlId) throws IOException {
+        if (crawlId == null || crawlId.isEmpty()) return new String[]{target(), ""};
+        if (perCrawlIndex) {
+            String live = liveCrawlIndex(crawlIndex(crawlId));
+            if (live != null) return new String[]{live, ""};
+        }
+        return new String[]{target(), ",\n          \"filter\": [ { \"term\": { \"crawlId\": \"" + escapeJson(crawlId) + "\" } } ]"};
+    }
+
+    /**
+     * Text relevance times log(1 + pageRank); pages not ranked yet count as average. The short fields extracted at
+     * crawl time carry the boosts, and only they are highlighted (title has term vectors, the others offsets), so
+     * ES never re-analyzes whole page bodies for a result list.
+     */
+    private String searchBody(String query, int size, int from, String crawlFilter, String paging) {
+        return "{\n" +
+                "  \"size\": " + size + ",\n" +
+                "  \"from\": " + from + ",\n" +
+                "  \"_source\": [\"url\", \"title\", \"snippet\"],\n" +
                 "  \"query\": {\n" +
-                "    \"bool\": {\n" +
-                "      \"must\": [\n" +
-                "        { \"multi_match\": { \"query\": \"" + escapeJson(query) + "\", \"fields\": [\"title^3\", \"content\"] } }\n" +
-                "      ]\n" +
+                "    \"function_score\": {\n" +
+                "      \"query\": {\n" +
+                "        \"bool\": {\n" +
+                "          \"must\": [\n" +
+                "            { \"multi_match\": { \"query\": \"" + escapeJson(query) + "\", \"fields\": [\"title^3\", \"headings^2\", \"description^1.5\", \"content\"] } }\n" +
+                "          ]" + crawlFilter + "\n" +
+                "        }\n" +
+                "      },\n" +
+                "      \"field_value_factor\": { \"field\": \"pageRank\", \"modifier\": \"log1p\", \"missing\": 1 },\n" +
+                "      \"boost_mode\": \"multiply\"\n" +
                 "    }\n" +
                 "  },\n" +
-                "  \"highlight\": { \"pre_tags\": [\"<em>\"], \"post_tags\": [\"</em>\"], \"fields\": { \"content\": {}, \"title\": {} } }\n" +
+                "  \"highlight\": { \"pre_tags\": [\"<em>\"], \"post_tags\": [\"</em>\"], \"require_field_match\": false,\n" +
+                "    \"fields\": { \"title\": { \"number_of_fragments\": 0 }, \"snippet\": { \"number_of_fragments\": 0 },\n" +
+                "      \"description\": { \"number_of_fragments\": 1, \"fragment_size\": 200 } } }" + paging + "\n" +
                 "}";
+    }
 
-        RequestBody body = RequestBody.create(MediaType.parse("application/json"), requestBody);
-        Request request = new Request.Builder()
-                .url(ELASTIC_SEARCH_URL + "/" + index + "/_search")
-                .post(body)
-                .addHeader("Content-Type", "application/json")
-                .addHeader(HttpHeaders.AUTHORIZATION, "Basic " + auth)
+    // skips homepages and puts likely articles first
+    private List<SearchResultDto> toResults(List<Map<String, Object>> hits, int max) {
+        List<SearchResultDto> results = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        List<SearchResultDto> articleCandidates = new ArrayList<>();
+        List<SearchResultDto> others = new ArrayList<>();
+
+        for (Map<String, Object> hit : hits) {
+            Map<String, Object> src = (Map<String, Object>) hit.get("_source");
+            if (src == null) continue;
+            String url = (String) src.get("url");
+            if (url == null) continue;
+            if (seen.contains(url)) continue;
+
+            // Added logic to skip homepages and prioritize articles
+            if (isHomepage(url)) {
+                continue;
+            }
+
+            Map<String, Object> hl = (Map<String, Object>) hit.get("highlight");
+            SearchResultDto dto = new SearchResultDto(url, firstOf(hl, src, "title"), extractSnippet(hl, src));
+
+            if (isLikelyArticle(url)) {
+                articleCandidates.add(dto);
+            } else {
+                others.add(dto);
+            }
+            seen.add(url);
+        }
+
+        results.addAll(articleCandidates);
+        for (SearchResultDto dto : others) {
+            if (results.size() >= max) break;
+            results.add(dto);
+        }
+        return results;
+    }
+
+    /**
+     * Doc ids are derived from crawl and url, so re-indexing a page replaces its doc and ranks can be updated in place.
+     */
+    public static String docId(String crawlId, long urlFingerprint) {
+        return crawlId + "-" + Fingerprints.hex(urlFingerprint);
+    }
+
+    public static String docId(UrlSearchDoc doc) {
+        return docId(doc.getCrawlId(), Fingerprints.url64(doc.getUrl()));
+    }
+
+    /**
+     * Index names must be lowercase while crawl ids are not, so the name also carries a hash of the exact id.
+     */
+    public String crawlIndex(String crawlId) {
+        if (!crawlId.matches("[A-Za-z0-9_-]+")) throw new IllegalArgumentException("Invalid crawl id: " + crawlId);
+        return index + "-crawl-" + crawlId.toLowerCase(Locale.ROOT) + "-" + Fingerprints.hex(Fingerprints.url64(crawlId)).substring(0, 8);
+    }
+
+    /**
+     * Name of the index a re-index builds for a crawl; it replaces the crawl's current index in the alias.
+     */
+    public String reindexedCrawlIndex(String crawlId, String timestamp) {
+        return crawlIndex(crawlId) + "-" + timestamp;
+    }
+
+    /**
+     * Drops everything indexed for a crawl: its own index and any built for it by a re-index, plus its docs in
+     * shared indices (the one from before per-crawl indices, or everything when they are off).
+     */
+    public void deleteCrawl(String crawlId) throws IOException {
+        String crawlIndex = crawlIndex(crawlId);
+        liveCrawlIndices.remove(crawlIndex);
+        Set<String> indices = crawlIndices(crawlIndex).keySet();
+        if (!indices.isEmpty()) {
+            try (Response response = client.newCall(newRequest("/" + String.join(",", indices)).delete().build()).execute()) {
+                if (!response.isSuccessful() && response.code() != 404) {
+                    throw new IOException("Failed to delete indices " + indices + ": " + response.code() + " " + bodyOf(response));
+                }
+            }
+        }
+        deleteFromSharedIndices(Collections.singleton(crawlId));
+    }
+
+    // delete by query, but only on alias members that are not some crawl's own index
+    private void deleteFromSharedIndices(Collection<String> crawlIds) throws IOException {
+        List<String> shared = new ArrayList<>();
+        for (String i : aliasIndices(alias)) {
+            if (!i.startsWith(index + "-crawl-")) shared.add(i);
+        }
+        if (shared.isEmpty()) return;
+        String query = "{ \"query\": { \"terms\": { \"crawlId\": " + om.writeValueAsString(crawlIds) + " } } }";
+        Request request = newRequest("/" + String.join(",", shared) + "/_delete_by_query?conflicts=proceed")
+                .post(RequestBody.create(MediaType.parse("application/json"), query))
                 .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful() && response.code() != 404) {
+                throw new IOException("Failed to delete docs of crawls " + crawlIds + ": " + response.code() + " " + bodyOf(response));
+            }
+        }
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
 
+    public boolean isPerCrawlIndex() {
+        return perCrawlIndex;
+    }
+
+    /**
+     * Creates an index with the mapping from elasticsearch/index-mapping.json.
+     */
+    public void createIndex(String name) throws IOException {
+        String mapping = StreamUtils.copyToString(new ClassPathResource("elasticsearch/index-mapping.json").getInputStream(), StandardCharsets.UTF_8);
+        Request request = newRequest("/" + name)
+                .put(RequestBody.create(MediaType.parse("application/json"), mapping))
+                .build();
         try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful()) {
-                logger.error("Search failed: {}", response.code());
-                return results;
+                throw new IOException("Failed to create index " + name + ": " + response.code() + " " + bodyOf(response));
             }
+        }
+    }
 
-            String resp = response.body().string();
-            Map<String, Object> map = om.readValue(resp, Map.class);
-            Map<String, Object> hitsMap = (Map<String, Object>) map.get("hits");
-            List<Map<String, Object>> hits = hitsMap == null ? null : (List<Map<String, Object>>) hitsMap.get("hits");
-            if (hits == null) return results;
-
-            Set<String> seen = new LinkedHashSet<>();
-            List<SearchResultDto> articleCandidates = new ArrayList<>();
-            List<SearchResultDto> others = new ArrayList<>();
-
-            for (Map<String, Object> hit : hits) {
-                Map<String, Object> src = (Map<String, Object>) hit.get("_source");
-                if (src == null) continue;
-                String url = (String) src.get("url");
-                if (url == null) continue;
-                if (seen.contains(url)) continue;
-
-                // Added logic to skip homepages and prioritize articles
-                if (isHomepage(url)) {
-                    continue;
+    public boolean indexExists(String name) throws IOException {
+        try (Response response = client.newCall(newRequest("/" + name).head().build()).execute()) {
+            return response.isSuccessful();
+        }
+    }
+
+    /**
+     * Writes the docs with one _bulk request, each to its crawl's index. Returns the HTTP status of every item,
+     * in the order of docs, so callers can tell retryable rejections (429, 5xx) from permanent ones;
+     * throws if the request itself failed.
+     */
+    public int[] bulkIndex(List<UrlSearchDoc> docs) throws IOException {
+        if (docs.isEmpty()) return new int[0];
+        ByteArrayBuilder ndjson = new ByteArrayBuilder(docs.size() * 4096);
+        long now = System.currentTimeMillis();
+        for (UrlSearchDoc doc : docs) {
+            appendIndexAction(ndjson, writeTarget(doc.getCrawlId()), doc.withIndexedAt(now));
+        }
+        return bulkStatuses(ndjson.toByteArray());
+    }
+
+    /**
+     * Writes the docs with one _bulk request. Returns the number of docs ES rejected;
+     * throws if the request itself failed.
+     */
+    public int bulkIndex(String targetIndex, List<UrlSearchDoc> docs) throws IOException {
+        if (docs.isEmpty()) return 0;
+        ByteArrayBuilder ndjson = new ByteArrayBuilder(docs.size() * 4096);
+        for (UrlSearchDoc doc : docs) {
+            appendIndexAction(ndjson, targetIndex, doc);
+        }
+        return failedCount(bulkStatuses(ndjson.toByteArray()));
+    }
+
+    // action line and doc, the doc streamed straight into the body rather than through a String
+    private void appendIndexAction(ByteArrayBuilder ndjson, String index, UrlSearchDoc doc) throws IOException {
+        String action = "{\"index\":{\"_index\":\"" + escapeJson(index) + "\",\"_id\":\"" + escapeJson(docId(doc)) + "\"}}\n";
+        ndjson.write(action.getBytes(StandardCharsets.UTF_8));
+        UrlSearchDocCodec.write(doc, ndjson);
+        ndjson.append('\n');
+    }
+
+    /**
+     * Partial updates by doc id with one _bulk request. Returns the number of updates ES rejected,
+     * which includes ids that have no doc (yet).
+     */
+    public int bulkUpdate(String crawlId, Map<String, Map<String, Object>> partialDocs) throws IOException {
+        if (partialDocs.isEmpty()) return 0;
+        StringBuilder ndjson = new StringBuilder();
+        String action = "{\"update\":{\"_index\":\"" + escapeJson(writeTarget(crawlId)) + "\",\"_id\":\"";
+        for (Map.Entry<String, Map<String, Object>> e : partialDocs.entrySet()) {
+            ndjson.append(action).append(escapeJson(e.getKey())).append("\"}}\n")
+                    .append("{\"doc\":").append(om.writeValueAsString(e.getValue())).append("}\n");
+        }
+        return bulk(ndjson);
+    }
+
+    private int bulk(StringBuilder ndjson) throws IOException {
+        return failedCount(bulkStatuses(ndjson.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static int failedCount(int[] statuses) {
+        int failed = 0;
+        for (int status : statuses) {
+            if (status >= 300) failed++;
+        }
+        return failed;
+    }
+
+    private int[] bulkStatuses(byte[] ndjson) throws IOException {
+        Request request = newRequest("/_bulk")
+                .post(RequestBody.create(MediaType.parse("application/x-ndjson"), ndjson))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Bulk request failed: " + response.code() + " " + response.message());
+            }
+            Map<String, Object> map = om.readValue(response.body().byteStream(), Map.class);
+            List<Map<String, Object>> items = (List<Map<String, Object>>) map.get("items");
+            int[] statuses = new int[items.size()];
+            for (int i = 0; i < statuses.length; i++) {
+                Map<String, Object> result = (Map<String, Object>) items.get(i).values().iterator().next();
+                Object status = result.get("status");
+                statuses[i] = status instanceof Number ? ((Number) status).intValue() : result.get("error") != null ? 500 : 200;
+            }
+            return statuses;
+        }
+    }
+
+    /**
+     * Streams the _source of every doc in the index, one scroll page at a time.
+     */
+    public void scroll(String sourceIndex, int batchSize, Consumer<List<Map<String, Object>>> consumer) throws IOException {
+        scroll(sourceIndex, batchSize, null, consumer);
+    }
+
+    /**
+     * Same, reading only the given _source fields (all of them when null).
+     */
+    public void scroll(String sourceIndex, int batchSize, List<String> sourceFields, Consumer<List<Map<String, Object>>> consumer) throws IOException {
+        scroll(sourceIndex, batchSize, sourceFields, null, consumer);
+    }
+
+    /**
+     * Same, only the docs matching query (a query clause in JSON, all docs when null).
+     */
+    public void scroll(String sourceIndex, int batchSize, List<String> sourceFields, String query, Consumer<List<Map<String, Object>>> consumer) throws IOException {
+        String source = sourceFields == null ? "" : ", \"_source\": " + om.writeValueAsString(sourceFields);
+        String filter = query == null ? "" : ", \"query\": " + query;
+        String requestBody = "{ \"size\": " + batchSize + ", \"sort\": [\"_doc\"]" + source + filter + " }";
+        Request request = newRequest("/" + sourceIndex + "/_search?scroll=2m")
+                .post(RequestBody.create(MediaType.parse("application/json"), requestBody))
+                .build();
+        String scrollId = null;
+        try {
+            while (true) {
+                Map<String, Object> map;
+                try (Response response = client.newCall(request).execute()) {
+                    if (!response.isSuccessful()) {
+                        throw new IOException("Scroll failed on " + sourceIndex + ": " + response.code() + " " + bodyOf(response));
+                    }
+                    map = om.readValue(response.body().byteStream(), Map.class);
+                }
+                scrollId = (String) map.get("_scroll_id");
+                Map<String, Object> hitsMap = (Map<String, Object>) map.get("hits");
+                List<Map<String, Object>> hits = hitsMap == null ? null : (List<Map<String, Object>>) hitsMap.get("hits");
+                if (hits == null || hits.isEmpty()) break;
+                List<Map<String, Object>> sources = new ArrayList<>(hits.size());
+                for (Map<String, Object> hit : hits) {
+                    Map<String, Object> src = (Map<String, Object>) hit.get("_source");
+                    if (src != null) sources.add(src);
+                }
+                consumer.accept(sources);
+                String next = "{ \"scroll\": \"2m\", \"scroll_id\": \"" + escapeJson(scrollId) + "\" }";
+                request = newRequest("/_search/scroll")
+                        .post(RequestBody.create(MediaType.parse("application/json"), next))
+                        .build();
+            }
+        } finally {
+            if (scrollId != null) {
+                String clear = "{ \"scroll_id\": \"" + escapeJson(scrollId) + "\" }";
+                try (Response ignored = client.newCall(newRequest("/_search/scroll")
+                        .delete(RequestBody.create(MediaType.parse("application/json"), clear)).build()).execute()) {
+                    // best effort, the scroll context expires anyway
                 }
+            }
+        }
+    }
+
+    /**
+     * Indices the alias currently points at (empty if the alias does not exist).
+     */
+    public Set<String> aliasIndices(String aliasName) throws IOException {
+        try (Response response = client.newCall(newRequest("/_alias/" + aliasName).get().build()).execute()) {
+            if (response.code() == 404) return Collections.emptySet();
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed reading alias " + aliasName + ": " + response.code());
+            }
+            Map<String, Object> map = om.readValue(response.body().byteStream(), Map.class);
+            return new LinkedHashSet<>(map.keySet());
+        }
+    }
+
+    /**
+     * Atomically points the alias at newIndex only (one _aliases call), and makes it the write index.
+     * Returns the indices the alias pointed at before.
+     */
+    public Set<String> swapAlias(String aliasName, String newIndex) throws IOException {
+        Set<String> previous = aliasIndices(aliasName);
+        StringBuilder actions = new StringBuilder("{ \"actions\": [");
+        for (String old : previous) {
+            if (old.equals(newIndex)) continue;
+            actions.append("{ \"remove\": { \"index\": \"").append(escapeJson(old))
+                    .append("\", \"alias\": \"").append(escapeJson(aliasName)).append("\" } },");
+        }
+        actions.append("{ \"add\": { \"index\": \"").append(escapeJson(newIndex))
+                .append("\", \"alias\": \"").append(escapeJson(aliasName)).append("\", \"is_write_index\": true } }");
+        actions.append("] }");
+        Request request = newRequest("/_aliases")
+                .post(RequestBody.create(MediaType.parse("application/json"), actions.toString()))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Alias swap to " + newIndex + " failed: " + response.code() + " " + bodyOf(response));
+            }
+        }
+        if (aliasName.equals(alias)) {
+            aliasReady.set(true);
+            // crawl indices just left the alias; the next write to each puts it back
+            liveCrawlIndices.clear();
+        }
+        return previous;
+    }
+
+    /**
+     * Atomically (one _aliases call) points the alias at the given index of each crawl instead of the ones it read
+     * that crawl from before; other crawls are left alone. The crawls' docs in shared indices are deleted after,
+     * so none shows up twice. Returns the indices taken out of the alias.
+     */
+    public Set<String> swapCrawlIndices(Map<String, String> newIndexByCrawl) throws IOException {
+        if (newIndexByCrawl.isEmpty()) return Collections.emptySet();
+        Set<String> previous = new LinkedHashSet<>();
+        List<String> actions = new ArrayList<>();
+        for (Map.Entry<String, String> e : newIndexByCrawl.entrySet()) {
+            for (Map.Entry<String, Boolean> current : crawlIndices(crawlIndex(e.getKey())).entrySet()) {
+                if (!current.getValue() || current.getKey().equals(e.getValue())) continue;
+                previous.add(current.getKey());
+                actions.add("{ \"remove\": { \"index\": \"" + escapeJson(current.getKey()) + "\", \"alias\": \"" + escapeJson(alias) + "\" } }");
+            }
+            actions.add("{ \"add\": { \"index\": \"" + escapeJson(e.getValue()) + "\", \"alias\": \"" + escapeJson(alias) + "\" } }");
+        }
+        Request request = newRequest("/_aliases")
+                .post(RequestBody.create(MediaType.parse("application/json"), "{ \"actions\": [" + String.join(",", actions) + "] }"))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Alias swap to " + newIndexByCrawl.values() + " failed: " + response.code() + " " + bodyOf(response));
+            }
+        }
+        for (String crawlId : newIndexByCrawl.keySet()) {
+            liveCrawlIndices.remove(crawlIndex(crawlId));
+        }
+        deleteFromSharedIndices(newIndexByCrawl.keySet());
+        return previous;
+    }
 
-                String snippet = extractSnippet(hit);
-                SearchResultDto dto = new SearchResultDto(url, snippet);
+    /**
+     * Concrete indices of a crawl, its own and the ones re-indexes built for it, in name (so age) order, each with
+     * whether the alias points at it.
+     */
+    private Map<String, Boolean> crawlIndices(String crawlIndex) throws IOException {
+        try (Response response = client.newCall(newRequest("/" + crawlIndex + "*/_alias").get().build()).execute()) {
+            if (response.code() == 404) return Collections.emptyMap();
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed listing indices of " + crawlIndex + ": " + response.code() + " " + bodyOf(response));
+            }
+            Map<String, Map<String, Object>> map = om.readValue(response.body().byteStream(), Map.class);
+            Map<String, Boolean> res = new TreeMap<>();
+            for (Map.Entry<String, Map<String, Object>> e : map.entrySet()) {
+                String name = e.getKey();
+                // the wildcard also matches crawls whose index name merely starts with this one
+                if (!name.equals(crawlIndex) && !(name.startsWith(crawlIndex + "-") && name.substring(crawlIndex.length() + 1).matches("\\d+"))) continue;
+                Map<String, Object> aliases = (Map<String, Object>) e.getValue().get("aliases");
+                res.put(name, aliases != null && aliases.containsKey(alias));
+            }
+            return res;
+        }
+    }
+
+    // the concrete index the alias reads the crawl from, null if it has none
+    private String liveCrawlIndex(String crawlIndex) throws IOException {
+        long now = System.currentTimeMillis();
+        if (now - liveCrawlIndicesLoadedAt > CRAWL_INDEX_CACHE_MILLIS) {
+            liveCrawlIndices.clear();
+            liveCrawlIndicesLoadedAt = now;
+        }
+        String live = liveCrawlIndices.get(crawlIndex);
+        if (live != null) return live;
+        for (Map.Entry<String, Boolean> e : crawlIndices(crawlIndex).entrySet()) {
+            if (e.getValue()) live = e.getKey();
+        }
+        if (live != null) liveCrawlIndices.put(crawlIndex, live);
+        return live;
+    }
+
+    /**
+     * The alias if it is in place, otherwise the plain index.
+     * The first call points the alias at the configured index, creating that index if needed.
+     */
+    private String target() {
+        if (aliasReady.get()) return alias;
+        try {
+            if (aliasIndices(alias).isEmpty()) {
+                if (!indexExists(index)) createIndex(index);
+                swapAlias(alias, index);
+            }
+            aliasReady.set(true);
+            return alias;
+        } catch (IOException e) {
+            logger.warn("Alias {} not available, using index {}: {}", alias, index, e.getMessage());
+            return index;
+        }
+    }
 
-                if (isLikelyArticle(url)) {
-                    articleCandidates.add(dto);
-                } else {
-                    others.add(dto);
+    /**
+     * Where docs of a crawl are written: the index the alias reads it from when per-crawl indices are on, its own
+     * index created on the first write.
+     */
+    private String writeTarget(String crawlId) throws IOException {
+        if (!perCrawlIndex || crawlId == null) return target();
+        String crawlIndex = crawlIndex(crawlId);
+        String live = liveCrawlIndex(crawlIndex);
+        if (live != null) return live;
+        target();
+        ensureCrawlTemplate();
+        if (indexExists(crawlIndex)) {
+            addToAlias(crawlIndex);
+        } else {
+            String body = "{ \"aliases\": { \"" + escapeJson(alias) + "\": {} } }";
+            Request request = newRequest("/" + crawlIndex)
+                    .put(RequestBody.create(MediaType.parse("application/json"), body))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                // another worker may have created it first
+                if (!response.isSuccessful() && !bodyOf(response).contains("resource_already_exists_exception")) {
+                    throw new IOException("Failed to create index " + crawlIndex + ": " + response.code());
                 }
-                seen.add(url);
             }
+        }
+        liveCrawlIndices.put(crawlIndex, crawlIndex);
+        return crawlIndex;
+    }
+
+    // mapping of elasticsearch/index-mapping.json; not the alias, since an index a re-index builds must stay out of
+    // it until the swap
+    private void ensureCrawlTemplate() throws IOException {
+        if (templateReady.get()) return;
+        Map<String, Object> mapping = om.readValue(new ClassPathResource("elasticsearch/index-mapping.json").getInputStream(), Map.class);
+        Map<String, Object> template = new LinkedHashMap<>();
+        template.put("mappings", mapping.get("mappings"));
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("index_patterns", Collections.singletonList(index + "-crawl-*"));
+        body.put("priority", 100);
+        body.put("template", template);
+        Request request = newRequest("/_index_template/" + index + "-crawl")
+                .put(RequestBody.create(MediaType.parse("application/json"), om.writeValueAsString(body)))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed to put index template: " + response.code() + " " + bodyOf(response));
+            }
+        }
+        templateReady.set(true);
+    }
 
-            results.addAll(articleCandidates);
-            for (SearchResultDto dto : others) {
-                if (results.size() >= 50) break;
-                results.add(dto);
+    private void addToAlias(String indexName) throws IOException {
+        String actions = "{ \"actions\": [ { \"add\": { \"index\": \"" + escapeJson(indexName)
+                + "\", \"alias\": \"" + escapeJson(alias) + "\" } } ] }";
+        Request request = newRequest("/_aliases")
+                .post(RequestBody.create(MediaType.parse("application/json"), actions))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("Failed adding " + indexName + " to alias " + alias + ": " + response.code() + " " + bodyOf(response));
             }
         }
-        return results;
+    }
+
+    private Request.Builder newRequest(String path) {
+        String auth = new String(Base64.encodeBase64(API_KEY.getBytes()));
+        return new Request.Builder()
+                .url(ELASTIC_SEARCH_URL + path)
+                .addHeader("Content-Type", "application/json")
+                .addHeader(HttpHeaders.AUTHORIZATION, "Basic " + auth);
+    }
+
+    private static String bodyOf(Response response) {
+        try {
+            return response.body() != null ? response.body().string() : "";
+        } catch (IOException e) {
+            return "";
+        }
     }
 
     private boolean isHomepage(String url) {
@@ -167,21 +835,29 @@ public class ElasticSearch {
         }
     }
 
-    private String extractSnippet(Map<String, Object> hit) {
-        Map<String, Object> hl = (Map<String, Object>) hit.get("highlight");
-        if (hl != null) {
-            // Prefer highlighting from the title
-            Object titleHighlight = hl.get("title");
-            if (titleHighlight instanceof List && !((List) titleHighlight).isEmpty()) {
-                return (String) ((List) titleHighlight).get(0);
-            }
-            // Fallback to content highlighting
-            Object contentHighlight = hl.get("content");
-            if (contentHighlight instanceof List && !((List) contentHighlight).isEmpty()) {
-                return (String) ((List) contentHighlight).get(0);
-            }
-        }
-        return "";
+    // the highlighted lead snippet, else a highlighted description fragment when the match is only there
+    private String extractSnippet(Map<String, Object> hl, Map<String, Object> src) {
+        String snippet = highlighted(hl, "snippet");
+        if (snippet != null && snippet.contains("<em>")) return snippet;
+        String description = highlighted(hl, "description");
+        if (description != null) return description;
+        if (snippet != null) return snippet;
+        Object stored = src.get("snippet");
+        return stored instanceof String ? (String) stored : "";
+    }
+
+    private String firstOf(Map<String, Object> hl, Map<String, Object> src, String field) {
+        String h = highlighted(hl, field);
+        if (h != null) return h;
+        Object stored = src.get(field);
+        return stored instanceof String ? (String) stored : "";
+    }
+
+    private String highlighted(Map<String, Object> hl, String field) {
+        if (hl == null) return null;
+        Object fragments = hl.get(field);
+        if (fragments instanceof List && !((List) fragments).isEmpty()) return (String) ((List) fragments).get(0);
+        return null;
     }
 
     private String escapeJson(String s) {
@@ -0,0 +1,34 @@
+package com.handson.searchengine.util;
+
+import java.nio.charset.StandardCharsets;
+
+public class Fingerprints {
+
+    private static final long FNV64_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV64_PRIME = 0x100000001b3L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes of the url, with a final avalanche step
+     * so that the high bits are usable for sharding.
+     */
+    public static long url64(String url) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        long h = FNV64_OFFSET;
+        for (byte b : bytes) {
+            h ^= (b & 0xFF);
+            h *= FNV64_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public static String hex(long fingerprint) {
+        String s = Long.toHexString(fingerprint);
+        return s.length() == 16 ? s : "0000000000000000".substring(s.length()) + s;
+    }
+}
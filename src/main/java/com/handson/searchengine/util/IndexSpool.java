@@ -0,0 +1,283 @@
+package com.handson.searchengine.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable FIFO of documents waiting for Elasticsearch.
+ * Records ([len:int][json]) are appended to numbered segment files; a checkpoint file (spool.pos) remembers how
+ * far replay got, and fully replayed segments are deleted. Total size is capped by indexer.spool.max-bytes.
+ * Appends are group committed: they reach the OS on append and are forced to disk every indexer.spool.sync-millis,
+ * so a process crash loses nothing and a power loss at most that window.
+ */
+@Component
+public class IndexSpool {
+    private static final Logger logger = LoggerFactory.getLogger(IndexSpool.class);
+    private static final String SEGMENT_SUFFIX = ".spool";
+
+    @Value("${indexer.spool.dir:data/spool}")
+    private String dir;
+
+    @Value("${indexer.spool.max-bytes:1073741824}")
+    private long maxBytes;
+
+    @Value("${indexer.spool.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    private Path root;
+    private final TreeSet<Integer> segments = new TreeSet<>();
+    private FileChannel writer;
+    private int writeSegment;
+    // appended since the last force
+    private boolean dirty;
+    // kept open while replay reads through a segment
+    private FileChannel reader;
+    private int readerSegment = -1;
+    // replay position: everything before (readSegment, readOffset) has reached ES
+    private int readSegment;
+    private long readOffset;
+    // end of each record of the last peek, {segment, offset}; commit moves the read position to one of them
+    private final List<long[]> peekEnds = new ArrayList<>();
+    private long depth;
+    private long bytes;
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        root = Paths.get(dir);
+        Files.createDirectories(root);
+        try (Stream<Path> s = Files.list(root)) {
+            segments.addAll(s.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SEGMENT_SUFFIX))
+                    .map(n -> Integer.parseInt(n.substring(0, n.length() - SEGMENT_SUFFIX.length())))
+                    .collect(Collectors.toList()));
+        }
+        Path pos = root.resolve("spool.pos");
+        if (Files.exists(pos)) {
+            String[] parts = new String(Files.readAllBytes(pos), StandardCharsets.US_ASCII).trim().split(" ");
+            readSegment = Integer.parseInt(parts[0]);
+            readOffset = Long.parseLong(parts[1]);
+        } else {
+            readSegment = segments.isEmpty() ? 0 : segments.first();
+        }
+        segments.headSet(readSegment).forEach(this::deleteSegment);
+        segments.removeIf(n -> n < readSegment);
+        writeSegment = segments.isEmpty() ? readSegment : segments.last();
+        truncateTornTail();
+        openWriter();
+        // count what is still pending
+        int[] seg = {readSegment};
+        long[] off = {readOffset};
+        while (readNext(seg, off) != null) {
+            depth++;
+        }
+        for (int n : segments) {
+            bytes += Files.size(segmentPath(n));
+        }
+        bytes -= readOffset;
+        if (depth > 0) logger.info("Index spool has {} pending documents ({} bytes)", depth, bytes);
+    }
+
+    /**
+     * Appends a document. Returns false (and keeps nothing) if the spool is at its size cap.
+     */
+    public synchronized boolean append(byte[] json) throws IOException {
+        if (bytes + json.length + 4 > maxBytes) return false;
+        if (writer.size() > 0 && writer.size() + json.length + 4 > segmentBytes) {
+            writer.force(false);
+            dirty = false;
+            writer.close();
+            writeSegment++;
+            openWriter();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(4 + json.length);
+        buf.putInt(json.length).put(json).flip();
+        while (buf.hasRemaining()) {
+            writer.write(buf);
+        }
+        dirty = true;
+        depth++;
+        bytes += 4 + json.length;
+        return true;
+    }
+
+    /**
+     * Forces the appends since the last sync to disk.
+     */
+    @Scheduled(fixedDelayString = "${indexer.spool.sync-millis:200}")
+    public synchronized void sync() throws IOException {
+        if (!dirty || writer == null) return;
+        writer.force(false);
+        dirty = false;
+    }
+
+    /**
+     * Oldest pending documents, in order. They stay in the spool until commit() is called.
+     */
+    public synchronized List<byte[]> peek(int max) throws IOException {
+        List<byte[]> res = new ArrayList<>();
+        peekEnds.clear();
+        int[] seg = {readSegment};
+        long[] off = {readOffset};
+        while (res.size() < max) {
+            byte[] rec = readNext(seg, off);
+            if (rec == null) break;
+            res.add(rec);
+            peekEnds.add(new long[]{seg[0], off[0]});
+        }
+        return res;
+    }
+
+    /**
+     * Marks the first count documents returned by the last peek as replayed; the rest stay at the head of the spool.
+     */
+    public synchronized void commit(int count) throws IOException {
+        count = Math.min(count, peekEnds.size());
+        if (count <= 0) return;
+        long[] end = peekEnds.get(count - 1);
+        int peekSegment = (int) end[0];
+        long peekOffset = end[1];
+        peekEnds.clear();
+        long consumed = 0;
+        for (int n = readSegment; n < peekSegment; n++) {
+            if (segments.contains(n)) consumed += Files.size(segmentPath(n));
+        }
+        consumed += peekOffset - readOffset;
+        for (int n : new ArrayList<>(segments.headSet(peekSegment))) {
+            deleteSegment(n);
+            segments.remove(n);
+        }
+        readSegment = peekSegment;
+        readOffset = peekOffset;
+        depth = Math.max(0, depth - count);
+        bytes = Math.max(0, bytes - consumed);
+        Files.write(root.resolve("spool.pos"), (readSegment + " " + readOffset).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public synchronized long getDepth() {
+        return depth;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return depth == 0;
+    }
+
+    // reads the record at (seg, off) and advances them; null at the end of the spool
+    private byte[] readNext(int[] seg, long[] off) throws IOException {
+        while (true) {
+            if (!segments.contains(seg[0])) return null;
+            FileChannel ch = reader(seg[0]);
+            long size = ch.size();
+            if (off[0] + 4 <= size) {
+                ByteBuffer len = ByteBuffer.allocate(4);
+                ch.read(len, off[0]);
+                int n = len.flip().getInt();
+                if (n >= 0 && n <= size - off[0] - 4) {
+                    ByteBuffer rec = ByteBuffer.allocate(n);
+                    while (rec.hasRemaining()) {
+                        if (ch.read(rec, off[0] + 4 + rec.position()) < 0) break;
+                    }
+                    off[0] += 4 + n;
+                    return rec.array();
+                }
+            }
+            Integer next = segments.higher(seg[0]);
+            if (next == null) return null;
+            seg[0] = next;
+            off[0] = 0;
+        }
+    }
+
+    private FileChannel reader(int segment) throws IOException {
+        if (reader != null && readerSegment == segment) return reader;
+        closeReader();
+        reader = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+        readerSegment = segment;
+        return reader;
+    }
+
+    private void closeReader() {
+        if (reader == null) return;
+        try {
+            reader.close();
+        } catch (IOException e) {
+            logger.warn("Failed closing spool segment {}: {}", readerSegment, e.getMessage());
+        }
+        reader = null;
+        readerSegment = -1;
+    }
+
+    // a crash mid-append leaves a partial record at the end of the writer segment; cut it off so new appends
+    // start on a record boundary instead of being read as part of the torn one
+    private void truncateTornTail() throws IOException {
+        Path p = segmentPath(writeSegment);
+        if (!Files.exists(p)) return;
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long end = 0;
+            ByteBuffer len = ByteBuffer.allocate(4);
+            while (end + 4 <= size) {
+                len.clear();
+                while (len.hasRemaining()) {
+                    if (ch.read(len, end + len.position()) < 0) break;
+                }
+                int n = len.flip().getInt();
+                if (n < 0 || n > size - end - 4) break;
+                end += 4 + n;
+            }
+            if (end < size) {
+                logger.warn("Truncating torn spool segment {} from {} to {} bytes", writeSegment, size, end);
+                ch.truncate(end);
+                ch.force(true);
+            }
+            if (writeSegment == readSegment && readOffset > end) readOffset = end;
+        }
+    }
+
+    private void openWriter() throws IOException {
+        writer = FileChannel.open(segmentPath(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segments.add(writeSegment);
+    }
+
+    private Path segmentPath(int n) {
+        return root.resolve(String.format("%08d", n) + SEGMENT_SUFFIX);
+    }
+
+    private void deleteSegment(int n) {
+        if (n == writeSegment && writer != null) return;
+        if (n == readerSegment) closeReader();
+        try {
+            Files.deleteIfExists(segmentPath(n));
+        } catch (IOException e) {
+            logger.warn("Failed deleting spool segment {}: {}", n, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        closeReader();
+        if (writer != null) {
+            sync();
+            writer.close();
+        }
+    }
+}
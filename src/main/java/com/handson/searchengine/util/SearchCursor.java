@@ -0,0 +1,77 @@
+package com.handson.searchengine.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Where the next page of a search starts: the sort values of the last hit of the page before and the point in
+ * time it was read from (null when ES has none). Handed to clients as an opaque url-safe token, bound to the
+ * query and crawl it was made for.
+ */
+public final class SearchCursor {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final int VERSION = 1;
+
+    private final String pitId;
+    private final List<Object> searchAfter;
+
+    public SearchCursor(String pitId, List<Object> searchAfter) {
+        this.pitId = pitId;
+        this.searchAfter = searchAfter;
+    }
+
+    public String getPitId() {
+        return pitId;
+    }
+
+    public List<Object> getSearchAfter() {
+        return searchAfter;
+    }
+
+    public String encode(String query, String crawlId) {
+        ObjectNode node = JSON.createObjectNode();
+        node.put("v", VERSION);
+        node.put("q", bindingOf(query, crawlId));
+        if (pitId != null) node.put("p", pitId);
+        node.set("a", JSON.valueToTree(searchAfter));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(JSON.writeValueAsBytes(node));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * IllegalArgumentException if the token is not a cursor or was made for another query or crawl.
+     */
+    @SuppressWarnings("unchecked")
+    public static SearchCursor decode(String token, String query, String crawlId) {
+        JsonNode node;
+        try {
+            node = JSON.readTree(Base64.getUrlDecoder().decode(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (node == null || node.path("v").asInt() != VERSION || !node.path("a").isArray()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (node.path("q").asInt() != bindingOf(query, crawlId)) {
+            throw new IllegalArgumentException("Cursor belongs to another search");
+        }
+        List<Object> after = JSON.convertValue(node.get("a"), List.class);
+        String pit = node.hasNonNull("p") ? node.get("p").asText() : null;
+        return new SearchCursor(pit, after != null ? after : Collections.emptyList());
+    }
+
+    private static int bindingOf(String query, String crawlId) {
+        return Objects.hash(query, crawlId == null || crawlId.isEmpty() ? null : crawlId);
+    }
+}
@@ -0,0 +1,66 @@
+package com.handson.searchengine.util;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Logs how long the instance took to start and how much memory it holds once ready, so a worker-profile instance
+ * can be compared with a full one. Also published as app.startup.millis and process.memory.rss.
+ */
+@Component
+@Lazy(false)
+public class StartupReport implements ApplicationListener<ApplicationReadyEvent> {
+    private static final Logger logger = LoggerFactory.getLogger(StartupReport.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private Environment env;
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        // JVM uptime includes class loading before Spring starts, which is what autoscaling waits for too
+        long startupMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        Runtime rt = Runtime.getRuntime();
+        long heapUsed = rt.totalMemory() - rt.freeMemory();
+        long rss = rssBytes();
+        Gauge.builder("app.startup.millis", () -> startupMillis).register(meterRegistry);
+        Gauge.builder("process.memory.rss", StartupReport::rssBytes).baseUnit("bytes").register(meterRegistry);
+        logger.info("Ready in {} ms, profiles={}, beans={}, classes={}, heap used={} MB, rss={} MB",
+                startupMillis, String.join(",", env.getActiveProfiles()),
+                event.getApplicationContext().getBeanDefinitionCount(),
+                ManagementFactory.getClassLoadingMXBean().getLoadedClassCount(),
+                heapUsed >> 20, rss < 0 ? "n/a" : String.valueOf(rss >> 20));
+    }
+
+    // resident set size from /proc (Linux only), -1 elsewhere
+    static long rssBytes() {
+        try {
+            List<String> lines = Files.readAllLines(Paths.get("/proc/self/status"));
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] parts = line.substring(6).trim().split("\\s+");
+                    return Long.parseLong(parts[0]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // not Linux
+        }
+        return -1;
+    }
+}
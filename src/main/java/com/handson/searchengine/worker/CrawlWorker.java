@@ -0,0 +1,25 @@
+package com.handson.searchengine.worker;
+
+import com.handson.searchengine.SearchengineApplication;
+import org.springframework.boot.SpringApplication;
+
+/**
+ * Entry point of a crawl-only instance, for scaling crawl workers out independently of the API:
+ * <pre>
+ * java -cp searchengine.jar -Dloader.main=com.handson.searchengine.worker.CrawlWorker \
+ *      org.springframework.boot.loader.PropertiesLauncher
+ * </pre>
+ * Runs with the "worker" profile (application-worker.properties): no web server, and lazy initialization, so only
+ * the Kafka consumer and what it needs (scheduler, crawler, fetch, Redis, archive, indexer) are created.
+ * Crawls are still started and searched through a full instance.
+ */
+public class CrawlWorker {
+
+    public static final String PROFILE = "worker";
+
+    public static void main(String[] args) {
+        SpringApplication app = new SpringApplication(SearchengineApplication.class);
+        app.setAdditionalProfiles(PROFILE);
+        app.run(args);
+    }
+}
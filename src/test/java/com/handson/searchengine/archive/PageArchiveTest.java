@@ -0,0 +1,82 @@
+package com.handson.searchengine.archive;
+
+import com.handson.searchengine.model.ArchivedPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageArchiveTest {
+
+	@TempDir
+	Path dir;
+
+	private PageArchive archive(long segmentMaxBytes) {
+		PageArchive archive = new PageArchive();
+		ReflectionTestUtils.setField(archive, "enabled", true);
+		ReflectionTestUtils.setField(archive, "dir", dir.toString());
+		ReflectionTestUtils.setField(archive, "segmentMaxBytes", segmentMaxBytes);
+		ReflectionTestUtils.setField(archive, "maxOpenWriters", 2);
+		ReflectionTestUtils.setField(archive, "maxMappedSegments", 2);
+		return archive;
+	}
+
+	@Test
+	void appendReadAndScanAcrossSegments() throws Exception {
+		PageArchive archive = archive(512);
+		for (int i = 0; i < 50; i++) {
+			archive.append("abc123", "https://www.example.com/p/" + i, "https://www.example.com", 1, "text/html", "<html><body>page " + i + "</body></html>");
+		}
+		archive.append("abc123", "https://www.example.com/p/7", "https://www.example.com", 2, "text/html", "<html>refetched</html>");
+		archive.append("other", "https://www.example.com/p/7", null, 0, "text/html", "<html>other crawl</html>");
+
+		ArchivedPage refetched = archive.read("abc123", "https://www.example.com/p/7");
+		assertEquals("<html>refetched</html>", refetched.getContent());
+		assertEquals("https://www.example.com", refetched.getBaseUrl());
+		assertEquals(2, refetched.getLevel());
+		assertEquals("<html>other crawl</html>", archive.read("other", "https://www.example.com/p/7").getContent());
+		assertNull(archive.read("abc123", "https://www.example.com/missing"));
+
+		archive.close();
+		List<ArchivedPage> pages = new ArrayList<>();
+		archive(512).forEach("abc123", pages::add);
+		assertEquals(51, pages.size());
+		assertEquals("https://www.example.com/p/0", pages.get(0).getUrl());
+		assertEquals("<html><body>page 49</body></html>", pages.get(49).getContent());
+	}
+
+	@Test
+	void rejectsOverlongUrlWithoutCorruptingTheSegment() throws Exception {
+		PageArchive archive = archive(1 << 20);
+		archive.append("c1", "https://www.example.com/a", null, 0, "text/html", "<html>a</html>");
+		StringBuilder longUrl = new StringBuilder("https://www.example.com/");
+		while (longUrl.length() <= PageArchive.MAX_FIELD_BYTES) longUrl.append("x");
+		assertThrows(IllegalArgumentException.class,
+				() -> archive.append("c1", longUrl.toString(), null, 0, "text/html", "<html>long</html>"));
+		archive.append("c1", "https://www.example.com/b", null, 0, "text/html", "<html>b</html>");
+		List<ArchivedPage> pages = new ArrayList<>();
+		archive.forEach("c1", pages::add);
+		assertEquals(2, pages.size());
+		assertEquals("<html>b</html>", archive.read("c1", "https://www.example.com/b").getContent());
+	}
+
+	@Test
+	void deleteRemovesTheCrawl() throws Exception {
+		PageArchive archive = archive(256);
+		for (int i = 0; i < 20; i++) {
+			archive.append("gone", "https://www.example.com/p/" + i, null, 0, "text/html", "<html>" + i + "</html>");
+		}
+		archive.append("kept", "https://www.example.com/", null, 0, "text/html", "<html>kept</html>");
+		assertNotNull(archive.read("gone", "https://www.example.com/p/3"));
+		archive.delete("gone");
+		assertEquals(java.util.Collections.singletonList("kept"), archive.crawlIds());
+		assertNull(archive.read("gone", "https://www.example.com/p/3"));
+		archive.append("gone", "https://www.example.com/again", null, 0, "text/html", "<html>again</html>");
+		assertEquals("<html>again</html>", archive.read("gone", "https://www.example.com/again").getContent());
+	}
+}
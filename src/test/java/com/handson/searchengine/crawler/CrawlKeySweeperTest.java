@@ -0,0 +1,39 @@
+package com.handson.searchengine.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class CrawlKeySweeperTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void expiresOnceAndForgetsCrawlsPastTheirTtl() {
+		RedisTemplate<String, Object> redis = mock(RedisTemplate.class);
+		CrawlSlots slots = mock(CrawlSlots.class);
+		CrawlKeySweeper sweeper = new CrawlKeySweeper();
+		ReflectionTestUtils.setField(sweeper, "redisTemplate", redis);
+		ReflectionTestUtils.setField(sweeper, "visitedSet", mock(VisitedSet.class));
+		ReflectionTestUtils.setField(sweeper, "contextRegistry", mock(CrawlContextRegistry.class));
+		ReflectionTestUtils.setField(sweeper, "crawlSlots", slots);
+		ReflectionTestUtils.setField(sweeper, "urlBudget", mock(UrlBudget.class));
+		ReflectionTestUtils.setField(sweeper, "ttlAfterStop", 60_000L);
+
+		sweeper.onCrawlEnded("c1");
+		sweeper.onCrawlEnded("c1");
+		sweeper.onCrawlEnded("c2");
+		verify(slots, times(1)).release("c1");
+		verify(redis, times(2)).executePipelined(any(RedisCallback.class));
+
+		long now = System.currentTimeMillis();
+		sweeper.forgetExpired(now);
+		assertEquals(2, sweeper.expiredCount());
+		sweeper.forgetExpired(now + 120_000);
+		assertEquals(0, sweeper.expiredCount());
+	}
+}
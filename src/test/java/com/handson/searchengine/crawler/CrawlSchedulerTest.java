@@ -0,0 +1,120 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlerRecord;
+import com.handson.searchengine.model.CrawlerRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlSchedulerTest {
+
+	@Test
+	void servesCrawlsByWeight() throws Exception {
+		Map<String, CrawlContext> contexts = new HashMap<>();
+		contexts.put("a", context("a", 2, 0));
+		contexts.put("b", context("b", 1, 0));
+		List<String> order = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch done = new CountDownLatch(12);
+		CrawlScheduler scheduler = scheduler(1, contexts, rec -> {
+			order.add(rec.getCrawlId());
+			done.countDown();
+			return 0L;
+		});
+		submit(scheduler, contexts.get("a"), 6);
+		submit(scheduler, contexts.get("b"), 6);
+
+		scheduler.start();
+		try {
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			scheduler.stop();
+		}
+		assertEquals(Arrays.asList("a", "a", "b", "a", "a", "b", "a", "a", "b", "b", "b", "b"), order);
+	}
+
+	@Test
+	void crawlAtItsConcurrencyQuotaDoesNotHoldUpOthers() throws Exception {
+		Map<String, CrawlContext> contexts = new HashMap<>();
+		contexts.put("a", context("a", 1, 1));
+		contexts.put("b", context("b", 1, 0));
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch bDone = new CountDownLatch(3);
+		CountDownLatch allDone = new CountDownLatch(6);
+		AtomicInteger aStarted = new AtomicInteger();
+		CrawlScheduler scheduler = scheduler(4, contexts, rec -> {
+			try {
+				if (rec.getCrawlId().equals("a")) {
+					aStarted.incrementAndGet();
+					release.await();
+				} else {
+					bDone.countDown();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			allDone.countDown();
+			return 0L;
+		});
+		submit(scheduler, contexts.get("a"), 3);
+		submit(scheduler, contexts.get("b"), 3);
+
+		scheduler.start();
+		try {
+			assertTrue(bDone.await(10, TimeUnit.SECONDS));
+			assertEquals(1, aStarted.get());
+
+			release.countDown();
+			assertTrue(allDone.await(10, TimeUnit.SECONDS));
+			assertEquals(3, aStarted.get());
+		} finally {
+			release.countDown();
+			scheduler.stop();
+		}
+	}
+
+	private static CrawlContext context(String crawlId, int weight, int maxConcurrency) {
+		CrawlerRequest request = new CrawlerRequest();
+		request.setUrl("https://" + crawlId + ".example.com/");
+		request.setMaxSeconds(60);
+		request.setMaxUrls(100);
+		request.setWeight(weight);
+		request.setMaxConcurrency(maxConcurrency);
+		return CrawlContext.of(crawlId, request);
+	}
+
+	private static void submit(CrawlScheduler scheduler, CrawlContext ctx, int count) {
+		for (int i = 0; i < count; i++) {
+			scheduler.submit(CrawlerRecord.of(ctx, ctx.getBaseUrl() + i, 1));
+		}
+	}
+
+	private static CrawlScheduler scheduler(int workers, Map<String, CrawlContext> contexts,
+											Function<CrawlerRecord, Long> crawl) {
+		CrawlScheduler scheduler = new CrawlScheduler();
+		ReflectionTestUtils.setField(scheduler, "crawler", new Crawler() {
+			@Override
+			public long crawlOneRecord(String crawlId, CrawlerRecord rec) {
+				return crawl.apply(rec);
+			}
+		});
+		ReflectionTestUtils.setField(scheduler, "contextRegistry", new CrawlContextRegistry() {
+			@Override
+			public CrawlContext get(String crawlId) {
+				return contexts.get(crawlId);
+			}
+		});
+		ReflectionTestUtils.setField(scheduler, "workers", workers);
+		ReflectionTestUtils.setField(scheduler, "virtualThreads", false);
+		ReflectionTestUtils.setField(scheduler, "maxQueuedPerCrawl", 100);
+		ReflectionTestUtils.setField(scheduler, "drainMillis", 1000L);
+		return scheduler;
+	}
+}
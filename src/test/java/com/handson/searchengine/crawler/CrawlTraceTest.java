@@ -0,0 +1,129 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.TraceEvent;
+import com.handson.searchengine.model.TraceEventType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlTraceTest {
+
+	// the script calls a flush makes: stream key, then its ARGV
+	private final List<List<Object>> appends = new ArrayList<>();
+
+	private final RedisTemplate<String, Object> redis = new RedisTemplate<String, Object>() {
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+			List<Object> call = new ArrayList<>();
+			call.add(keys.get(0));
+			call.addAll(Arrays.asList(args));
+			appends.add(call);
+			return (T) Long.valueOf((args.length - 2) / 7);
+		}
+	};
+
+	private CrawlTrace trace(double sampleRate, int bufferSize) {
+		CrawlTrace t = new CrawlTrace();
+		ReflectionTestUtils.setField(t, "redisTemplate", redis);
+		ReflectionTestUtils.setField(t, "enabled", true);
+		ReflectionTestUtils.setField(t, "sampleRate", sampleRate);
+		ReflectionTestUtils.setField(t, "eventsPerCrawl", 2048);
+		ReflectionTestUtils.setField(t, "bufferSize", bufferSize);
+		ReflectionTestUtils.setField(t, "ttlMillis", 60_000L);
+		t.init();
+		return t;
+	}
+
+	@Test
+	void flushWritesEachCrawlsEventsInOrder() {
+		CrawlTrace t = trace(1.0, 100);
+		t.crawl("c1", TraceEventType.crawlStarted, "https://a.org/");
+		t.page("c2", "https://b.org/", TraceEventType.fetchStart);
+		t.page("c1", "https://a.org/", TraceEventType.fetchEnd, 1200, 0, 35, "text/html");
+		t.flush();
+
+		assertEquals(2, appends.size());
+		List<Object> c1 = appends.get(0);
+		assertEquals("c1.trace", c1.get(0));
+		assertEquals("2048", c1.get(1));
+		assertEquals(3 + 2 * 7, c1.size());
+		assertEquals("crawlStarted", c1.get(4));
+		assertEquals("", c1.get(5));
+		assertEquals("fetchEnd", c1.get(11));
+		assertEquals("https://a.org/", c1.get(12));
+		assertEquals("1200", c1.get(13));
+		assertEquals("text/html", c1.get(16));
+		assertEquals("c2.trace", appends.get(1).get(0));
+
+		appends.clear();
+		t.flush();
+		assertTrue(appends.isEmpty());
+	}
+
+	@Test
+	void dropsEventsWhenTheBufferIsFull() {
+		CrawlTrace t = trace(1.0, 2);
+		for (int i = 0; i < 5; i++) t.page("c1", "https://a.org/" + i, TraceEventType.fetchStart);
+		t.flush();
+		assertEquals(1, appends.size());
+		assertEquals(2 + 2 * 7, appends.get(0).size() - 1);
+	}
+
+	@Test
+	void readsStreamEntries() {
+		Map<Object, Object> fields = new HashMap<>();
+		fields.put("t", "1000");
+		fields.put("type", "linksQueued");
+		fields.put("url", "https://a.org/");
+		fields.put("bytes", "0");
+		fields.put("links", "7");
+		fields.put("millis", "0");
+		fields.put("detail", "");
+		TraceEvent e = CrawlTrace.toEvent("42-0", fields);
+		assertEquals(42, e.getSeq());
+		assertEquals(1000, e.getTimeMillis());
+		assertEquals(TraceEventType.linksQueued, e.getType());
+		assertEquals(7, e.getLinks());
+		assertNull(e.getDetail());
+
+		fields.put("type", "noSuchType");
+		assertNull(CrawlTrace.toEvent("43-0", fields));
+	}
+
+	@Test
+	void tracesOnlySampledUrlsWhenEnabled() {
+		CrawlTrace t = trace(0, 16);
+		assertFalse(t.traces("c1", "https://a.org/"));
+		assertTrue(trace(1.0, 16).traces("c1", "https://a.org/"));
+		CrawlTrace off = trace(1.0, 16);
+		ReflectionTestUtils.setField(off, "enabled", false);
+		assertFalse(off.traces("c1", "https://a.org/"));
+		off.crawl("c1", TraceEventType.crawlStarted, null);
+		off.flush();
+		assertTrue(appends.isEmpty());
+	}
+
+	@Test
+	void samplesWholeUrlsButKeepsCrawlEvents() {
+		CrawlTrace t = trace(0.25, 16);
+		int sampled = 0;
+		for (int i = 0; i < 4000; i++) {
+			String url = "https://a.org/p" + i;
+			if (t.sampled("c1", url)) sampled++;
+			assertEquals(t.sampled("c1", url), t.sampled("c1", url));
+		}
+		assertTrue(sampled > 800 && sampled < 1200, "sampled " + sampled);
+		CrawlTrace none = trace(0, 16);
+		none.page("c1", "https://a.org/", TraceEventType.fetchStart);
+		none.crawl("c1", TraceEventType.crawlStopped, "maxUrls");
+		none.flush();
+		assertEquals(1, appends.size());
+		assertEquals(2 + 7, appends.get(0).size() - 1);
+	}
+}
@@ -0,0 +1,139 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.crawler.HostConcurrencyController.Outcome;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HostConcurrencyControllerTest {
+
+	private static final String HOST = "example.com";
+
+	@Test
+	void fastSuccessRaisesLimitByOneOverLimit() throws Exception {
+		HostConcurrencyController controller = controller();
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.success, 100, 0);
+		assertEquals(2.5, limit(controller), 1e-9);
+
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.success, 100, 0);
+		assertEquals(2.9, limit(controller), 1e-9);
+
+		// slower than the target: no increase
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.success, 5000, 0);
+		assertEquals(2.9, limit(controller), 1e-9);
+	}
+
+	@Test
+	void overloadHalvesLimitDownToMin() throws Exception {
+		HostConcurrencyController controller = controller();
+		ReflectionTestUtils.setField(controller, "initialLimit", 8.0);
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.overload, 100, 0);
+		assertEquals(4.0, limit(controller), 1e-9);
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(controller.acquire(HOST, 0));
+			controller.release(HOST, Outcome.overload, 100, 0);
+		}
+		assertEquals(1.0, limit(controller), 1e-9);
+
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.error, 100, 0);
+		assertEquals(1.0, limit(controller), 1e-9);
+	}
+
+	@Test
+	void fullHostWaitsForRelease() throws Exception {
+		HostConcurrencyController controller = controller();
+		assertTrue(controller.acquire(HOST, 0));
+		assertTrue(controller.acquire(HOST, 0));
+		assertFalse(controller.acquire(HOST, 20));
+
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException ignore) {
+			}
+			controller.release(HOST, Outcome.error, 100, 0);
+		});
+		releaser.start();
+		assertTrue(controller.acquire(HOST, 5000));
+		releaser.join();
+	}
+
+	@Test
+	void retryAfterBlocksHostUntilItEnds() throws Exception {
+		HostConcurrencyController controller = controller();
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.overload, 100, 200);
+
+		assertFalse(controller.acquire(HOST, 20));
+		assertTrue(controller.availableInMillis(HOST) > 100);
+
+		long start = System.currentTimeMillis();
+		assertTrue(controller.acquire(HOST, 5000));
+		assertTrue(System.currentTimeMillis() - start >= 100);
+		assertTrue(controller.acquire("other.com", 0));
+	}
+
+	@Test
+	void evictsOnlyIdleHosts() throws Exception {
+		HostConcurrencyController controller = controller();
+		assertTrue(controller.acquire(HOST, 0));
+		assertTrue(controller.acquire("busy.com", 0));
+		controller.release(HOST, Outcome.overload, 100, 0);
+		assertTrue(controller.acquire("blocked.com", 0));
+		controller.release("blocked.com", Outcome.overload, 100, 60_000);
+
+		controller.evictIdle();
+		assertEquals(3, controller.limits().size());
+
+		ReflectionTestUtils.setField(controller, "idleEvictMillis", -1L);
+		controller.evictIdle();
+		assertEquals(2, controller.limits().size());
+		assertFalse(controller.limits().stream().anyMatch(l -> l.getHost().equals(HOST)));
+
+		// a host seen again starts over from the initial limit
+		assertTrue(controller.acquire(HOST, 0));
+		controller.release(HOST, Outcome.error, 100, 0);
+		assertEquals(2.0, controller.limits().stream().filter(l -> l.getHost().equals(HOST)).findFirst().get().getLimit(), 1e-9);
+	}
+
+	@Test
+	void parsesRetryAfter() {
+		assertEquals(120_000, HostConcurrencyController.parseRetryAfter(" 120 "));
+		assertEquals(0, HostConcurrencyController.parseRetryAfter("-5"));
+		assertEquals(0, HostConcurrencyController.parseRetryAfter(null));
+		assertEquals(0, HostConcurrencyController.parseRetryAfter("soon"));
+
+		String date = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(60));
+		long delay = HostConcurrencyController.parseRetryAfter(date);
+		assertTrue(delay > 55_000 && delay <= 60_000, "delay " + delay);
+		String past = DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC).minusSeconds(60));
+		assertEquals(0, HostConcurrencyController.parseRetryAfter(past));
+	}
+
+	private static double limit(HostConcurrencyController controller) {
+		return controller.limits().get(0).getLimit();
+	}
+
+	private static HostConcurrencyController controller() {
+		HostConcurrencyController controller = new HostConcurrencyController();
+		ReflectionTestUtils.setField(controller, "initialLimit", 2.0);
+		ReflectionTestUtils.setField(controller, "minLimit", 1.0);
+		ReflectionTestUtils.setField(controller, "maxLimit", 32.0);
+		ReflectionTestUtils.setField(controller, "targetLatencyMillis", 2000L);
+		ReflectionTestUtils.setField(controller, "minTimeoutMillis", 5000L);
+		ReflectionTestUtils.setField(controller, "maxTimeoutMillis", 60000L);
+		ReflectionTestUtils.setField(controller, "idleEvictMillis", 600000L);
+		return controller;
+	}
+}
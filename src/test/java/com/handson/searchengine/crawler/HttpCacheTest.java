@@ -0,0 +1,57 @@
+package com.handson.searchengine.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpCacheTest {
+
+	private static final long NOW = 1_620_000_000_000L;
+	private static final long DAY = 86_400_000L;
+	private static final String DATE = "Mon, 3 May 2021 00:00:00 GMT";
+
+	private static HttpCache.Headers headers(String cacheControl, String expires, String lastModified) {
+		return new HttpCache.Headers(cacheControl, null, expires, DATE, null, null, lastModified);
+	}
+
+	@Test
+	void noStoreAndPrivateAreNotCached() {
+		assertEquals(-1, HttpCache.freshnessMillis(headers("no-store", null, null), NOW, DAY));
+		assertEquals(-1, HttpCache.freshnessMillis(headers("private, max-age=600", null, null), NOW, DAY));
+	}
+
+	@Test
+	void noCacheMustRevalidate() {
+		assertEquals(0, HttpCache.freshnessMillis(headers("no-cache, max-age=600", null, null), NOW, DAY));
+	}
+
+	@Test
+	void sharedMaxAgeWinsOverMaxAgeAndExpires() {
+		assertEquals(60_000, HttpCache.freshnessMillis(headers("max-age=600, s-maxage=60", null, null), NOW, DAY));
+		assertEquals(600_000, HttpCache.freshnessMillis(headers("public, max-age=600", "Tue, 4 May 2021 00:00:00 GMT", null), NOW, DAY));
+	}
+
+	@Test
+	void ageIsSubtracted() {
+		HttpCache.Headers h = new HttpCache.Headers("max-age=600", null, null, DATE, "100", null, null);
+		assertEquals(500_000, HttpCache.freshnessMillis(h, NOW, DAY));
+	}
+
+	@Test
+	void expiresIsRelativeToDate() {
+		assertEquals(3_600_000, HttpCache.freshnessMillis(headers(null, "Mon, 3 May 2021 01:00:00 GMT", null), NOW, DAY));
+		assertEquals(0, HttpCache.freshnessMillis(headers(null, "0", null), NOW, DAY));
+	}
+
+	@Test
+	void lastModifiedGivesCappedHeuristic() {
+		assertEquals(DAY / 10, HttpCache.freshnessMillis(headers(null, null, "Sun, 2 May 2021 00:00:00 GMT"), NOW, DAY));
+		assertEquals(DAY, HttpCache.freshnessMillis(headers(null, null, "Fri, 1 Jan 2021 00:00:00 GMT"), NOW, DAY));
+		assertEquals(0, HttpCache.freshnessMillis(headers(null, null, null), NOW, DAY));
+	}
+
+	@Test
+	void parsesQuotedDirectiveValues() {
+		assertEquals("60", HttpCache.parseCacheControl("Max-Age=\"60\", must-revalidate").get("max-age"));
+	}
+}
@@ -0,0 +1,53 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.UrlSearchDoc;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageExtractorTest {
+
+	private static final String LEAD = "The first real paragraph of the article, long enough to count as prose for the snippet.";
+
+	@Test
+	void extractsShortFields() {
+		Document doc = Jsoup.parse("<html><head><title> Page title </title>"
+				+ "<meta name=\"description\" content=\"What the page is about\"></head><body>"
+				+ "<nav><p>Home | About</p></nav><h1>Main heading</h1><h2>Sub heading</h2><h4>ignored</h4>"
+				+ "<p>Short caption</p><p>" + LEAD + "</p></body></html>", "https://www.example.com/a");
+		UrlSearchDoc d = new PageExtractor().extract("c1", "https://www.example.com/a", "https://www.example.com", 1, doc);
+		assertEquals("Page title", d.getTitle());
+		assertEquals("What the page is about", d.getDescription());
+		assertEquals("Main heading\nSub heading", d.getHeadings());
+		assertEquals(LEAD, d.getSnippet());
+	}
+
+	@Test
+	void snippetFallsBackToDescriptionAndIsCut() {
+		Document doc = Jsoup.parse("<html><head><meta property=\"og:description\" content=\"From open graph\"></head>"
+				+ "<body><p>tiny</p></body></html>");
+		assertEquals("From open graph", PageExtractor.leadSnippet(doc, "From open graph", "tiny"));
+		StringBuilder longText = new StringBuilder();
+		for (int i = 0; i < 100; i++) longText.append("word").append(i).append(' ');
+		String cut = PageExtractor.cut(longText.toString(), PageExtractor.MAX_SNIPPET);
+		assertTrue(cut.length() <= PageExtractor.MAX_SNIPPET + 1);
+		assertTrue(cut.endsWith("…"));
+		assertFalse(cut.contains("  "));
+	}
+
+	@Test
+	void storedDocsWithoutSnippetGetOneFromContent() {
+		Map<String, Object> source = new HashMap<>();
+		source.put("crawlId", "c1");
+		source.put("url", "https://www.example.com/a");
+		source.put("content", "Indexed before snippets existed");
+		UrlSearchDoc d = new PageExtractor().extract(source);
+		assertEquals("Indexed before snippets existed", d.getSnippet());
+		assertNull(d.getTitle());
+	}
+}
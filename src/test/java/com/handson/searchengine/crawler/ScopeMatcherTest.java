@@ -0,0 +1,96 @@
+package com.handson.searchengine.crawler;
+
+import com.handson.searchengine.model.CrawlContext;
+import com.handson.searchengine.model.CrawlerRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScopeMatcherTest {
+
+	private static ScopeMatcher scope(CrawlerRequest r) {
+		return ScopeMatcher.of(CrawlContext.of("c1", r));
+	}
+
+	private static CrawlerRequest request(String url) {
+		CrawlerRequest r = new CrawlerRequest();
+		r.setUrl(url);
+		return r;
+	}
+
+	@Test
+	void seedPrefixOnlyByDefault() {
+		ScopeMatcher s = ScopeMatcher.of("https://www.example.com/blog");
+		assertTrue(s.allows("https://www.example.com/blog/post-1"));
+		assertTrue(s.allows("http://WWW.example.com:443/blog?page=2#top"));
+		assertFalse(s.allows("https://www.example.com/shop"));
+		assertFalse(s.allows("https://docs.example.com/blog"));
+		assertFalse(s.allows("mailto:someone@example.com"));
+		assertFalse(s.allows("javascript:void(0)"));
+	}
+
+	@Test
+	void subdomainsAndExtraHosts() {
+		CrawlerRequest r = request("https://www.example.com/");
+		r.setIncludeSubdomains(true);
+		r.setHosts(Arrays.asList("cdn.other.org", "*.partner.net"));
+		ScopeMatcher s = scope(r);
+		assertTrue(s.allows("https://docs.example.com/a"));
+		assertTrue(s.allows("https://example.com/a"));
+		assertTrue(s.allows("https://a.b.example.com/a"));
+		assertFalse(s.allows("https://badexample.com/a"));
+		assertTrue(s.allows("https://cdn.other.org/a"));
+		assertFalse(s.allows("https://x.cdn.other.org/a"));
+		assertTrue(s.allows("https://eu.partner.net/a"));
+		assertFalse(s.allows("https://partner.net/a"));
+	}
+
+	@Test
+	void excludeAndIncludeSubstrings() {
+		CrawlerRequest r = request("https://www.example.com/");
+		r.setExclude(Arrays.asList("/tag/", "/search?", "sessionid="));
+		r.setInclude(Arrays.asList("/docs/", "/blog/"));
+		ScopeMatcher s = scope(r);
+		assertTrue(s.allows("https://www.example.com/docs/intro"));
+		assertFalse(s.allows("https://www.example.com/docs/tag/java"));
+		assertFalse(s.allows("https://www.example.com/blog/search?q=x"));
+		assertFalse(s.allows("https://www.example.com/blog/a?sessionid=1"));
+		assertFalse(s.allows("https://www.example.com/about"));
+	}
+
+	@Test
+	void automatonFindsOverlappingPatterns() {
+		ScopeMatcher.Automaton a = new ScopeMatcher.Automaton(Arrays.asList("she", "hers", "his"));
+		assertTrue(a.matches("ushers"));
+		assertTrue(a.matches("ahishe"));
+		assertFalse(a.matches("hehrs"));
+		assertFalse(new ScopeMatcher.Automaton(Collections.singletonList("abcd")).matches("abcabc"));
+	}
+
+	@Test
+	void detectsTraps() {
+		ScopeMatcher s = ScopeMatcher.of("https://www.example.com/");
+		assertFalse(s.allows("https://www.example.com/a/b/a/b/a/b"));
+		assertTrue(s.allows("https://www.example.com/a/b/a/c"));
+		StringBuilder deep = new StringBuilder("https://www.example.com");
+		for (int i = 0; i < 30; i++) deep.append("/d").append(i);
+		assertFalse(s.allows(deep.toString()));
+		StringBuilder params = new StringBuilder("https://www.example.com/cal?p0=0");
+		for (int i = 1; i < 20; i++) params.append("&p").append(i).append('=').append(i);
+		assertFalse(s.allows(params.toString()));
+	}
+
+	@Test
+	void capsQueryVariantsPerPath() {
+		CrawlerRequest r = request("https://www.example.com/");
+		r.setMaxQueryVariants(3);
+		ScopeMatcher s = scope(r);
+		for (int i = 0; i < 3; i++) assertTrue(s.admitQueryVariant("https://www.example.com/calendar?day=" + i));
+		assertFalse(s.admitQueryVariant("https://www.example.com/calendar?day=99"));
+		assertTrue(s.admitQueryVariant("https://www.example.com/other?day=99"));
+		assertTrue(s.admitQueryVariant("https://www.example.com/calendar"));
+	}
+}
@@ -0,0 +1,103 @@
+package com.handson.searchengine.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SitemapParserTest {
+
+	private static final String URLSET = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+			+ "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n"
+			+ "  <url><loc>https://www.example.com/a</loc><lastmod>2021-05-01</lastmod></url>\n"
+			+ "  <url><loc> https://www.example.com/b </loc><lastmod>2021-05-02T10:00:00+02:00</lastmod><priority>0.8</priority></url>\n"
+			+ "  <url><loc>https://www.example.com/c</loc></url>\n"
+			+ "</urlset>";
+
+	private final List<String> urls = new ArrayList<>();
+	private final List<Long> lastmods = new ArrayList<>();
+	private final List<String> sitemaps = new ArrayList<>();
+
+	private final SitemapParser.Listener listener = new SitemapParser.Listener() {
+		@Override
+		public void sitemap(String loc) {
+			sitemaps.add(loc);
+		}
+
+		@Override
+		public void url(String loc, long lastmod) {
+			urls.add(loc);
+			lastmods.add(lastmod);
+		}
+	};
+
+	@Test
+	void readsUrlset() throws IOException {
+		SitemapParser.parse(new ByteArrayInputStream(URLSET.getBytes(StandardCharsets.UTF_8)), listener);
+		assertEquals(List.of("https://www.example.com/a", "https://www.example.com/b", "https://www.example.com/c"), urls);
+		assertEquals(1619827200000L, lastmods.get(0));
+		assertEquals(1619942400000L, lastmods.get(1));
+		assertEquals(0L, lastmods.get(2));
+		assertTrue(sitemaps.isEmpty());
+	}
+
+	@Test
+	void readsGzippedIndex() throws IOException {
+		String index = "<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+				+ "<sitemap><loc>https://www.example.com/s1.xml.gz</loc><lastmod>2021-05-01</lastmod></sitemap>"
+				+ "<sitemap><loc>https://www.example.com/s2.xml</loc></sitemap>"
+				+ "</sitemapindex>";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+			gz.write(index.getBytes(StandardCharsets.UTF_8));
+		}
+		SitemapParser.parse(new ByteArrayInputStream(bytes.toByteArray()), listener);
+		assertEquals(List.of("https://www.example.com/s1.xml.gz", "https://www.example.com/s2.xml"), sitemaps);
+		assertTrue(urls.isEmpty());
+	}
+
+	@Test
+	void rejectsDoctype() {
+		String xxe = "<?xml version=\"1.0\"?><!DOCTYPE urlset [<!ENTITY x SYSTEM \"file:///etc/passwd\">]>"
+				+ "<urlset><url><loc>&x;</loc></url></urlset>";
+		assertThrows(IOException.class, () -> SitemapParser.parse(new ByteArrayInputStream(xxe.getBytes(StandardCharsets.UTF_8)), listener));
+		assertTrue(urls.isEmpty());
+	}
+
+	@Test
+	void stopsAtMaxEntries() throws IOException {
+		SitemapParser.parse(new ByteArrayInputStream(URLSET.getBytes(StandardCharsets.UTF_8)), listener, SitemapParser.MAX_BYTES, 2);
+		assertEquals(List.of("https://www.example.com/a", "https://www.example.com/b"), urls);
+	}
+
+	@Test
+	void failsPastMaxUncompressedBytes() throws IOException {
+		// a small gzip that inflates past the limit
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gz = new GZIPOutputStream(bytes)) {
+			gz.write(URLSET.substring(0, URLSET.indexOf("</urlset>")).getBytes(StandardCharsets.UTF_8));
+			byte[] padding = "<!-- padding -->".repeat(1024).getBytes(StandardCharsets.UTF_8);
+			for (int i = 0; i < 64; i++) gz.write(padding);
+			gz.write("</urlset>".getBytes(StandardCharsets.UTF_8));
+		}
+		assertTrue(bytes.size() < 64 * 1024);
+		assertThrows(IOException.class,
+				() -> SitemapParser.parse(new ByteArrayInputStream(bytes.toByteArray()), listener, 64 * 1024, SitemapParser.MAX_ENTRIES));
+		assertEquals(3, urls.size());
+	}
+
+	@Test
+	void limitedStreamStopsAtDeadline() {
+		byte[] body = URLSET.getBytes(StandardCharsets.UTF_8);
+		SitemapParser.LimitedInputStream in = new SitemapParser.LimitedInputStream(new ByteArrayInputStream(body),
+				Long.MAX_VALUE, System.nanoTime() - 1);
+		assertThrows(IOException.class, () -> in.read(new byte[16], 0, 16));
+	}
+}
@@ -0,0 +1,145 @@
+package com.handson.searchengine.crawler;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class UrlBudgetTest {
+
+	private static final String CRAWL = "c1";
+	private static final String KEY = "c1.urls.budget";
+
+	// the crawl's remaining budget, as the LEASE script and INCRBY would keep it in Redis. The mock sizes leases with
+	// UrlBudget.blockFor, the rule the script is built from; the Lua itself only runs against a real Redis
+	private final AtomicLong remaining = new AtomicLong();
+	private final AtomicBoolean keyExists = new AtomicBoolean(true);
+	private final RedisTemplate<String, Object> redisTemplate = redis();
+
+	@Test
+	void leaseSizeShrinksWithTheRemainingBudget() {
+		assertEquals(64, UrlBudget.blockFor(64, 1000));
+		assertEquals(12, UrlBudget.blockFor(64, 100));
+		assertEquals(1, UrlBudget.blockFor(64, 7));
+		assertEquals(1, UrlBudget.blockFor(64, 1));
+		assertEquals(0, UrlBudget.blockFor(64, 0));
+		assertEquals(3, UrlBudget.blockFor(3, 1000));
+	}
+
+	@Test
+	void leasesShrinkAsBudgetRunsLow() {
+		remaining.set(1000);
+		UrlBudget budget = budget(64);
+		assertTrue(budget.tryAcquire(CRAWL, 1000));
+		assertEquals(936, remaining.get());
+
+		remaining.set(100);
+		UrlBudget low = budget(64);
+		for (int i = 0; i < 12; i++) {
+			assertTrue(low.tryAcquire(CRAWL, 1000));
+		}
+		assertEquals(88, remaining.get());
+		assertTrue(low.tryAcquire(CRAWL, 1000));
+		assertEquals(77, remaining.get());
+	}
+
+	@Test
+	void admitsExactlyTheBudgetAcrossWorkers() {
+		remaining.set(20);
+		UrlBudget first = budget(64);
+		UrlBudget second = budget(64);
+		int admitted = 0;
+		boolean any = true;
+		while (any) {
+			any = false;
+			if (first.tryAcquire(CRAWL, 20)) {
+				admitted++;
+				any = true;
+			}
+			if (second.tryAcquire(CRAWL, 20)) {
+				admitted++;
+				any = true;
+			}
+		}
+		assertEquals(20, admitted);
+		assertEquals(0, remaining.get());
+	}
+
+	@Test
+	void releaseReturnsUnusedLease() {
+		remaining.set(100);
+		UrlBudget budget = budget(64);
+		assertTrue(budget.tryAcquire(CRAWL, 1000));
+		assertEquals(88, remaining.get());
+
+		budget.release(CRAWL);
+		assertEquals(99, remaining.get());
+		// nothing left to give back
+		budget.release(CRAWL);
+		assertEquals(99, remaining.get());
+	}
+
+	@Test
+	void idleLeasesGoBack() {
+		remaining.set(100);
+		UrlBudget budget = budget(64);
+		assertTrue(budget.tryAcquire(CRAWL, 1000));
+		budget.releaseIdle();
+		assertEquals(88, remaining.get());
+
+		ReflectionTestUtils.setField(budget, "leaseIdleMillis", -1L);
+		budget.releaseIdle();
+		assertEquals(99, remaining.get());
+	}
+
+	@Test
+	void releaseDoesNotRecreateExpiredBudget() {
+		remaining.set(100);
+		UrlBudget budget = budget(64);
+		assertTrue(budget.tryAcquire(CRAWL, 1000));
+		keyExists.set(false);
+
+		budget.release(CRAWL);
+		assertEquals(88, remaining.get());
+	}
+
+	@Test
+	void crawlWithoutMaxUrlsIsUnbounded() {
+		UrlBudget budget = budget(64);
+		assertTrue(budget.tryAcquire(CRAWL, 0));
+		verifyNoInteractions(redisTemplate);
+	}
+
+	private UrlBudget budget(int leaseSize) {
+		UrlBudget budget = new UrlBudget();
+		ReflectionTestUtils.setField(budget, "redisTemplate", redisTemplate);
+		ReflectionTestUtils.setField(budget, "leaseSize", leaseSize);
+		ReflectionTestUtils.setField(budget, "leaseIdleMillis", 300_000L);
+		return budget;
+	}
+
+	@SuppressWarnings("unchecked")
+	private RedisTemplate<String, Object> redis() {
+		RedisTemplate<String, Object> template = mock(RedisTemplate.class);
+		ValueOperations<String, Object> values = mock(ValueOperations.class);
+		when(template.execute(any(RedisScript.class), eq(Collections.singletonList(KEY)), any()))
+				.thenAnswer(inv -> {
+					long n = UrlBudget.blockFor(Long.parseLong(inv.getArgument(2)), remaining.get());
+					remaining.addAndGet(-n);
+					return n;
+				});
+		when(template.hasKey(KEY)).thenAnswer(inv -> keyExists.get());
+		when(template.opsForValue()).thenReturn(values);
+		when(values.increment(eq(KEY), anyLong())).thenAnswer(inv -> remaining.addAndGet(inv.getArgument(1)));
+		return template;
+	}
+}
@@ -0,0 +1,38 @@
+package com.handson.searchengine.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VisitedSetTest {
+
+	@Test
+	void shardsKeepAboutHundredUrlsEach() {
+		assertEquals(1, VisitedSet.shardsFor(1));
+		assertEquals(1, VisitedSet.shardsFor(100));
+		assertEquals(2, VisitedSet.shardsFor(101));
+		assertEquals(4, VisitedSet.shardsFor(300));
+		assertEquals(4, VisitedSet.shardsFor(400));
+		assertEquals(8, VisitedSet.shardsFor(401));
+		assertEquals(1024, VisitedSet.shardsFor(100_000));
+	}
+
+	@Test
+	void shardCountIsBounded() {
+		assertEquals(1 << 12, VisitedSet.shardsFor(0));
+		assertEquals(1 << 12, VisitedSet.shardsFor(-1));
+		assertEquals(1 << 16, VisitedSet.shardsFor(10_000_000));
+		assertEquals(1 << 16, VisitedSet.shardsFor(Integer.MAX_VALUE));
+	}
+
+	@Test
+	void keysCoverEveryShardAndTheLegacySet() {
+		List<String> keys = new VisitedSet().keys("c1", 300);
+		assertEquals(5, keys.size());
+		assertEquals("c1.visited.0", keys.get(0));
+		assertEquals("c1.visited.3", keys.get(3));
+		assertEquals("c1.visited", keys.get(4));
+	}
+}
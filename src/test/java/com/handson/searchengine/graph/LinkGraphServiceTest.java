@@ -0,0 +1,23 @@
+package com.handson.searchengine.graph;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkGraphServiceTest {
+
+	@Test
+	void edgeRecordsRoundTrip() {
+		long[] links = {2, -1L, Long.MIN_VALUE};
+		long[] decoded = LinkGraphService.decode(LinkGraphService.encode(7, links));
+		assertArrayEquals(new long[]{7, 2, -1L, Long.MIN_VALUE}, decoded);
+		assertArrayEquals(new long[]{7}, LinkGraphService.decode(LinkGraphService.encode(7, new long[0])));
+	}
+
+	@Test
+	void unreadableEdgeRecordsAreSkipped() {
+		assertNull(LinkGraphService.decode("not base64!"));
+		assertNull(LinkGraphService.decode(""));
+		assertNull(LinkGraphService.decode("AAAA"));
+	}
+}
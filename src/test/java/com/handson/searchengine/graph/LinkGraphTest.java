@@ -0,0 +1,61 @@
+package com.handson.searchengine.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LinkGraphTest {
+
+	@Test
+	void hubRanksHighest() {
+		LinkGraph graph = new LinkGraph();
+		// 1 <- 2, 3, 4 and 1 -> 2
+		graph.addPage(1, new long[]{2});
+		graph.addPage(2, new long[]{1});
+		graph.addPage(3, new long[]{1});
+		graph.addPage(4, new long[]{1, 3});
+		List<LinkGraph.Update> updates = graph.recompute(50, 1e-6);
+		assertEquals(4, updates.size());
+		assertEquals(3, graph.inlinksOf(1));
+		assertTrue(graph.rankOf(1) > graph.rankOf(2));
+		assertTrue(graph.rankOf(2) > graph.rankOf(3));
+		assertTrue(graph.rankOf(3) > graph.rankOf(4));
+		float sum = graph.rankOf(1) + graph.rankOf(2) + graph.rankOf(3) + graph.rankOf(4);
+		assertEquals(4f, sum, 1e-3);
+	}
+
+	@Test
+	void incrementalMatchesFullRecompute() {
+		LinkGraph incremental = new LinkGraph();
+		LinkGraph full = new LinkGraph();
+		for (long page = 0; page < 2000; page++) {
+			long[] links = {(page * 7 + 1) % 2000, (page * 13 + 5) % 2000, page / 2};
+			incremental.addPage(page, links);
+			full.addPage(page, links);
+			if (page % 500 == 499) incremental.recompute(100, 1e-7);
+		}
+		incremental.recompute(100, 1e-7);
+		full.recompute(100, 1e-7);
+		for (long page = 0; page < 2000; page += 97) {
+			assertEquals(full.rankOf(page), incremental.rankOf(page), 1e-2);
+		}
+		// 3 links per page, minus the self link of page 0
+		assertEquals(5999, incremental.edges());
+	}
+
+	@Test
+	void onlyChangedPagesAreUpdated() {
+		LinkGraph graph = new LinkGraph();
+		graph.addPage(1, new long[]{2});
+		graph.addPage(2, new long[]{1});
+		assertEquals(2, graph.recompute(50, 1e-6).size());
+		assertFalse(graph.isDirty());
+		assertTrue(graph.recompute(50, 1e-6).isEmpty());
+		// a page that was already added is ignored
+		graph.addPage(1, new long[]{3});
+		assertEquals(1, graph.inlinksOf(2));
+		assertEquals(0, graph.inlinksOf(3));
+	}
+}
@@ -0,0 +1,38 @@
+package com.handson.searchengine.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrontierCodecTest {
+
+	@Test
+	void roundTrip() {
+		String url = "https://www.example.com/news/2021/05/שלום?id=12345";
+		byte[] data = FrontierCodec.encode("aB3xYz", 300, 2, url);
+		FrontierCodec.Message msg = FrontierCodec.decode(data);
+		assertEquals("aB3xYz", msg.getCrawlId());
+		assertEquals(300, msg.getDistance());
+		assertEquals(2, msg.getAttempt());
+		assertEquals(url, msg.getUrl());
+	}
+
+	@Test
+	void decodesVersion1() {
+		byte[] v1 = {FrontierCodec.MAGIC, FrontierCodec.VERSION_1, 1, 'x', 5, 'h', 't', 't', 'p'};
+		FrontierCodec.Message msg = FrontierCodec.decode(v1);
+		assertEquals("x", msg.getCrawlId());
+		assertEquals(5, msg.getDistance());
+		assertEquals(0, msg.getAttempt());
+		assertEquals("http", msg.getUrl());
+	}
+
+	@Test
+	void legacyJsonIsNotFrontier() {
+		assertFalse(FrontierCodec.isFrontier("{\"crawlId\":\"x\"}".getBytes(StandardCharsets.UTF_8)));
+		assertFalse(FrontierCodec.isFrontier("\"{}\"".getBytes(StandardCharsets.UTF_8)));
+		assertTrue(FrontierCodec.isFrontier(FrontierCodec.encode("x", 0, 0, "")));
+	}
+}
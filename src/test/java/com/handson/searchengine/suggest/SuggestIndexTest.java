@@ -0,0 +1,76 @@
+package com.handson.searchengine.suggest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestIndexTest {
+
+	private static List<String> texts(List<SuggestIndex.Entry> entries) {
+		return entries.stream().map(e -> e.text).collect(Collectors.toList());
+	}
+
+	@Test
+	void ranksByFrequencyUnderPrefix() {
+		SuggestIndex idx = new SuggestIndex(1000);
+		idx.add("java", 5);
+		idx.add("javascript", 9);
+		idx.add("jav", 1);
+		idx.add("jakarta", 3);
+		idx.add("kotlin", 7);
+		assertEquals(Arrays.asList("javascript", "java", "jakarta"), texts(idx.top("ja", 3)));
+		assertEquals(Arrays.asList("javascript", "java", "jav"), texts(idx.top("jav", 10)));
+		assertEquals(Collections.singletonList("javascript"), texts(idx.top("javas", 10)));
+		assertTrue(idx.top("python", 10).isEmpty());
+		idx.add("java", 10);
+		assertEquals("java", idx.top("j", 1).get(0).text);
+		assertEquals(15, idx.top("java", 1).get(0).count);
+	}
+
+	@Test
+	void matchesBruteForceOnRandomTexts() {
+		Random rnd = new Random(42);
+		SuggestIndex idx = new SuggestIndex(100_000);
+		Map<String, Long> counts = new HashMap<>();
+		for (int i = 0; i < 20_000; i++) {
+			int len = 1 + rnd.nextInt(6);
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < len; j++) sb.append((char) ('a' + rnd.nextInt(4)));
+			String t = sb.toString();
+			idx.add(t, 1);
+			counts.merge(t, 1L, Long::sum);
+		}
+		for (String prefix : Arrays.asList("a", "ab", "bca", "dddd", "c")) {
+			List<Long> expected = counts.entrySet().stream()
+					.filter(e -> e.getKey().startsWith(prefix))
+					.map(Map.Entry::getValue)
+					.sorted(Comparator.reverseOrder())
+					.limit(SuggestIndex.TOP_K)
+					.collect(Collectors.toList());
+			List<SuggestIndex.Entry> top = idx.top(prefix, SuggestIndex.TOP_K);
+			assertEquals(expected, top.stream().map(e -> e.count).collect(Collectors.toList()), prefix);
+			for (SuggestIndex.Entry e : top) assertEquals(counts.get(e.text), e.count);
+		}
+	}
+
+	@Test
+	void stopsTakingNewTextsWhenFull() {
+		SuggestIndex idx = new SuggestIndex(2);
+		idx.add("alpha", 1);
+		idx.add("beta", 1);
+		idx.add("gamma", 1);
+		idx.add("alpha", 1);
+		assertEquals(2, idx.entries());
+		assertTrue(idx.top("g", 5).isEmpty());
+		assertEquals(2, idx.top("al", 5).get(0).count);
+	}
+
+	@Test
+	void extractsTitleAndWords() {
+		Set<String> texts = SuggestService.texts("  Spring   Boot Guide 2021 ", "Getting started\nDB");
+		assertEquals(new LinkedHashSet<>(Arrays.asList("spring boot guide 2021", "spring", "boot", "guide", "getting", "started")), texts);
+	}
+}
@@ -0,0 +1,67 @@
+package com.handson.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockingIoExecutorTest {
+
+	@Test
+	void neverRunsMoreThanMaxConcurrent() throws Exception {
+		for (boolean virtual : new boolean[]{false, true}) {
+			BlockingIoExecutor ex = BlockingIoExecutor.create("test", 3, 100, virtual);
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger peak = new AtomicInteger();
+			CountDownLatch done = new CountDownLatch(50);
+			for (int i = 0; i < 50; i++) {
+				ex.execute(() -> {
+					peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+					done.countDown();
+				});
+			}
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+			assertTrue(peak.get() <= 3, "peak " + peak.get());
+			ex.shutdown();
+			assertTrue(ex.awaitTermination(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void rejectsWhenQueueIsFullAndReturnsWaitingOnShutdownNow() throws Exception {
+		BlockingIoExecutor ex = BlockingIoExecutor.create("test", 1, 2, false);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		ex.execute(() -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		Runnable waiting1 = () -> { };
+		Runnable waiting2 = () -> { };
+		ex.execute(waiting1);
+		ex.execute(waiting2);
+		assertThrows(RejectedExecutionException.class, () -> ex.execute(() -> { }));
+		assertEquals(1, ex.getActive());
+		assertEquals(2, ex.getQueued());
+		List<Runnable> pending = ex.shutdownNow();
+		assertEquals(2, pending.size());
+		assertSame(waiting1, pending.get(0));
+		assertThrows(RejectedExecutionException.class, () -> ex.execute(() -> { }));
+	}
+}
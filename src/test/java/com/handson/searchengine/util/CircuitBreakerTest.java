@@ -0,0 +1,54 @@
+package com.handson.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+	@Test
+	void opensAfterConsecutiveFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 60_000);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.closed, breaker.getState());
+		assertTrue(breaker.allowRequest());
+
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.open, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+
+	@Test
+	void letsOneProbeThroughWhenHalfOpen() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(1, 20);
+		breaker.onFailure();
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(40);
+
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.halfOpen, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.closed, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	void failedProbeReopens() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(5, 20);
+		for (int i = 0; i < 5; i++) {
+			breaker.onFailure();
+		}
+		Thread.sleep(40);
+		assertTrue(breaker.allowRequest());
+
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.open, breaker.getState());
+		assertFalse(breaker.allowRequest());
+	}
+}
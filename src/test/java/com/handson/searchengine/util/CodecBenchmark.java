@@ -0,0 +1,93 @@
+package com.handson.searchengine.util;
+
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.handson.searchengine.model.CrawlStatus;
+import com.handson.searchengine.model.StopReason;
+import com.handson.searchengine.model.UrlSearchDoc;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Compares the hand-written codecs with the ObjectMapper the app uses (built the way Spring Boot builds it): time and
+ * bytes allocated per operation, after a warm-up. Not a unit test; run it by hand after changing either side:
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.handson.searchengine.util.CodecBenchmark
+ *
+ * -Dops=N sets the operations per case (default 200000, bulk cases run N/100 batches of 100 docs).
+ */
+public class CodecBenchmark {
+
+	private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int ops = Integer.getInteger("ops", 200_000);
+		ObjectMapper om = Jackson2ObjectMapperBuilder.json().modulesToInstall(new ParameterNamesModule()).build();
+
+		CrawlStatus status = CrawlStatus.of(4, 1_620_000_000_000L, 37, StopReason.maxUrls);
+		status.setLastModifiedMillis(1_620_000_060_000L);
+		String statusJson = om.writeValueAsString(status);
+		run("status read   ObjectMapper", ops, () -> om.readValue(statusJson, CrawlStatus.class));
+		run("status read   codec", ops, () -> CrawlStatusCodec.decode(statusJson));
+		run("status write  ObjectMapper", ops, () -> om.writeValueAsString(status));
+
+		UrlSearchDoc doc = doc(0);
+		run("doc write     ObjectMapper", ops, () -> om.writeValueAsBytes(doc));
+		run("doc write     codec", ops, () -> {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+			UrlSearchDocCodec.write(doc, out);
+			return out.toByteArray();
+		});
+
+		List<UrlSearchDoc> docs = new ArrayList<>();
+		for (int i = 0; i < 100; i++) docs.add(doc(i));
+		run("bulk(100)     ObjectMapper", ops / 100, () -> {
+			StringBuilder ndjson = new StringBuilder();
+			for (UrlSearchDoc d : docs) {
+				ndjson.append(action(d)).append(om.writeValueAsString(d)).append('\n');
+			}
+			return ndjson.toString().getBytes(StandardCharsets.UTF_8);
+		});
+		run("bulk(100)     codec", ops / 100, () -> {
+			ByteArrayBuilder ndjson = new ByteArrayBuilder(docs.size() * 4096);
+			for (UrlSearchDoc d : docs) {
+				ndjson.write(action(d).getBytes(StandardCharsets.UTF_8));
+				UrlSearchDocCodec.write(d, ndjson);
+				ndjson.append('\n');
+			}
+			return ndjson.toByteArray();
+		});
+	}
+
+	private static UrlSearchDoc doc(int i) {
+		StringBuilder content = new StringBuilder();
+		for (int w = 0; w < 40; w++) content.append("some page content words here ");
+		return UrlSearchDoc.of("c1", content.toString(), "https://www.example.com/a/" + i, "https://www.example.com/", 2, "text/html")
+				.withLinkRank(1.5f, 3)
+				.withSummary("A title", "A description", "H1\nH2", "Lead snippet");
+	}
+
+	private static String action(UrlSearchDoc d) {
+		return "{\"index\":{\"_index\":\"bench\",\"_id\":\"" + ElasticSearch.docId(d) + "\"}}\n";
+	}
+
+	private static void run(String name, int ops, Callable<Object> op) throws Exception {
+		Object sink = null;
+		for (int i = 0; i < ops / 4; i++) sink = op.call();
+		long thread = Thread.currentThread().getId();
+		long allocated = THREADS.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for (int i = 0; i < ops; i++) sink = op.call();
+		long nanos = System.nanoTime() - start;
+		allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+		System.out.printf("%-28s %10.0f ns/op %10d B/op%s%n", name, nanos / (double) ops, allocated / ops, sink == null ? " (null)" : "");
+	}
+}
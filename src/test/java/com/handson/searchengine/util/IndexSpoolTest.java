@@ -0,0 +1,141 @@
+package com.handson.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexSpoolTest {
+
+	@TempDir
+	Path dir;
+
+	private IndexSpool spool(long segmentBytes) throws IOException {
+		IndexSpool spool = new IndexSpool();
+		ReflectionTestUtils.setField(spool, "dir", dir.toString());
+		ReflectionTestUtils.setField(spool, "maxBytes", 1L << 20);
+		ReflectionTestUtils.setField(spool, "segmentBytes", segmentBytes);
+		spool.open();
+		return spool;
+	}
+
+	private static byte[] doc(int i) {
+		return ("{\"url\":\"https://www.example.com/" + i + "\"}").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String str(byte[] b) {
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	private long segmentCount() throws IOException {
+		try (Stream<Path> s = Files.list(dir)) {
+			return s.filter(p -> p.toString().endsWith(".spool")).count();
+		}
+	}
+
+	@Test
+	void rollsSegmentsAndDeletesThemOnceReplayed() throws Exception {
+		IndexSpool spool = spool(100);
+		for (int i = 0; i < 10; i++) {
+			assertTrue(spool.append(doc(i)));
+		}
+		assertEquals(10, spool.getDepth());
+		assertTrue(segmentCount() > 2);
+
+		List<byte[]> first = spool.peek(4);
+		assertEquals(str(doc(0)), str(first.get(0)));
+		assertEquals(str(doc(3)), str(first.get(3)));
+		// peek without commit does not consume
+		assertEquals(str(doc(0)), str(spool.peek(1).get(0)));
+
+		spool.peek(4);
+		spool.commit(4);
+		assertEquals(6, spool.getDepth());
+		assertEquals(str(doc(4)), str(spool.peek(1).get(0)));
+
+		spool.peek(6);
+		spool.commit(6);
+		assertTrue(spool.isEmpty());
+		assertEquals(0, spool.getBytes());
+		assertEquals(1, segmentCount());
+		spool.close();
+	}
+
+	@Test
+	void commitsOnlyAPrefixOfThePeek() throws Exception {
+		IndexSpool spool = spool(100);
+		for (int i = 0; i < 6; i++) {
+			spool.append(doc(i));
+		}
+		assertEquals(5, spool.peek(5).size());
+		spool.commit(2);
+		assertEquals(4, spool.getDepth());
+		assertEquals(str(doc(2)), str(spool.peek(1).get(0)));
+
+		spool.peek(2);
+		spool.commit(0);
+		assertEquals(4, spool.getDepth());
+		assertEquals(str(doc(2)), str(spool.peek(1).get(0)));
+		spool.close();
+	}
+
+	@Test
+	void reopenResumesFromTheCheckpoint() throws Exception {
+		IndexSpool spool = spool(100);
+		for (int i = 0; i < 6; i++) {
+			spool.append(doc(i));
+		}
+		spool.peek(2);
+		spool.commit(2);
+		spool.close();
+
+		IndexSpool reopened = spool(100);
+		assertEquals(4, reopened.getDepth());
+		List<String> pending = reopened.peek(10).stream().map(IndexSpoolTest::str).collect(Collectors.toList());
+		assertEquals(str(doc(2)), pending.get(0));
+		assertEquals(str(doc(5)), pending.get(3));
+		reopened.close();
+	}
+
+	@Test
+	void reopenTruncatesATornTailSoNewAppendsStayReadable() throws Exception {
+		IndexSpool spool = spool(1 << 20);
+		spool.append(doc(0));
+		spool.append(doc(1));
+		spool.close();
+		Path segment;
+		try (Stream<Path> s = Files.list(dir)) {
+			segment = s.filter(p -> p.toString().endsWith(".spool")).findFirst().orElseThrow(AssertionError::new);
+		}
+		// a length header promising more than was written, as after a crash mid-append
+		Files.write(segment, new byte[]{0, 0, 0, 50, '{', '"'}, StandardOpenOption.APPEND);
+
+		IndexSpool reopened = spool(1 << 20);
+		assertEquals(2, reopened.getDepth());
+		reopened.append(doc(2));
+		List<String> pending = reopened.peek(10).stream().map(IndexSpoolTest::str).collect(Collectors.toList());
+		assertEquals(3, pending.size());
+		assertEquals(str(doc(2)), pending.get(2));
+		reopened.close();
+	}
+
+	@Test
+	void rejectsAppendsOverTheSizeCap() throws Exception {
+		IndexSpool spool = spool(1 << 20);
+		ReflectionTestUtils.setField(spool, "maxBytes", 64L);
+		assertTrue(spool.append(doc(0)));
+		assertFalse(spool.append(doc(1)));
+		assertEquals(1, spool.getDepth());
+		spool.close();
+	}
+}
@@ -0,0 +1,39 @@
+package com.handson.searchengine.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchCursorTest {
+
+	@Test
+	void roundTripsSortValuesAndPit() {
+		String token = new SearchCursor("pit-1==", Arrays.asList(3.25, "https://www.example.com/a", 17L)).encode("java streams", "c1");
+		assertFalse(token.contains("=") || token.contains("/") || token.contains("+"));
+		SearchCursor c = SearchCursor.decode(token, "java streams", "c1");
+		assertEquals("pit-1==", c.getPitId());
+		assertEquals(3.25, ((Number) c.getSearchAfter().get(0)).doubleValue());
+		assertEquals("https://www.example.com/a", c.getSearchAfter().get(1));
+		assertEquals(17L, ((Number) c.getSearchAfter().get(2)).longValue());
+	}
+
+	@Test
+	void withoutPitAndWithNullSortValue() {
+		String token = new SearchCursor(null, Arrays.asList(1.0, null)).encode("q", null);
+		SearchCursor c = SearchCursor.decode(token, "q", "");
+		assertNull(c.getPitId());
+		assertEquals(2, c.getSearchAfter().size());
+		assertNull(c.getSearchAfter().get(1));
+	}
+
+	@Test
+	void rejectsForeignAndBrokenTokens() {
+		String token = new SearchCursor(null, Arrays.asList(1.0, "u")).encode("q", "c1");
+		assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(token, "other", "c1"));
+		assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(token, "q", "c2"));
+		assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("not a cursor!", "q", "c1"));
+		assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("e30", "q", "c1"));
+	}
+}
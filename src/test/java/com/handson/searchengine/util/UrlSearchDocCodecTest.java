@@ -0,0 +1,77 @@
+package com.handson.searchengine.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.handson.searchengine.model.CrawlStatus;
+import com.handson.searchengine.model.StopReason;
+import com.handson.searchengine.model.UrlSearchDoc;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UrlSearchDocCodecTest {
+
+	private final ObjectMapper om = new ObjectMapper();
+
+	private static UrlSearchDoc doc() {
+		return UrlSearchDoc.of("c1", "body text with \"quotes\", ünïcödé and a\nnewline", "https://www.example.com/a?b=1",
+				"https://www.example.com/", 2, "text/html")
+				.withLinkRank(1.75f, 12)
+				.withSummary("Title", null, "One\nTwo", "Body text…")
+				.withIndexedAt(1760000000000L);
+	}
+
+	private static void assertSameDoc(UrlSearchDoc expected, UrlSearchDoc actual) {
+		assertEquals(expected.getCrawlId(), actual.getCrawlId());
+		assertEquals(expected.getUrl(), actual.getUrl());
+		assertEquals(expected.getBaseUrl(), actual.getBaseUrl());
+		assertEquals(expected.getContent(), actual.getContent());
+		assertEquals(expected.getLevel(), actual.getLevel());
+		assertEquals(expected.getContentType(), actual.getContentType());
+		assertEquals(expected.getPageRank(), actual.getPageRank());
+		assertEquals(expected.getInlinks(), actual.getInlinks());
+		assertEquals(expected.getTitle(), actual.getTitle());
+		assertEquals(expected.getDescription(), actual.getDescription());
+		assertEquals(expected.getHeadings(), actual.getHeadings());
+		assertEquals(expected.getSnippet(), actual.getSnippet());
+		assertEquals(expected.getIndexedAt(), actual.getIndexedAt());
+	}
+
+	@Test
+	void writesWhatTheObjectMapperReads() throws Exception {
+		UrlSearchDoc doc = doc();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		UrlSearchDocCodec.write(doc, out);
+		// the stream stays open for the next bulk line
+		out.write('\n');
+		byte[] written = out.toByteArray();
+		assertEquals('\n', written[written.length - 1]);
+		assertSameDoc(doc, om.readValue(written, UrlSearchDoc.class));
+		assertEquals(om.readTree(om.writeValueAsBytes(doc)).get("url"), om.readTree(written).get("url"));
+		assertFalse(om.readTree(written).has("description"));
+	}
+
+	@Test
+	void crawlStatusReadsWhatTheObjectMapperWrites() throws Exception {
+		CrawlStatus s = CrawlStatus.of(4, 1_620_000_000_000L, 37, StopReason.maxUrls);
+		s.setErrorMessage("budget \"spent\"");
+		s.setLastModifiedMillis(1_620_000_060_000L);
+		CrawlStatus back = CrawlStatusCodec.decode(om.writeValueAsString(s));
+		assertEquals(4, back.getDistance());
+		assertEquals(1_620_000_000_000L, back.getStartTimeMillis());
+		assertEquals(37, back.getNumPages());
+		assertEquals(StopReason.maxUrls, back.getStopReason());
+		assertEquals("budget \"spent\"", back.getErrorMessage());
+		assertEquals(1_620_000_060_000L, back.getLastModifiedMillis());
+		assertNull(CrawlStatusCodec.decode(om.writeValueAsString(CrawlStatus.of(0, 1L, 0, null))).getStopReason());
+	}
+
+	@Test
+	void crawlStatusSkipsUnknownFields() throws Exception {
+		String json = "{\"extra\":{\"a\":[1,2]},\"numPages\":3,\"stopReason\":null}";
+		CrawlStatus back = CrawlStatusCodec.decode(json);
+		assertEquals(3, back.getNumPages());
+		assertNull(back.getStopReason());
+	}
+}